@@ -0,0 +1,214 @@
+package com.tonyzampogna.cache;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Collects point reads that come in close together, and loads them
+ * with one batch read (for example, a SELECT ... WHERE key IN ...).
+ *
+ * A batch is sent when the first key in it has waited for the window,
+ * or when it has maxBatchSize keys, whichever comes first. Each caller
+ * gets the value for its key, or null if the batch read did not return
+ * one. With a window of zero, every read is sent on its own.
+ *
+ * Keys for different tenants can wait for the same batch, but each
+ * tenant's keys are read with their own call to the batch function,
+ * made for that tenant (see TenantContext).
+ */
+public class BatchLoader<K, V> {
+
+	// One timer thread for every batch loader. It only hands the batches
+	// that are due to the flush threads, so a batch function that blocks
+	// (such as the first use of a tenant's session) cannot hold up the
+	// batches of the other loaders.
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "batch-loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final ExecutorService FLUSH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "batch-loader-flush");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String name;
+	private final long windowMicros;
+	private final int maxBatchSize;
+	private final Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction;
+
+	private Map<TenantKey<K>, CompletableFuture<V>> pendingLoads = new LinkedHashMap<TenantKey<K>, CompletableFuture<V>>();
+	private long batchStartTime = 0;
+
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong keyCount = new AtomicLong();
+	private final Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
+	private final Histogram waitMicros = new Histogram(new ExponentiallyDecayingReservoir());
+
+
+	public BatchLoader(String name, long windowMicros, int maxBatchSize, Function<List<K>, CompletableFuture<Map<K, V>>> batchFunction) {
+		this.name = name;
+		this.windowMicros = windowMicros;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.batchFunction = batchFunction;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Load the value for the key, as part of the next batch.
+	 */
+	public CompletableFuture<V> load(K key) {
+		keyCount.incrementAndGet();
+		TenantKey<K> tenantKey = TenantKey.of(key);
+
+		if (windowMicros <= 0) {
+			Map<TenantKey<K>, CompletableFuture<V>> batch = new LinkedHashMap<TenantKey<K>, CompletableFuture<V>>();
+			CompletableFuture<V> promise = new CompletableFuture<V>();
+			batch.put(tenantKey, promise);
+			dispatch(batch, System.nanoTime());
+			return promise;
+		}
+
+		Map<TenantKey<K>, CompletableFuture<V>> fullBatch = null;
+		long fullBatchStartTime = 0;
+		CompletableFuture<V> promise = null;
+
+		synchronized (this) {
+			promise = pendingLoads.get(tenantKey);
+			if (promise != null) {
+				return promise;
+			}
+
+			promise = new CompletableFuture<V>();
+			pendingLoads.put(tenantKey, promise);
+
+			if (pendingLoads.size() == 1) {
+				// The first key in the batch starts the window.
+				long startTime = System.nanoTime();
+				batchStartTime = startTime;
+				SCHEDULER.schedule(() -> FLUSH_EXECUTOR.execute(() -> flush(startTime)), windowMicros, TimeUnit.MICROSECONDS);
+			}
+
+			if (pendingLoads.size() >= maxBatchSize) {
+				fullBatch = pendingLoads;
+				fullBatchStartTime = batchStartTime;
+				pendingLoads = new LinkedHashMap<TenantKey<K>, CompletableFuture<V>>();
+			}
+		}
+
+		if (fullBatch != null) {
+			dispatch(fullBatch, fullBatchStartTime);
+		}
+
+		return promise;
+	}
+
+	/**
+	 * Returns the batch count, the batch size and the time the
+	 * keys waited for their batch to be sent.
+	 */
+	public Map<String, Object> getStats() {
+		Snapshot batchSizeSnapshot = batchSizes.getSnapshot();
+		Snapshot waitSnapshot = waitMicros.getSnapshot();
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("windowMicros", windowMicros);
+		stats.put("maxBatchSize", maxBatchSize);
+		stats.put("keyCount", keyCount.get());
+		stats.put("batchCount", batchCount.get());
+		stats.put("meanBatchSize", batchSizeSnapshot.getMean());
+		stats.put("maxBatchSizeSeen", batchSizeSnapshot.getMax());
+		stats.put("meanWaitMicros", waitSnapshot.getMean());
+		stats.put("p99WaitMicros", waitSnapshot.get99thPercentile());
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Send the pending batch, if it is still the one the timer was set for
+	 * (it may have been sent already, because it filled up).
+	 */
+	private void flush(long startTime) {
+		Map<TenantKey<K>, CompletableFuture<V>> batch = null;
+
+		synchronized (this) {
+			if (pendingLoads.isEmpty() || batchStartTime != startTime) {
+				return;
+			}
+			batch = pendingLoads;
+			pendingLoads = new LinkedHashMap<TenantKey<K>, CompletableFuture<V>>();
+		}
+
+		dispatch(batch, startTime);
+	}
+
+	/**
+	 * Splits the batch by tenant, and sends each tenant's keys for that tenant.
+	 */
+	private void dispatch(Map<TenantKey<K>, CompletableFuture<V>> batch, long startTime) {
+		Map<String, Map<K, CompletableFuture<V>>> batchesByTenant = new LinkedHashMap<String, Map<K, CompletableFuture<V>>>();
+		for (Map.Entry<TenantKey<K>, CompletableFuture<V>> entry : batch.entrySet()) {
+			Map<K, CompletableFuture<V>> tenantBatch = batchesByTenant.get(entry.getKey().getTenant());
+			if (tenantBatch == null) {
+				tenantBatch = new LinkedHashMap<K, CompletableFuture<V>>();
+				batchesByTenant.put(entry.getKey().getTenant(), tenantBatch);
+			}
+			tenantBatch.put(entry.getKey().getKey(), entry.getValue());
+		}
+
+		for (Map.Entry<String, Map<K, CompletableFuture<V>>> tenantBatch : batchesByTenant.entrySet()) {
+			TenantContext.runAs(tenantBatch.getKey(), () -> dispatchTenantBatch(tenantBatch.getValue(), startTime));
+		}
+	}
+
+	private void dispatchTenantBatch(Map<K, CompletableFuture<V>> batch, long startTime) {
+		batchCount.incrementAndGet();
+		batchSizes.update(batch.size());
+		waitMicros.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+
+		CompletableFuture<Map<K, V>> batchFuture = null;
+		try {
+			batchFuture = batchFunction.apply(new ArrayList<K>(batch.keySet()));
+		}
+		catch (Throwable t) {
+			batchFuture = new CompletableFuture<Map<K, V>>();
+			batchFuture.completeExceptionally(t);
+		}
+
+		batchFuture.whenComplete((values, t) -> {
+			Map<K, V> results = (values != null) ? values : Collections.<K, V>emptyMap();
+			for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+				if (t != null) {
+					entry.getValue().completeExceptionally(t);
+				}
+				else {
+					entry.getValue().complete(results.get(entry.getKey()));
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,321 @@
+package com.tonyzampogna.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tonyzampogna.config.ListsCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Writes the model caches to a snapshot file on shutdown, and puts the
+ * models back in the caches on startup, so a new instance starts warm.
+ *
+ * The file is a header (magic, version, creation time, entry count),
+ * followed by one record per model: the cache name, the key, when the
+ * model was loaded, the model as JSON, and a CRC32 of the record. On
+ * startup the file is memory mapped and read on a background thread, so
+ * the pages are only read in as the records are restored, and requests
+ * are served (from Cassandra) in the meantime. A file older than
+ * max-age-seconds is ignored, as are models older than that, and models
+ * past their cache's maximum staleness. Reading stops at the first record
+ * that is cut short or fails its CRC.
+ */
+@Component
+public class CacheSnapshot {
+	private static final Logger log = LoggerFactory.getLogger(CacheSnapshot.class);
+
+	private static final int MAGIC = 0x4C534E50;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 20;
+
+	private final ObjectMapper objectMapper;
+	private final String path;
+	private final long maxAgeMillis;
+	private final Map<String, SnapshotCache<?, ?>> snapshotCaches = new ConcurrentHashMap<String, SnapshotCache<?, ?>>();
+
+
+	@Autowired
+	public CacheSnapshot(ListsCacheProperties listsCacheProperties, ObjectMapper objectMapper) {
+		this(listsCacheProperties.getSnapshotPath(), listsCacheProperties.getSnapshotMaxAgeSeconds(), objectMapper);
+	}
+
+	public CacheSnapshot(String path, long maxAgeSeconds, ObjectMapper objectMapper) {
+		this.path = path;
+		this.maxAgeMillis = TimeUnit.SECONDS.toMillis(maxAgeSeconds);
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Include the cache in the snapshot. The keys are written with
+	 * toString(), and read back with the key parser.
+	 */
+	public <K, V> void register(StaleModelCache<K, V> cache, Function<String, K> keyParser, Class<V> modelClass) {
+		snapshotCaches.put(cache.getName(), new SnapshotCache<K, V>(cache, keyParser, modelClass));
+	}
+
+	/**
+	 * Restore the caches in the background, once the application is up.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void restoreInBackground() {
+		if (!StringUtils.hasLength(path) || !Files.exists(Paths.get(path))) {
+			return;
+		}
+
+		Thread thread = new Thread(() -> restore(), "cache-snapshot-restore");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@PreDestroy
+	public void write() {
+		if (!StringUtils.hasLength(path)) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		Path snapshotPath = Paths.get(path);
+		Path tempPath = Paths.get(path + ".tmp");
+		AtomicInteger entryCount = new AtomicInteger();
+
+		try {
+			createSnapshotFile(tempPath);
+			try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				outputStream.writeInt(MAGIC);
+				outputStream.writeInt(VERSION);
+				outputStream.writeLong(start);
+				outputStream.writeInt(0);
+
+				for (SnapshotCache<?, ?> snapshotCache : snapshotCaches.values()) {
+					entryCount.addAndGet(snapshotCache.write(outputStream, start));
+				}
+			}
+
+			// The entry count is filled in last.
+			try (RandomAccessFile file = new RandomAccessFile(tempPath.toFile(), "rw")) {
+				file.seek(HEADER_BYTES - 4);
+				file.writeInt(entryCount.get());
+			}
+
+			Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.info("Wrote the cache snapshot. Path: " + path + ". Entries: " + entryCount.get() + ". Millis: " + (System.currentTimeMillis() - start));
+		}
+		catch (Exception e) {
+			log.error("Exception occurred while writing the cache snapshot. Path: " + path, e);
+		}
+	}
+
+	/**
+	 * Reads the snapshot file and puts the models back in their caches.
+	 * Returns the number of models restored.
+	 */
+	public int restore() {
+		long start = System.currentTimeMillis();
+		int restoredCount = 0;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				log.warn("The cache snapshot is too short, and was not restored. Path: " + path);
+				return 0;
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int magic = buffer.getInt();
+			int version = buffer.getInt();
+			long createTime = buffer.getLong();
+			int entryCount = buffer.getInt();
+
+			if (magic != MAGIC || version != VERSION) {
+				log.warn("The cache snapshot is not a version " + VERSION + " snapshot, and was not restored. Path: " + path);
+				return 0;
+			}
+			if (start - createTime > maxAgeMillis) {
+				log.info("The cache snapshot is older than the maximum age, and was not restored. Path: " + path);
+				return 0;
+			}
+
+			for (int count = 0; count < entryCount; count++) {
+				ByteBuffer record = readRecord(buffer);
+				if (record == null) {
+					log.warn("The cache snapshot has a bad record, and was only partly restored. Path: " + path + ". Record: " + count);
+					break;
+				}
+				if (restoreRecord(record, start)) {
+					restoredCount++;
+				}
+			}
+		}
+		catch (Exception e) {
+			log.error("Exception occurred while restoring the cache snapshot. Path: " + path, e);
+		}
+
+		log.info("Restored the cache snapshot. Path: " + path + ". Entries: " + restoredCount + ". Millis: " + (System.currentTimeMillis() - start));
+		return restoredCount;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Creates the (empty) snapshot file. The cached users include their
+	 * passwords, so only the owner can read it, where that is supported.
+	 */
+	private static void createSnapshotFile(Path snapshotPath) throws IOException {
+		Files.deleteIfExists(snapshotPath);
+
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(snapshotPath, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			Files.createFile(snapshotPath);
+		}
+	}
+
+	/**
+	 * Returns the next record (without its length and CRC), or null if
+	 * it is cut short or its CRC does not match.
+	 */
+	private static ByteBuffer readRecord(ByteBuffer buffer) {
+		if (buffer.remaining() < 4) {
+			return null;
+		}
+
+		int length = buffer.getInt();
+		if (length < 0 || buffer.remaining() < length + 8) {
+			return null;
+		}
+
+		ByteBuffer record = buffer.slice();
+		record.limit(length);
+		buffer.position(buffer.position() + length);
+		long crc = buffer.getLong();
+
+		CRC32 crc32 = new CRC32();
+		crc32.update(record.duplicate());
+
+		return (crc32.getValue() == crc) ? record : null;
+	}
+
+	private boolean restoreRecord(ByteBuffer record, long now) throws IOException {
+		String cacheName = readString(record);
+		String key = readString(record);
+		long loadTime = record.getLong();
+		if (now - loadTime > maxAgeMillis) {
+			return false;
+		}
+
+		SnapshotCache<?, ?> snapshotCache = snapshotCaches.get(cacheName);
+		if (snapshotCache == null) {
+			return false;
+		}
+
+		byte[] model = new byte[record.remaining()];
+		record.get(model);
+
+		return snapshotCache.restore(key, loadTime, model);
+	}
+
+	private static void writeRecord(OutputStream outputStream, String cacheName, String key, long loadTime, byte[] model) throws IOException {
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(model.length + 64);
+		DataOutputStream record = new DataOutputStream(recordBytes);
+		writeString(record, cacheName);
+		writeString(record, key);
+		record.writeLong(loadTime);
+		record.write(model);
+		record.flush();
+
+		CRC32 crc32 = new CRC32();
+		crc32.update(recordBytes.toByteArray());
+
+		DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+		dataOutputStream.writeInt(recordBytes.size());
+		recordBytes.writeTo(dataOutputStream);
+		dataOutputStream.writeLong(crc32.getValue());
+		dataOutputStream.flush();
+	}
+
+	private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		outputStream.writeShort(bytes.length);
+		outputStream.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * A cache in the snapshot, with how to read its keys and models back.
+	 */
+	private class SnapshotCache<K, V> {
+		private final StaleModelCache<K, V> cache;
+		private final Function<String, K> keyParser;
+		private final Class<V> modelClass;
+
+		SnapshotCache(StaleModelCache<K, V> cache, Function<String, K> keyParser, Class<V> modelClass) {
+			this.cache = cache;
+			this.keyParser = keyParser;
+			this.modelClass = modelClass;
+		}
+
+		int write(OutputStream outputStream, long now) throws IOException {
+			AtomicInteger count = new AtomicInteger();
+
+			try {
+				cache.forEachModel((key, cachedModel) -> {
+					try {
+						writeRecord(outputStream, cache.getName(), key.toString(), now - cachedModel.getAgeMillis(), objectMapper.writeValueAsBytes(cachedModel.getModel()));
+						count.incrementAndGet();
+					}
+					catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+			}
+			catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+
+			return count.get();
+		}
+
+		boolean restore(String key, long loadTime, byte[] model) throws IOException {
+			return cache.restore(keyParser.apply(key), objectMapper.readValue(model, modelClass), loadTime);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.tonyzampogna.cache;
+
+/**
+ * A model read through a StaleModelCache, with how old it is.
+ *
+ * The model is null if it was not found. The staleness is how long
+ * ago the model should have been refreshed, and is 0 if it is fresh.
+ */
+public class CachedModel<V> {
+
+	private final V model;
+	private final long ageMillis;
+	private final long staleMillis;
+
+
+	public CachedModel(V model, long ageMillis, long staleMillis) {
+		this.model = model;
+		this.ageMillis = ageMillis;
+		this.staleMillis = staleMillis;
+	}
+
+	public V getModel() {
+		return model;
+	}
+
+	public long getAgeMillis() {
+		return ageMillis;
+	}
+
+	public long getStaleMillis() {
+		return staleMillis;
+	}
+
+	public boolean isStale() {
+		return staleMillis > 0;
+	}
+}
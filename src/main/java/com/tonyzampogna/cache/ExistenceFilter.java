@@ -0,0 +1,170 @@
+package com.tonyzampogna.cache;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Bloom filter of the keys that exist (for example, every username), used
+ * to pick a cheaper database read for keys that most likely do not exist.
+ *
+ * mightContain() returning false means the key was not put in this filter.
+ * Keys made on other instances only reach it through the invalidation bus,
+ * which can drop them, so a miss is not proof that the key does not exist.
+ * Until the filter has been seeded (see rebuild), every key might exist.
+ *
+ * A Bloom filter cannot remove keys, and its false-positive rate goes up as
+ * more keys than it was sized for are put in it. Both are fixed by rebuilding
+ * it from a scan of the keys. Keys put while a rebuild is running go in both
+ * the current filter and the new one, so none are lost.
+ */
+public class ExistenceFilter {
+
+	private final String name;
+	private final long minimumExpectedInsertions;
+	private final double falsePositiveRate;
+
+	private BloomFilter<CharSequence> filter = null;
+	private BloomFilter<CharSequence> rebuildFilter = null;
+	private long expectedInsertions = 0;
+	private long insertionCount = 0;
+	private long rebuildExpectedInsertions = 0;
+	private long rebuildInsertionCount = 0;
+
+	private final AtomicLong checkCount = new AtomicLong();
+	private final AtomicLong definiteMissCount = new AtomicLong();
+	private final AtomicLong rebuildCount = new AtomicLong();
+
+
+	public ExistenceFilter(String name, long expectedInsertions, double falsePositiveRate) {
+		this.name = name;
+		this.minimumExpectedInsertions = Math.max(1, expectedInsertions);
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns false if the key definitely does not exist.
+	 */
+	public boolean mightContain(String key) {
+		checkCount.incrementAndGet();
+
+		synchronized (this) {
+			if (filter == null || filter.mightContain(key)) {
+				return true;
+			}
+		}
+
+		definiteMissCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Add a key. Call this before the key is written, so a check made
+	 * while it is being written does not say it does not exist.
+	 */
+	public synchronized void put(String key) {
+		if (filter != null) {
+			filter.put(key);
+			insertionCount++;
+		}
+		if (rebuildFilter != null) {
+			rebuildFilter.put(key);
+			rebuildInsertionCount++;
+		}
+	}
+
+	/**
+	 * Add a key to the rebuild only (this is for the scan of the keys).
+	 */
+	public synchronized void putForRebuild(String key) {
+		if (rebuildFilter != null) {
+			rebuildFilter.put(key);
+			rebuildInsertionCount++;
+		}
+	}
+
+	/**
+	 * Returns true if more keys have been put in the filter than it was
+	 * sized for, so its false-positive rate is higher than configured.
+	 */
+	public synchronized boolean isOverfull() {
+		return filter != null && insertionCount > expectedInsertions;
+	}
+
+	/**
+	 * Start a rebuild, sized for at least twice the keys in the
+	 * current filter. Put every key (with putForRebuild), then call
+	 * finishRebuild().
+	 */
+	public synchronized void startRebuild() {
+		rebuildExpectedInsertions = Math.max(minimumExpectedInsertions, insertionCount * 2);
+
+		rebuildFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), (int) Math.min(Integer.MAX_VALUE, rebuildExpectedInsertions), falsePositiveRate);
+		rebuildInsertionCount = 0;
+	}
+
+	/**
+	 * Replace the filter with the rebuilt one.
+	 */
+	public synchronized void finishRebuild() {
+		if (rebuildFilter == null) {
+			return;
+		}
+
+		filter = rebuildFilter;
+		expectedInsertions = rebuildExpectedInsertions;
+		insertionCount = rebuildInsertionCount;
+		rebuildFilter = null;
+		rebuildCount.incrementAndGet();
+	}
+
+	/**
+	 * Drop a rebuild that failed. The current filter is kept.
+	 */
+	public synchronized void cancelRebuild() {
+		rebuildFilter = null;
+	}
+
+	public synchronized Map<String, Object> getStats() {
+		long checks = checkCount.get();
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("ready", filter != null);
+		stats.put("rebuilding", rebuildFilter != null);
+		stats.put("insertionCount", insertionCount);
+		stats.put("expectedInsertions", expectedInsertions);
+		stats.put("falsePositiveRate", falsePositiveRate);
+		stats.put("expectedFalsePositiveRate", (filter != null) ? filter.expectedFpp() : 1.0);
+		stats.put("memoryBytes", getBitSize(expectedInsertions, falsePositiveRate) / 8);
+		stats.put("checkCount", checks);
+		stats.put("definiteMissCount", definiteMissCount.get());
+		stats.put("definiteMissRate", (checks > 0) ? definiteMissCount.get() / (double) checks : 0.0);
+		stats.put("rebuildCount", rebuildCount.get());
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * The number of bits in a Bloom filter sized for the insertions
+	 * and false-positive rate (the same formula Guava uses).
+	 */
+	static long getBitSize(long insertions, double falsePositiveRate) {
+		if (insertions == 0) {
+			return 0;
+		}
+		return (long) (-insertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+	}
+}
@@ -0,0 +1,229 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.config.ListsCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tells the other application instances which cached models to drop.
+ *
+ * The services publish the keys they wrote to (by topic, such as "lists"),
+ * and subscribe to the topics of their caches. Published keys are held for
+ * up to flush-interval-millis, so a burst of writes is sent as one batch,
+ * and a key published more than once in that time is only sent once.
+ *
+ * With no transport (no peers configured), publishing does nothing, and
+ * each instance only sees its own writes.
+ */
+@Component
+public class InvalidationBus {
+	private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+
+	public static final String LIST_TOPIC = "lists";
+	public static final String USER_TOPIC = "users";
+	public static final String USERNAME_TOPIC = "usernames";
+
+	private final String name = "invalidationBus";
+	private final String nodeId = UUID.randomUUID().toString();
+	private final long flushIntervalMillis;
+	private final int maxBatchSize;
+	private final ConcurrentMap<String, List<Consumer<String>>> subscribers = new ConcurrentHashMap<String, List<Consumer<String>>>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "invalidation-bus");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private InvalidationTransport transport = null;
+	private Set<String> pendingMessages = new LinkedHashSet<String>();
+	private boolean flushScheduled = false;
+
+	private final AtomicLong publishCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong sentBatchCount = new AtomicLong();
+	private final AtomicLong sentMessageCount = new AtomicLong();
+	private final AtomicLong sendFailureCount = new AtomicLong();
+	private final AtomicLong receivedMessageCount = new AtomicLong();
+
+
+	@Autowired
+	public InvalidationBus(ListsCacheProperties listsCacheProperties, ModelCacheRegistry modelCacheRegistry) {
+		this(listsCacheProperties.getInvalidationFlushIntervalMillis(), listsCacheProperties.getInvalidationMaxBatchSize());
+		modelCacheRegistry.register(this);
+
+		String peers = listsCacheProperties.getInvalidationPeers();
+		if (StringUtils.hasLength(peers)) {
+			setTransport(new UdpInvalidationTransport(listsCacheProperties.getInvalidationPort(), UdpInvalidationTransport.parsePeers(peers)));
+		}
+	}
+
+	public InvalidationBus(long flushIntervalMillis, int maxBatchSize) {
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Start sending and receiving through the transport. If it cannot
+	 * be started, the bus runs without one.
+	 */
+	public void setTransport(InvalidationTransport transport) {
+		try {
+			transport.start(this::receive);
+			this.transport = transport;
+		}
+		catch (IOException e) {
+			log.error("Exception occurred while starting the invalidation transport. Caches will not be invalidated across instances.", e);
+		}
+	}
+
+	/**
+	 * Call the handler with each key that another instance publishes on the topic.
+	 */
+	public void subscribe(String topic, Consumer<String> handler) {
+		subscribers.putIfAbsent(topic, new CopyOnWriteArrayList<Consumer<String>>());
+		subscribers.get(topic).add(handler);
+	}
+
+	/**
+	 * Tell the other instances to drop the key from the topic's caches.
+	 */
+	public void publish(String topic, Object key) {
+		if (transport == null || key == null) {
+			return;
+		}
+
+		publishCount.incrementAndGet();
+		boolean flushNow = false;
+
+		synchronized (this) {
+			if (!pendingMessages.add(topic + "\t" + key)) {
+				coalescedCount.incrementAndGet();
+			}
+
+			if (pendingMessages.size() >= maxBatchSize) {
+				flushNow = true;
+			}
+			else if (!flushScheduled) {
+				flushScheduled = true;
+				scheduler.schedule(this::flush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		if (flushNow) {
+			scheduler.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Send the pending messages as one batch.
+	 */
+	public void flush() {
+		Set<String> messages = null;
+
+		synchronized (this) {
+			messages = pendingMessages;
+			pendingMessages = new LinkedHashSet<String>();
+			flushScheduled = false;
+		}
+
+		if (messages.isEmpty() || transport == null) {
+			return;
+		}
+
+		List<String> batch = new ArrayList<String>(messages.size() + 1);
+		batch.add(nodeId);
+		batch.addAll(messages);
+
+		try {
+			transport.send(batch);
+			sentBatchCount.incrementAndGet();
+			sentMessageCount.addAndGet(messages.size());
+		}
+		catch (Exception e) {
+			sendFailureCount.incrementAndGet();
+			log.error("Exception occurred while sending invalidation messages. Messages: " + messages.size(), e);
+		}
+	}
+
+	@PreDestroy
+	public void stop() {
+		flush();
+		scheduler.shutdown();
+		if (transport != null) {
+			transport.stop();
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("enabled", transport != null);
+		stats.put("publishCount", publishCount.get());
+		stats.put("coalescedCount", coalescedCount.get());
+		stats.put("sentBatchCount", sentBatchCount.get());
+		stats.put("sentMessageCount", sentMessageCount.get());
+		stats.put("sendFailureCount", sendFailureCount.get());
+		stats.put("receivedMessageCount", receivedMessageCount.get());
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Hands each received key to the topic's subscribers. The first
+	 * message is the sender's node ID. Our own batches are skipped.
+	 */
+	void receive(List<String> messages) {
+		if (messages.isEmpty() || nodeId.equals(messages.get(0))) {
+			return;
+		}
+
+		for (String message : messages.subList(1, messages.size())) {
+			int separator = message.indexOf('\t');
+			if (separator < 0) {
+				continue;
+			}
+
+			receivedMessageCount.incrementAndGet();
+			List<Consumer<String>> handlers = subscribers.get(message.substring(0, separator));
+			if (handlers != null) {
+				for (Consumer<String> handler : handlers) {
+					try {
+						handler.accept(message.substring(separator + 1));
+					}
+					catch (Exception e) {
+						log.error("Exception occurred while applying an invalidation message. Message: " + message, e);
+					}
+				}
+			}
+		}
+	}
+}
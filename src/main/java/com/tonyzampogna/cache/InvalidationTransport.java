@@ -0,0 +1,27 @@
+package com.tonyzampogna.cache;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sends batches of invalidation messages to the other application
+ * instances, and hands the batches they send to the receiver.
+ *
+ * Delivery is best effort. A lost batch means the other instances serve
+ * a cached model until it expires, as they would with no transport.
+ */
+public interface InvalidationTransport {
+
+	/**
+	 * Start listening. Each batch that is received is handed to the receiver.
+	 */
+	void start(Consumer<List<String>> receiver) throws IOException;
+
+	/**
+	 * Send one batch of messages to every peer.
+	 */
+	void send(List<String> messages) throws IOException;
+
+	void stop();
+}
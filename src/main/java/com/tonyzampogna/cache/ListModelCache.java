@@ -0,0 +1,27 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.config.ListsCacheProperties;
+import com.tonyzampogna.domain.ListModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * The full lists (with their items), by list ID.
+ *
+ * The list and item services invalidate a list when they write to it.
+ * A list past its refresh time is served stale while it is refreshed.
+ * The cache is kept in the cache snapshot across restarts.
+ */
+@Component
+public class ListModelCache extends StaleModelCache<UUID, ListModel> {
+
+	@Autowired
+	public ListModelCache(ListsCacheProperties listsCacheProperties, ModelCacheRegistry modelCacheRegistry, CacheSnapshot cacheSnapshot) {
+		super("lists", listsCacheProperties.getListMaximumSize(),
+			listsCacheProperties.getListExpireAfterWriteSeconds(), listsCacheProperties.getListMaxStaleSeconds());
+		modelCacheRegistry.register(this);
+		cacheSnapshot.register(this, UUID::fromString, ListModel.class);
+	}
+}
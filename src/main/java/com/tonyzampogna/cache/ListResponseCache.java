@@ -0,0 +1,23 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.config.ListsCacheProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * The serialized responses for GET /list/{listId}, by list ID.
+ *
+ * The list and item services invalidate a list's response
+ * when they write to the list.
+ */
+@Component
+public class ListResponseCache extends ResponseCache<UUID> {
+
+	@Autowired
+	public ListResponseCache(ListsCacheProperties listsCacheProperties, ModelCacheRegistry modelCacheRegistry) {
+		super("listResponses", listsCacheProperties.getListResponseMaximumBytes());
+		modelCacheRegistry.register(this);
+	}
+}
@@ -0,0 +1,122 @@
+package com.tonyzampogna.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded, in-process read-through cache of models, in front of an
+ * asynchronous (database) loader.
+ *
+ * Entries are evicted by size and by time since they were loaded. Null
+ * results are not cached. The cached models are shared between callers,
+ * so they must be treated as read-only. Each tenant's entries are kept
+ * apart.
+ */
+public class ModelCache<K, V> {
+
+	private final String name;
+	private final long maximumSize;
+	private final long expireAfterWriteSeconds;
+	private final Cache<TenantKey<K>, V> cache;
+
+	// Bumped on every invalidation. A load that was started before an
+	// invalidation does not put its (possibly old) result in the cache.
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private final AtomicLong loadSuccessCount = new AtomicLong();
+	private final AtomicLong loadFailureCount = new AtomicLong();
+	private final AtomicLong totalLoadTime = new AtomicLong();
+
+
+	public ModelCache(String name, long maximumSize, long expireAfterWriteSeconds) {
+		this.name = name;
+		this.maximumSize = maximumSize;
+		this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+		this.cache = CacheBuilder.newBuilder()
+			.maximumSize(maximumSize)
+			.expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+			.recordStats()
+			.build();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the cached model, or load it (and cache it) if it is not cached.
+	 */
+	public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+		TenantKey<K> tenantKey = TenantKey.of(key);
+		V value = cache.getIfPresent(tenantKey);
+		if (value != null) {
+			return CompletableFuture.completedFuture(value);
+		}
+
+		long invalidations = invalidationCount.get();
+		long start = System.nanoTime();
+
+		return loader.apply(key).whenComplete((loadedValue, t) -> {
+			totalLoadTime.addAndGet(System.nanoTime() - start);
+
+			if (t != null) {
+				loadFailureCount.incrementAndGet();
+			}
+			else {
+				loadSuccessCount.incrementAndGet();
+				if (loadedValue != null && invalidations == invalidationCount.get()) {
+					cache.put(tenantKey, loadedValue);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Drop the key, for every tenant.
+	 */
+	public void invalidate(K key) {
+		if (key != null) {
+			invalidationCount.incrementAndGet();
+			for (String tenant : TenantContext.getTenants()) {
+				cache.invalidate(TenantKey.of(tenant, key));
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		invalidationCount.incrementAndGet();
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Returns the hit rate, eviction and load statistics for the cache.
+	 */
+	public Map<String, Object> getStats() {
+		CacheStats cacheStats = cache.stats();
+		long loadCount = loadSuccessCount.get() + loadFailureCount.get();
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("size", cache.size());
+		stats.put("maximumSize", maximumSize);
+		stats.put("expireAfterWriteSeconds", expireAfterWriteSeconds);
+		stats.put("hitCount", cacheStats.hitCount());
+		stats.put("missCount", cacheStats.missCount());
+		stats.put("hitRate", cacheStats.hitRate());
+		stats.put("evictionCount", cacheStats.evictionCount());
+		stats.put("invalidationCount", invalidationCount.get());
+		stats.put("loadSuccessCount", loadSuccessCount.get());
+		stats.put("loadFailureCount", loadFailureCount.get());
+		stats.put("averageLoadMillis", (loadCount > 0) ? TimeUnit.NANOSECONDS.toMillis(totalLoadTime.get()) / (double) loadCount : 0.0);
+
+		return stats;
+	}
+}
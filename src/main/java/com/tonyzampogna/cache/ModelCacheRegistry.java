@@ -0,0 +1,74 @@
+package com.tonyzampogna.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of the application's caches (and the single-flight
+ * and batch loaders), so their statistics can be reported in one place.
+ */
+@Component
+public class ModelCacheRegistry {
+
+	private final List<ModelCache<?, ?>> modelCaches = new CopyOnWriteArrayList<ModelCache<?, ?>>();
+	private final Map<String, Supplier<Map<String, Object>>> statsByName = new ConcurrentSkipListMap<String, Supplier<Map<String, Object>>>();
+
+
+	public <K, V> ModelCache<K, V> register(ModelCache<K, V> modelCache) {
+		modelCaches.add(modelCache);
+		statsByName.put(modelCache.getName(), modelCache::getStats);
+		return modelCache;
+	}
+
+	public <K, V> StaleModelCache<K, V> register(StaleModelCache<K, V> staleModelCache) {
+		statsByName.put(staleModelCache.getName(), staleModelCache::getStats);
+		return staleModelCache;
+	}
+
+	public <K> ResponseCache<K> register(ResponseCache<K> responseCache) {
+		statsByName.put(responseCache.getName(), responseCache::getStats);
+		return responseCache;
+	}
+
+	public <K, V> SingleFlight<K, V> register(SingleFlight<K, V> singleFlight) {
+		statsByName.put(singleFlight.getName(), singleFlight::getStats);
+		return singleFlight;
+	}
+
+	public <K, V> BatchLoader<K, V> register(BatchLoader<K, V> batchLoader) {
+		statsByName.put(batchLoader.getName(), batchLoader::getStats);
+		return batchLoader;
+	}
+
+	public ExistenceFilter register(ExistenceFilter existenceFilter) {
+		statsByName.put(existenceFilter.getName(), existenceFilter::getStats);
+		return existenceFilter;
+	}
+
+	public InvalidationBus register(InvalidationBus invalidationBus) {
+		statsByName.put(invalidationBus.getName(), invalidationBus::getStats);
+		return invalidationBus;
+	}
+
+	public List<ModelCache<?, ?>> getModelCaches() {
+		return new ArrayList<ModelCache<?, ?>>(modelCaches);
+	}
+
+	/**
+	 * Returns the statistics for each cache, by cache name.
+	 */
+	public Map<String, Map<String, Object>> getStats() {
+		Map<String, Map<String, Object>> stats = new LinkedHashMap<String, Map<String, Object>>();
+		for (Map.Entry<String, Supplier<Map<String, Object>>> entry : statsByName.entrySet()) {
+			stats.put(entry.getKey(), entry.getValue().get());
+		}
+		return stats;
+	}
+}
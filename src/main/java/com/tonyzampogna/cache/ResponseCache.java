@@ -0,0 +1,234 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cache of serialized (JSON) responses, with a gzip copy of each.
+ *
+ * The bytes are kept off-heap, in direct buffers, so a large cache does
+ * not add to the heap the garbage collector has to walk. The cache is
+ * bounded by the total bytes (plain and gzip), and evicts the least
+ * recently used response when it is full. Each tenant's responses
+ * are kept apart.
+ */
+public class ResponseCache<K> {
+
+	// The most keys to remember the invalidation of (see invalidate).
+	private static final int MAXIMUM_INVALIDATED_KEYS = 10000;
+
+	private final String name;
+	private final long maximumBytes;
+	private final LinkedHashMap<TenantKey<K>, CachedResponse> cachedResponses = new LinkedHashMap<TenantKey<K>, CachedResponse>(16, 0.75f, true);
+	private long usedBytes = 0;
+
+	// Bumped on every invalidation. Each invalidated key keeps the
+	// generation it was last invalidated at, so a response for the key
+	// that was loaded before then is not cached. Responses for other keys
+	// still are. Once a key is forgotten (to keep the map bounded), no
+	// response loaded before its invalidation is cached, for any key.
+	private long generation = 0;
+	private long forgottenGeneration = 0;
+	private final LinkedHashMap<K, Long> invalidatedGenerations = new LinkedHashMap<K, Long>();
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+
+	public ResponseCache(String name, long maximumBytes) {
+		this.name = name;
+		this.maximumBytes = maximumBytes;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the cached response, or null if there is none.
+	 */
+	public synchronized CachedResponse get(K key) {
+		CachedResponse cachedResponse = cachedResponses.get(TenantKey.of(key));
+
+		if (cachedResponse != null) {
+			hitCount++;
+		}
+		else {
+			missCount++;
+		}
+
+		return cachedResponse;
+	}
+
+	/**
+	 * Returns the generation to pass to put(). Take it before
+	 * the response is loaded.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Cache the serialized response, unless the key was invalidated
+	 * since the generation was taken, or it does not fit in the cache.
+	 */
+	public void put(K key, byte[] body, long loadGeneration) {
+		put(key, body, null, loadGeneration);
+	}
+
+	/**
+	 * Cache the serialized response with its entity tag, so a conditional
+	 * request can be answered without reading the body.
+	 */
+	public void put(K key, byte[] body, String eTag, long loadGeneration) {
+		byte[] gzipBody = gzip(body);
+		long size = body.length + gzipBody.length;
+		if (size > maximumBytes) {
+			return;
+		}
+
+		CachedResponse cachedResponse = new CachedResponse(toDirectBuffer(body), toDirectBuffer(gzipBody), eTag);
+		TenantKey<K> tenantKey = TenantKey.of(key);
+
+		synchronized (this) {
+			Long invalidatedGeneration = invalidatedGenerations.get(key);
+			if (loadGeneration < forgottenGeneration ||
+				(invalidatedGeneration != null && loadGeneration < invalidatedGeneration)) {
+				return;
+			}
+
+			remove(tenantKey);
+
+			// Evict the least recently used responses until it fits.
+			Iterator<CachedResponse> iterator = cachedResponses.values().iterator();
+			while (usedBytes + size > maximumBytes && iterator.hasNext()) {
+				usedBytes -= iterator.next().getSize();
+				iterator.remove();
+				evictionCount++;
+			}
+
+			cachedResponses.put(tenantKey, cachedResponse);
+			usedBytes += size;
+		}
+	}
+
+	/**
+	 * Drop the response for the key, for every tenant.
+	 */
+	public synchronized void invalidate(K key) {
+		if (key != null) {
+			generation++;
+			invalidatedGenerations.remove(key);
+			invalidatedGenerations.put(key, generation);
+			if (invalidatedGenerations.size() > MAXIMUM_INVALIDATED_KEYS) {
+				Iterator<Long> iterator = invalidatedGenerations.values().iterator();
+				forgottenGeneration = iterator.next();
+				iterator.remove();
+			}
+
+			for (String tenant : TenantContext.getTenants()) {
+				remove(TenantKey.of(tenant, key));
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		generation++;
+		forgottenGeneration = generation;
+		invalidatedGenerations.clear();
+		cachedResponses.clear();
+		usedBytes = 0;
+	}
+
+	public synchronized Map<String, Object> getStats() {
+		long requestCount = hitCount + missCount;
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("size", cachedResponses.size());
+		stats.put("usedBytes", usedBytes);
+		stats.put("maximumBytes", maximumBytes);
+		stats.put("hitCount", hitCount);
+		stats.put("missCount", missCount);
+		stats.put("hitRate", (requestCount > 0) ? hitCount / (double) requestCount : 1.0);
+		stats.put("evictionCount", evictionCount);
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	private void remove(TenantKey<K> key) {
+		CachedResponse cachedResponse = cachedResponses.remove(key);
+		if (cachedResponse != null) {
+			usedBytes -= cachedResponse.getSize();
+		}
+	}
+
+	private static ByteBuffer toDirectBuffer(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	private static byte[] gzip(byte[] bytes) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 4 + 64);
+
+		try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+			gzipOutputStream.write(bytes);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return outputStream.toByteArray();
+	}
+
+
+	/**
+	 * One cached response. The buffers returned are views of the
+	 * cached bytes, so each caller can read them independently.
+	 */
+	public static class CachedResponse {
+		private final ByteBuffer body;
+		private final ByteBuffer gzipBody;
+		private final String eTag;
+
+		CachedResponse(ByteBuffer body, ByteBuffer gzipBody, String eTag) {
+			this.body = body;
+			this.gzipBody = gzipBody;
+			this.eTag = eTag;
+		}
+
+		public ByteBuffer getBody() {
+			return body.duplicate();
+		}
+
+		public ByteBuffer getGzipBody() {
+			return gzipBody.duplicate();
+		}
+
+		/**
+		 * The entity tag of the response, or null if it has none.
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		long getSize() {
+			return body.capacity() + gzipBody.capacity();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Coalesces concurrent loads of the same key. The first caller starts
+ * the load, and callers that come in while it is running get the same
+ * pending result, instead of sending the same query again. Once the
+ * load finishes, the next caller starts a new one.
+ *
+ * The result is shared between the callers, so it must be treated
+ * as read-only. Loads are only shared by callers for the same tenant.
+ */
+public class SingleFlight<K, V> {
+
+	private final String name;
+	private final ConcurrentMap<TenantKey<K>, CompletableFuture<V>> loadsInFlight = new ConcurrentHashMap<TenantKey<K>, CompletableFuture<V>>();
+
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong sharedCount = new AtomicLong();
+
+
+	public SingleFlight(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the load in flight for the key, or start one.
+	 */
+	public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+		TenantKey<K> tenantKey = TenantKey.of(key);
+		CompletableFuture<V> promise = new CompletableFuture<V>();
+
+		CompletableFuture<V> loadInFlight = loadsInFlight.putIfAbsent(tenantKey, promise);
+		if (loadInFlight != null) {
+			sharedCount.incrementAndGet();
+			return loadInFlight;
+		}
+
+		loadCount.incrementAndGet();
+		try {
+			loader.apply(key).whenComplete((value, t) -> {
+				// Remove the load before completing it, so a caller that
+				// sees it finished does not join it.
+				loadsInFlight.remove(tenantKey, promise);
+				if (t != null) {
+					promise.completeExceptionally(t);
+				}
+				else {
+					promise.complete(value);
+				}
+			});
+		}
+		catch (Throwable t) {
+			loadsInFlight.remove(tenantKey, promise);
+			promise.completeExceptionally(t);
+		}
+
+		return promise;
+	}
+
+	/**
+	 * Stop sharing the load in flight for the key (after a write),
+	 * so the next caller starts a new load. This is for every tenant.
+	 */
+	public void forget(K key) {
+		if (key != null) {
+			for (String tenant : TenantContext.getTenants()) {
+				loadsInFlight.remove(TenantKey.of(tenant, key));
+			}
+		}
+	}
+
+	/**
+	 * Stop sharing the loads in flight for the keys that match (for
+	 * example, every projection of a list). This is for every tenant.
+	 */
+	public void forgetIf(Predicate<K> matches) {
+		loadsInFlight.keySet().removeIf(tenantKey -> matches.test(tenantKey.getKey()));
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("inFlight", loadsInFlight.size());
+		stats.put("loadCount", loadCount.get());
+		stats.put("sharedCount", sharedCount.get());
+		return stats;
+	}
+}
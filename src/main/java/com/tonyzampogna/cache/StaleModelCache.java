@@ -0,0 +1,293 @@
+package com.tonyzampogna.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, in-process read-through cache of models that serves stale
+ * models (stale-while-revalidate, and stale-if-error).
+ *
+ * A model is fresh until refresh-after-seconds after it was loaded. After
+ * that, it is still returned right away, and one refresh is started in the
+ * background. If the refresh fails (a slow or down Cassandra node), the
+ * last good model keeps being returned, until it is max-stale-seconds past
+ * its refresh time. Only then does a read wait for (and fail with) the
+ * database. Invalidated models are removed, so a write is never hidden.
+ *
+ * Null results are not cached. The cached models are shared between
+ * callers, so they must be treated as read-only.
+ *
+ * Each tenant's models are kept apart. Only the default tenant's models
+ * are kept in the cache snapshot.
+ */
+public class StaleModelCache<K, V> {
+
+	private final String name;
+	private final long maximumSize;
+	private final long refreshAfterMillis;
+	private final long maxStaleMillis;
+	private final LongSupplier clock;
+	private final Cache<TenantKey<K>, Entry<V>> cache;
+
+	// The keys invalidated in the last refresh-after plus max-stale
+	// window (or all keys, after an invalidateAll). Their snapshot
+	// models may be the ones that were invalidated, so they are not
+	// restored. Older snapshot models are never restored anyway.
+	private final Cache<K, Boolean> invalidatedKeys;
+	private volatile boolean allInvalidated = false;
+
+	// The background refreshes in flight, by key.
+	private final ConcurrentMap<TenantKey<K>, CompletableFuture<V>> refreshes = new ConcurrentHashMap<TenantKey<K>, CompletableFuture<V>>();
+
+	// Bumped on every invalidation. A load that was started before an
+	// invalidation does not put its (possibly old) result in the cache.
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong staleHitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong refreshSuccessCount = new AtomicLong();
+	private final AtomicLong refreshFailureCount = new AtomicLong();
+	private final AtomicLong loadSuccessCount = new AtomicLong();
+	private final AtomicLong loadFailureCount = new AtomicLong();
+	private final AtomicLong totalLoadTime = new AtomicLong();
+	private final AtomicLong maxStaleServedMillis = new AtomicLong();
+
+
+	public StaleModelCache(String name, long maximumSize, long refreshAfterSeconds, long maxStaleSeconds) {
+		this(name, maximumSize, refreshAfterSeconds, maxStaleSeconds, System::currentTimeMillis);
+	}
+
+	StaleModelCache(String name, long maximumSize, long refreshAfterSeconds, long maxStaleSeconds, LongSupplier clock) {
+		this.name = name;
+		this.maximumSize = maximumSize;
+		this.refreshAfterMillis = TimeUnit.SECONDS.toMillis(refreshAfterSeconds);
+		this.maxStaleMillis = TimeUnit.SECONDS.toMillis(maxStaleSeconds);
+		this.clock = clock;
+		Ticker ticker = new Ticker() {
+			@Override
+			public long read() {
+				return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+			}
+		};
+		this.cache = CacheBuilder.newBuilder()
+			.maximumSize(maximumSize)
+			.expireAfterWrite(refreshAfterMillis + maxStaleMillis, TimeUnit.MILLISECONDS)
+			.ticker(ticker)
+			.recordStats()
+			.build();
+		this.invalidatedKeys = CacheBuilder.newBuilder()
+			.expireAfterWrite(refreshAfterMillis + maxStaleMillis, TimeUnit.MILLISECONDS)
+			.ticker(ticker)
+			.build();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Return the cached model, or load it (and cache it) if it is not cached.
+	 * A stale model is returned right away, and refreshed in the background.
+	 */
+	public CompletableFuture<CachedModel<V>> get(K key, Function<K, CompletableFuture<V>> loader) {
+		TenantKey<K> tenantKey = TenantKey.of(key);
+		Entry<V> entry = cache.getIfPresent(tenantKey);
+
+		// A restored model can outlive its maximum staleness in the
+		// cache, since the cache expires models by when they were put.
+		if (entry != null && clock.getAsLong() - entry.loadTime >= refreshAfterMillis + maxStaleMillis) {
+			cache.asMap().remove(tenantKey, entry);
+			entry = null;
+		}
+
+		if (entry != null) {
+			long ageMillis = clock.getAsLong() - entry.loadTime;
+			long staleMillis = Math.max(0, ageMillis - refreshAfterMillis);
+
+			if (staleMillis == 0) {
+				hitCount.incrementAndGet();
+			}
+			else {
+				staleHitCount.incrementAndGet();
+				updateMaxStaleServed(staleMillis);
+				refresh(tenantKey, loader);
+			}
+
+			return CompletableFuture.completedFuture(new CachedModel<V>(entry.model, ageMillis, staleMillis));
+		}
+
+		missCount.incrementAndGet();
+
+		return load(tenantKey, loader).thenApply(model -> new CachedModel<V>(model, 0, 0));
+	}
+
+	/**
+	 * Hands every cached model of the default tenant (and how old
+	 * it is) to the consumer.
+	 */
+	public void forEachModel(BiConsumer<K, CachedModel<V>> consumer) {
+		long now = clock.getAsLong();
+
+		for (Map.Entry<TenantKey<K>, Entry<V>> entry : cache.asMap().entrySet()) {
+			if (!TenantContext.DEFAULT_TENANT.equals(entry.getKey().getTenant())) {
+				continue;
+			}
+			long ageMillis = now - entry.getValue().loadTime;
+			consumer.accept(entry.getKey().getKey(), new CachedModel<V>(entry.getValue().model, ageMillis, Math.max(0, ageMillis - refreshAfterMillis)));
+		}
+	}
+
+	/**
+	 * Puts a model of the default tenant that was loaded earlier (at
+	 * loadTime) back in the cache, as it was. It is skipped if it is
+	 * already past its maximum staleness, if the key is cached, or if the
+	 * key has been invalidated since startup (the model may be the one
+	 * that was invalidated).
+	 */
+	public boolean restore(K key, V model, long loadTime) {
+		if (model == null || allInvalidated || invalidatedKeys.getIfPresent(key) != null ||
+			clock.getAsLong() - loadTime >= refreshAfterMillis + maxStaleMillis) {
+			return false;
+		}
+
+		return cache.asMap().putIfAbsent(TenantKey.of(TenantContext.DEFAULT_TENANT, key), new Entry<V>(model, loadTime)) == null;
+	}
+
+	/**
+	 * Drop the key, for every tenant.
+	 */
+	public void invalidate(K key) {
+		if (key != null) {
+			invalidationCount.incrementAndGet();
+			invalidatedKeys.put(key, Boolean.TRUE);
+			for (String tenant : TenantContext.getTenants()) {
+				cache.invalidate(TenantKey.of(tenant, key));
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		invalidationCount.incrementAndGet();
+		allInvalidated = true;
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Returns the hit rate, eviction, load, staleness and refresh statistics
+	 * for the cache. It has the same keys as ModelCache.getStats (the
+	 * refresh time is its expireAfterWriteSeconds), and more.
+	 */
+	public Map<String, Object> getStats() {
+		CacheStats cacheStats = cache.stats();
+		long requestCount = hitCount.get() + staleHitCount.get() + missCount.get();
+		long loadCount = loadSuccessCount.get() + loadFailureCount.get();
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("size", cache.size());
+		stats.put("maximumSize", maximumSize);
+		stats.put("expireAfterWriteSeconds", TimeUnit.MILLISECONDS.toSeconds(refreshAfterMillis));
+		stats.put("refreshAfterSeconds", TimeUnit.MILLISECONDS.toSeconds(refreshAfterMillis));
+		stats.put("maxStaleSeconds", TimeUnit.MILLISECONDS.toSeconds(maxStaleMillis));
+		stats.put("hitCount", hitCount.get());
+		stats.put("staleHitCount", staleHitCount.get());
+		stats.put("missCount", missCount.get());
+		stats.put("hitRate", (requestCount > 0) ? (hitCount.get() + staleHitCount.get()) / (double) requestCount : 1.0);
+		stats.put("evictionCount", cacheStats.evictionCount());
+		stats.put("invalidationCount", invalidationCount.get());
+		stats.put("loadSuccessCount", loadSuccessCount.get());
+		stats.put("loadFailureCount", loadFailureCount.get());
+		stats.put("averageLoadMillis", (loadCount > 0) ? TimeUnit.NANOSECONDS.toMillis(totalLoadTime.get()) / (double) loadCount : 0.0);
+		stats.put("refreshSuccessCount", refreshSuccessCount.get());
+		stats.put("refreshFailureCount", refreshFailureCount.get());
+		stats.put("maxStaleServedMillis", maxStaleServedMillis.get());
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	private CompletableFuture<V> load(TenantKey<K> tenantKey, Function<K, CompletableFuture<V>> loader) {
+		long invalidations = invalidationCount.get();
+		long start = System.nanoTime();
+
+		return loader.apply(tenantKey.getKey()).whenComplete((loadedModel, t) -> {
+			totalLoadTime.addAndGet(System.nanoTime() - start);
+
+			if (t != null) {
+				loadFailureCount.incrementAndGet();
+			}
+			else {
+				loadSuccessCount.incrementAndGet();
+				if (loadedModel != null && invalidations == invalidationCount.get()) {
+					cache.put(tenantKey, new Entry<V>(loadedModel, clock.getAsLong()));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts a background refresh of the key, unless one is running. If
+	 * it fails, the cached model is left as it is.
+	 */
+	private void refresh(TenantKey<K> tenantKey, Function<K, CompletableFuture<V>> loader) {
+		CompletableFuture<V> refresh = new CompletableFuture<V>();
+		if (refreshes.putIfAbsent(tenantKey, refresh) != null) {
+			return;
+		}
+
+		try {
+			load(tenantKey, loader).whenComplete((model, t) -> {
+				refreshes.remove(tenantKey, refresh);
+				if (t != null) {
+					refreshFailureCount.incrementAndGet();
+				}
+				else {
+					refreshSuccessCount.incrementAndGet();
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			refreshes.remove(tenantKey, refresh);
+			refreshFailureCount.incrementAndGet();
+		}
+	}
+
+	private void updateMaxStaleServed(long staleMillis) {
+		long max = maxStaleServedMillis.get();
+		while (staleMillis > max && !maxStaleServedMillis.compareAndSet(max, staleMillis)) {
+			max = maxStaleServedMillis.get();
+		}
+	}
+
+
+	/**
+	 * A cached model, and when it was loaded.
+	 */
+	private static class Entry<V> {
+		private final V model;
+		private final long loadTime;
+
+		Entry(V model, long loadTime) {
+			this.model = model;
+			this.loadTime = loadTime;
+		}
+	}
+}
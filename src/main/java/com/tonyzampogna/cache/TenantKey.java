@@ -0,0 +1,63 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.util.Objects;
+
+/**
+ * A cache key, and the tenant it is for. The caches keep each tenant's
+ * entries apart, so a tenant is never served another tenant's model,
+ * even for the same ID.
+ */
+final class TenantKey<K> {
+
+	private final String tenant;
+	private final K key;
+
+
+	private TenantKey(String tenant, K key) {
+		this.tenant = tenant;
+		this.key = key;
+	}
+
+	/**
+	 * Returns the key for the current tenant.
+	 */
+	static <K> TenantKey<K> of(K key) {
+		return new TenantKey<K>(TenantContext.get(), key);
+	}
+
+	static <K> TenantKey<K> of(String tenant, K key) {
+		return new TenantKey<K>(tenant, key);
+	}
+
+	String getTenant() {
+		return tenant;
+	}
+
+	K getKey() {
+		return key;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof TenantKey)) {
+			return false;
+		}
+		TenantKey<?> other = (TenantKey<?>) o;
+		return tenant.equals(other.tenant) && Objects.equals(key, other.key);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * tenant.hashCode() + Objects.hashCode(key);
+	}
+
+	@Override
+	public String toString() {
+		return tenant + ":" + key;
+	}
+}
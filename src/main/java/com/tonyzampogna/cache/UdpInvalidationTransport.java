@@ -0,0 +1,132 @@
+package com.tonyzampogna.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An invalidation transport that sends each batch as UDP datagrams to a
+ * fixed list of peers (host:port). The messages are newline-separated
+ * UTF-8 text, and a batch is split so each datagram fits in one packet.
+ *
+ * Several instances can run on one host (for example, several JVMs on
+ * localhost), as long as each listens on its own port.
+ */
+public class UdpInvalidationTransport implements InvalidationTransport {
+	private static final Logger log = LoggerFactory.getLogger(UdpInvalidationTransport.class);
+
+	// Small enough to not be fragmented on a typical network.
+	private static final int MAX_DATAGRAM_BYTES = 1400;
+
+	private final int port;
+	private final List<InetSocketAddress> peers;
+	private DatagramSocket socket = null;
+
+
+	public UdpInvalidationTransport(int port, List<InetSocketAddress> peers) {
+		this.port = port;
+		this.peers = peers;
+	}
+
+	/**
+	 * Parses a comma-separated list of host:port peers.
+	 */
+	public static List<InetSocketAddress> parsePeers(String peers) {
+		List<InetSocketAddress> peerAddresses = new ArrayList<InetSocketAddress>();
+
+		for (String peer : StringUtils.commaDelimitedListToSet(peers.replace(" ", ""))) {
+			int separator = peer.lastIndexOf(':');
+			if (separator < 1) {
+				throw new RuntimeException("The peer must be host:port. Peer: " + peer);
+			}
+			peerAddresses.add(new InetSocketAddress(peer.substring(0, separator), Integer.parseInt(peer.substring(separator + 1))));
+		}
+
+		return peerAddresses;
+	}
+
+	/**
+	 * The port the transport is listening on (useful if it was started on port 0).
+	 */
+	public int getLocalPort() {
+		return socket.getLocalPort();
+	}
+
+	@Override
+	public void start(Consumer<List<String>> receiver) throws IOException {
+		socket = new DatagramSocket(port);
+
+		Thread thread = new Thread(() -> {
+			byte[] buffer = new byte[65536];
+			while (!socket.isClosed()) {
+				try {
+					DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+					socket.receive(packet);
+					String text = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8);
+					receiver.accept(Arrays.asList(text.split("\n")));
+				}
+				catch (SocketException e) {
+					// The socket was closed.
+				}
+				catch (Exception e) {
+					log.error("Exception occurred while receiving invalidation messages.", e);
+				}
+			}
+		}, "invalidation-receiver");
+		thread.setDaemon(true);
+		thread.start();
+
+		log.info("Listening for invalidation messages. Port: " + socket.getLocalPort() + ". Peers: " + peers);
+	}
+
+	/**
+	 * Sends the messages, split into datagrams. The first message (the
+	 * sender's node ID) is repeated at the start of every datagram.
+	 */
+	@Override
+	public void send(List<String> messages) throws IOException {
+		if (messages.size() < 2) {
+			return;
+		}
+
+		String header = messages.get(0);
+		StringBuilder datagram = new StringBuilder(header);
+
+		for (String message : messages.subList(1, messages.size())) {
+			if (datagram.length() > header.length() &&
+				datagram.length() + 1 + message.length() > MAX_DATAGRAM_BYTES) {
+				sendToPeers(datagram.toString());
+				datagram = new StringBuilder(header);
+			}
+			datagram.append('\n').append(message);
+		}
+
+		sendToPeers(datagram.toString());
+	}
+
+	@Override
+	public void stop() {
+		if (socket != null) {
+			socket.close();
+		}
+	}
+
+	private void sendToPeers(String datagram) throws IOException {
+		byte[] bytes = datagram.getBytes(StandardCharsets.UTF_8);
+
+		for (InetSocketAddress peer : peers) {
+			socket.send(new DatagramPacket(bytes, bytes.length, peer));
+		}
+	}
+}
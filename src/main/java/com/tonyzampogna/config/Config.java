@@ -1,10 +1,14 @@
 package com.tonyzampogna.config;
 
+import com.tonyzampogna.routing.RequestRouter;
+import com.tonyzampogna.tenant.TenantResolver;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.web.servlet.config.annotation.DefaultServletHandlerConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
@@ -15,11 +19,28 @@ import org.springframework.web.servlet.view.JstlView;
 @PropertySource("classpath:/${ENV:local}/lists-database.properties")
 public class Config extends WebMvcConfigurerAdapter {
 
+	@Autowired
+	private TenantResolver tenantResolver;
+
+	@Autowired
+	private RequestRouter requestRouter;
+
 	@Override
 	public void configureDefaultServletHandling(DefaultServletHandlerConfigurer configurer) {
 		configurer.enable();
 	}
 
+	/**
+	 * Set the tenant for each request (from the tenant header). Then send
+	 * requests for lists and users to the node that owns them (when
+	 * lists.web.routing.enabled is true).
+	 */
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(tenantResolver);
+		registry.addInterceptor(requestRouter);
+	}
+
 	/**
 	 * This can also get set by adding the prefix and suffix to the application.properties
 	 * file. See application.properties for an example.
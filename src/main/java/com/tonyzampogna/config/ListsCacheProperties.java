@@ -0,0 +1,199 @@
+package com.tonyzampogna.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Properties for the in-process caches
+ */
+@Component
+public class ListsCacheProperties {
+
+	@Value("${lists.cache.user.maximum-size}")
+	private Long userMaximumSize = null;
+
+	@Value("${lists.cache.user.expire-after-write-seconds}")
+	private Long userExpireAfterWriteSeconds = null;
+
+	@Value("${lists.cache.user.max-stale-seconds}")
+	private Long userMaxStaleSeconds = null;
+
+	@Value("${lists.cache.list.maximum-size}")
+	private Long listMaximumSize = null;
+
+	@Value("${lists.cache.list.expire-after-write-seconds}")
+	private Long listExpireAfterWriteSeconds = null;
+
+	@Value("${lists.cache.list.max-stale-seconds}")
+	private Long listMaxStaleSeconds = null;
+
+	@Value("${lists.cache.list-response.maximum-bytes}")
+	private Long listResponseMaximumBytes = null;
+
+	@Value("${lists.cache.username-filter.enabled}")
+	private Boolean usernameFilterEnabled = null;
+
+	@Value("${lists.cache.username-filter.expected-insertions}")
+	private Long usernameFilterExpectedInsertions = null;
+
+	@Value("${lists.cache.username-filter.false-positive-rate}")
+	private Double usernameFilterFalsePositiveRate = null;
+
+	@Value("${lists.cache.username-filter.rebuild-interval-seconds}")
+	private Long usernameFilterRebuildIntervalSeconds = null;
+
+	@Value("${lists.cache.snapshot.path}")
+	private String snapshotPath = null;
+
+	@Value("${lists.cache.snapshot.max-age-seconds}")
+	private Long snapshotMaxAgeSeconds = null;
+
+	@Value("${lists.cache.invalidation.port}")
+	private Integer invalidationPort = null;
+
+	@Value("${lists.cache.invalidation.peers}")
+	private String invalidationPeers = null;
+
+	@Value("${lists.cache.invalidation.flush-interval-millis}")
+	private Long invalidationFlushIntervalMillis = null;
+
+	@Value("${lists.cache.invalidation.max-batch-size}")
+	private Integer invalidationMaxBatchSize = null;
+
+
+	public Long getUserMaximumSize() {
+		return userMaximumSize;
+	}
+
+	public void setUserMaximumSize(Long userMaximumSize) {
+		this.userMaximumSize = userMaximumSize;
+	}
+
+	public Long getUserExpireAfterWriteSeconds() {
+		return userExpireAfterWriteSeconds;
+	}
+
+	public void setUserExpireAfterWriteSeconds(Long userExpireAfterWriteSeconds) {
+		this.userExpireAfterWriteSeconds = userExpireAfterWriteSeconds;
+	}
+
+	public Long getUserMaxStaleSeconds() {
+		return userMaxStaleSeconds;
+	}
+
+	public void setUserMaxStaleSeconds(Long userMaxStaleSeconds) {
+		this.userMaxStaleSeconds = userMaxStaleSeconds;
+	}
+
+	public Long getListMaximumSize() {
+		return listMaximumSize;
+	}
+
+	public void setListMaximumSize(Long listMaximumSize) {
+		this.listMaximumSize = listMaximumSize;
+	}
+
+	public Long getListExpireAfterWriteSeconds() {
+		return listExpireAfterWriteSeconds;
+	}
+
+	public void setListExpireAfterWriteSeconds(Long listExpireAfterWriteSeconds) {
+		this.listExpireAfterWriteSeconds = listExpireAfterWriteSeconds;
+	}
+
+	public Long getListMaxStaleSeconds() {
+		return listMaxStaleSeconds;
+	}
+
+	public void setListMaxStaleSeconds(Long listMaxStaleSeconds) {
+		this.listMaxStaleSeconds = listMaxStaleSeconds;
+	}
+
+	public Long getListResponseMaximumBytes() {
+		return listResponseMaximumBytes;
+	}
+
+	public void setListResponseMaximumBytes(Long listResponseMaximumBytes) {
+		this.listResponseMaximumBytes = listResponseMaximumBytes;
+	}
+
+	public Boolean getUsernameFilterEnabled() {
+		return usernameFilterEnabled;
+	}
+
+	public void setUsernameFilterEnabled(Boolean usernameFilterEnabled) {
+		this.usernameFilterEnabled = usernameFilterEnabled;
+	}
+
+	public Long getUsernameFilterExpectedInsertions() {
+		return usernameFilterExpectedInsertions;
+	}
+
+	public void setUsernameFilterExpectedInsertions(Long usernameFilterExpectedInsertions) {
+		this.usernameFilterExpectedInsertions = usernameFilterExpectedInsertions;
+	}
+
+	public Double getUsernameFilterFalsePositiveRate() {
+		return usernameFilterFalsePositiveRate;
+	}
+
+	public void setUsernameFilterFalsePositiveRate(Double usernameFilterFalsePositiveRate) {
+		this.usernameFilterFalsePositiveRate = usernameFilterFalsePositiveRate;
+	}
+
+	public Long getUsernameFilterRebuildIntervalSeconds() {
+		return usernameFilterRebuildIntervalSeconds;
+	}
+
+	public void setUsernameFilterRebuildIntervalSeconds(Long usernameFilterRebuildIntervalSeconds) {
+		this.usernameFilterRebuildIntervalSeconds = usernameFilterRebuildIntervalSeconds;
+	}
+
+	public String getSnapshotPath() {
+		return snapshotPath;
+	}
+
+	public void setSnapshotPath(String snapshotPath) {
+		this.snapshotPath = snapshotPath;
+	}
+
+	public Long getSnapshotMaxAgeSeconds() {
+		return snapshotMaxAgeSeconds;
+	}
+
+	public void setSnapshotMaxAgeSeconds(Long snapshotMaxAgeSeconds) {
+		this.snapshotMaxAgeSeconds = snapshotMaxAgeSeconds;
+	}
+
+	public Integer getInvalidationPort() {
+		return invalidationPort;
+	}
+
+	public void setInvalidationPort(Integer invalidationPort) {
+		this.invalidationPort = invalidationPort;
+	}
+
+	public String getInvalidationPeers() {
+		return invalidationPeers;
+	}
+
+	public void setInvalidationPeers(String invalidationPeers) {
+		this.invalidationPeers = invalidationPeers;
+	}
+
+	public Long getInvalidationFlushIntervalMillis() {
+		return invalidationFlushIntervalMillis;
+	}
+
+	public void setInvalidationFlushIntervalMillis(Long invalidationFlushIntervalMillis) {
+		this.invalidationFlushIntervalMillis = invalidationFlushIntervalMillis;
+	}
+
+	public Integer getInvalidationMaxBatchSize() {
+		return invalidationMaxBatchSize;
+	}
+
+	public void setInvalidationMaxBatchSize(Integer invalidationMaxBatchSize) {
+		this.invalidationMaxBatchSize = invalidationMaxBatchSize;
+	}
+}
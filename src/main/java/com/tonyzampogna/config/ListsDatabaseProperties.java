@@ -1,10 +1,25 @@
 package com.tonyzampogna.config;
 
+import com.tonyzampogna.tenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Properties file for Cassandra
+ *
+ * The keyspace and pool settings are for the default tenant. Each of the
+ * other tenants (in lists.database.tenants) sets its keyspace with
+ * lists.database.tenant.<tenant>.keyspace, and can set its own
+ * connections-per-host, core-connections-per-host, max-connections-per-host
+ * and max-requests-per-connection the same way. The ones it does not set
+ * are the default tenant's.
  */
 @Component
 public class ListsDatabaseProperties {
@@ -33,6 +48,99 @@ public class ListsDatabaseProperties {
 	@Value("${lists.database.max-requests-per-connection}")
 	private Integer maxRequestsPerConnection = null;
 
+	@Value("${lists.database.max-in-flight-queries}")
+	private Integer maxInFlightQueries = null;
+
+	@Value("${lists.database.max-in-flight-writes}")
+	private Integer maxInFlightWrites = null;
+
+	@Value("${lists.database.max-batch-statements}")
+	private Integer maxBatchStatements = null;
+
+	@Value("${lists.database.point-read-batch-window-micros}")
+	private Long pointReadBatchWindowMicros = null;
+
+	@Value("${lists.database.point-read-batch-size}")
+	private Integer pointReadBatchSize = null;
+
+	@Value("${lists.database.local-datacenter}")
+	private String localDatacenter = null;
+
+	@Value("${lists.database.used-hosts-per-remote-dc}")
+	private Integer usedHostsPerRemoteDc = null;
+
+	@Value("${lists.database.token-aware}")
+	private Boolean tokenAware = null;
+
+	@Value("${lists.database.latency-aware}")
+	private Boolean latencyAware = null;
+
+	@Value("${lists.database.latency-aware.exclusion-threshold}")
+	private Double latencyExclusionThreshold = null;
+
+	@Value("${lists.database.latency-aware.scale-millis}")
+	private Long latencyScaleMillis = null;
+
+	@Value("${lists.database.latency-aware.retry-period-seconds}")
+	private Long latencyRetryPeriodSeconds = null;
+
+	@Value("${lists.database.latency-aware.minimum-measurements}")
+	private Integer latencyMinimumMeasurements = null;
+
+	@Value("${lists.database.compression}")
+	private String compression = null;
+
+	@Value("${lists.database.speculative-execution}")
+	private String speculativeExecution = null;
+
+	@Value("${lists.database.speculative-execution.delay-millis}")
+	private Long speculativeDelayMillis = null;
+
+	@Value("${lists.database.speculative-execution.percentile}")
+	private Double speculativePercentile = null;
+
+	@Value("${lists.database.speculative-execution.max-executions}")
+	private Integer speculativeMaxExecutions = null;
+
+	@Value("${lists.database.warm-up-requests}")
+	private Integer warmUpRequests = null;
+
+	@Value("${lists.database.warm-up-concurrency}")
+	private Integer warmUpConcurrency = null;
+
+	@Value("${lists.database.profile.fast-read.consistency}")
+	private String fastReadConsistency = null;
+
+	@Value("${lists.database.profile.fast-read.read-timeout-millis}")
+	private Integer fastReadTimeoutMillis = null;
+
+	@Value("${lists.database.profile.safe-read.consistency}")
+	private String safeReadConsistency = null;
+
+	@Value("${lists.database.profile.safe-read.read-timeout-millis}")
+	private Integer safeReadTimeoutMillis = null;
+
+	@Value("${lists.database.profile.safe-write.consistency}")
+	private String safeWriteConsistency = null;
+
+	@Value("${lists.database.profile.safe-write.read-timeout-millis}")
+	private Integer safeWriteTimeoutMillis = null;
+
+	@Value("${lists.database.profile.serial.consistency}")
+	private String serialConsistency = null;
+
+	@Value("${lists.database.profile.serial.serial-consistency}")
+	private String serialSerialConsistency = null;
+
+	@Value("${lists.database.profile.serial.read-timeout-millis}")
+	private Integer serialTimeoutMillis = null;
+
+	@Value("${lists.database.tenants}")
+	private String tenants = null;
+
+	@Autowired
+	private Environment environment;
+
 
 	public String getNodes() {
 		return nodes;
@@ -97,4 +205,292 @@ public class ListsDatabaseProperties {
 	public void setMaxRequestsPerConnection(Integer maxRequestsPerConnection) {
 		this.maxRequestsPerConnection = maxRequestsPerConnection;
 	}
+
+	public Integer getMaxInFlightQueries() {
+		return maxInFlightQueries;
+	}
+
+	public void setMaxInFlightQueries(Integer maxInFlightQueries) {
+		this.maxInFlightQueries = maxInFlightQueries;
+	}
+
+	public Integer getMaxInFlightWrites() {
+		return maxInFlightWrites;
+	}
+
+	public void setMaxInFlightWrites(Integer maxInFlightWrites) {
+		this.maxInFlightWrites = maxInFlightWrites;
+	}
+
+	public Integer getMaxBatchStatements() {
+		return maxBatchStatements;
+	}
+
+	public void setMaxBatchStatements(Integer maxBatchStatements) {
+		this.maxBatchStatements = maxBatchStatements;
+	}
+
+	public Long getPointReadBatchWindowMicros() {
+		return pointReadBatchWindowMicros;
+	}
+
+	public void setPointReadBatchWindowMicros(Long pointReadBatchWindowMicros) {
+		this.pointReadBatchWindowMicros = pointReadBatchWindowMicros;
+	}
+
+	public Integer getPointReadBatchSize() {
+		return pointReadBatchSize;
+	}
+
+	public void setPointReadBatchSize(Integer pointReadBatchSize) {
+		this.pointReadBatchSize = pointReadBatchSize;
+	}
+
+	public String getLocalDatacenter() {
+		return localDatacenter;
+	}
+
+	public void setLocalDatacenter(String localDatacenter) {
+		this.localDatacenter = localDatacenter;
+	}
+
+	public Integer getUsedHostsPerRemoteDc() {
+		return usedHostsPerRemoteDc;
+	}
+
+	public void setUsedHostsPerRemoteDc(Integer usedHostsPerRemoteDc) {
+		this.usedHostsPerRemoteDc = usedHostsPerRemoteDc;
+	}
+
+	public Boolean getTokenAware() {
+		return tokenAware;
+	}
+
+	public void setTokenAware(Boolean tokenAware) {
+		this.tokenAware = tokenAware;
+	}
+
+	public Boolean getLatencyAware() {
+		return latencyAware;
+	}
+
+	public void setLatencyAware(Boolean latencyAware) {
+		this.latencyAware = latencyAware;
+	}
+
+	public Double getLatencyExclusionThreshold() {
+		return latencyExclusionThreshold;
+	}
+
+	public void setLatencyExclusionThreshold(Double latencyExclusionThreshold) {
+		this.latencyExclusionThreshold = latencyExclusionThreshold;
+	}
+
+	public Long getLatencyScaleMillis() {
+		return latencyScaleMillis;
+	}
+
+	public void setLatencyScaleMillis(Long latencyScaleMillis) {
+		this.latencyScaleMillis = latencyScaleMillis;
+	}
+
+	public Long getLatencyRetryPeriodSeconds() {
+		return latencyRetryPeriodSeconds;
+	}
+
+	public void setLatencyRetryPeriodSeconds(Long latencyRetryPeriodSeconds) {
+		this.latencyRetryPeriodSeconds = latencyRetryPeriodSeconds;
+	}
+
+	public Integer getLatencyMinimumMeasurements() {
+		return latencyMinimumMeasurements;
+	}
+
+	public void setLatencyMinimumMeasurements(Integer latencyMinimumMeasurements) {
+		this.latencyMinimumMeasurements = latencyMinimumMeasurements;
+	}
+
+	public String getCompression() {
+		return compression;
+	}
+
+	public void setCompression(String compression) {
+		this.compression = compression;
+	}
+
+	public String getSpeculativeExecution() {
+		return speculativeExecution;
+	}
+
+	public void setSpeculativeExecution(String speculativeExecution) {
+		this.speculativeExecution = speculativeExecution;
+	}
+
+	public Long getSpeculativeDelayMillis() {
+		return speculativeDelayMillis;
+	}
+
+	public void setSpeculativeDelayMillis(Long speculativeDelayMillis) {
+		this.speculativeDelayMillis = speculativeDelayMillis;
+	}
+
+	public Double getSpeculativePercentile() {
+		return speculativePercentile;
+	}
+
+	public void setSpeculativePercentile(Double speculativePercentile) {
+		this.speculativePercentile = speculativePercentile;
+	}
+
+	public Integer getSpeculativeMaxExecutions() {
+		return speculativeMaxExecutions;
+	}
+
+	public void setSpeculativeMaxExecutions(Integer speculativeMaxExecutions) {
+		this.speculativeMaxExecutions = speculativeMaxExecutions;
+	}
+
+	public Integer getWarmUpRequests() {
+		return warmUpRequests;
+	}
+
+	public void setWarmUpRequests(Integer warmUpRequests) {
+		this.warmUpRequests = warmUpRequests;
+	}
+
+	public Integer getWarmUpConcurrency() {
+		return warmUpConcurrency;
+	}
+
+	public void setWarmUpConcurrency(Integer warmUpConcurrency) {
+		this.warmUpConcurrency = warmUpConcurrency;
+	}
+
+	public String getFastReadConsistency() {
+		return fastReadConsistency;
+	}
+
+	public void setFastReadConsistency(String fastReadConsistency) {
+		this.fastReadConsistency = fastReadConsistency;
+	}
+
+	public Integer getFastReadTimeoutMillis() {
+		return fastReadTimeoutMillis;
+	}
+
+	public void setFastReadTimeoutMillis(Integer fastReadTimeoutMillis) {
+		this.fastReadTimeoutMillis = fastReadTimeoutMillis;
+	}
+
+	public String getSafeReadConsistency() {
+		return safeReadConsistency;
+	}
+
+	public void setSafeReadConsistency(String safeReadConsistency) {
+		this.safeReadConsistency = safeReadConsistency;
+	}
+
+	public Integer getSafeReadTimeoutMillis() {
+		return safeReadTimeoutMillis;
+	}
+
+	public void setSafeReadTimeoutMillis(Integer safeReadTimeoutMillis) {
+		this.safeReadTimeoutMillis = safeReadTimeoutMillis;
+	}
+
+	public String getSafeWriteConsistency() {
+		return safeWriteConsistency;
+	}
+
+	public void setSafeWriteConsistency(String safeWriteConsistency) {
+		this.safeWriteConsistency = safeWriteConsistency;
+	}
+
+	public Integer getSafeWriteTimeoutMillis() {
+		return safeWriteTimeoutMillis;
+	}
+
+	public void setSafeWriteTimeoutMillis(Integer safeWriteTimeoutMillis) {
+		this.safeWriteTimeoutMillis = safeWriteTimeoutMillis;
+	}
+
+	public String getSerialConsistency() {
+		return serialConsistency;
+	}
+
+	public void setSerialConsistency(String serialConsistency) {
+		this.serialConsistency = serialConsistency;
+	}
+
+	public String getSerialSerialConsistency() {
+		return serialSerialConsistency;
+	}
+
+	public void setSerialSerialConsistency(String serialSerialConsistency) {
+		this.serialSerialConsistency = serialSerialConsistency;
+	}
+
+	public Integer getSerialTimeoutMillis() {
+		return serialTimeoutMillis;
+	}
+
+	public void setSerialTimeoutMillis(Integer serialTimeoutMillis) {
+		this.serialTimeoutMillis = serialTimeoutMillis;
+	}
+
+	public String getTenants() {
+		return tenants;
+	}
+
+	public void setTenants(String tenants) {
+		this.tenants = tenants;
+	}
+
+	/**
+	 * Returns the default tenant, and the tenants in lists.database.tenants.
+	 */
+	public Set<String> getAllTenants() {
+		Set<String> allTenants = new LinkedHashSet<String>();
+		allTenants.add(TenantContext.DEFAULT_TENANT);
+		allTenants.addAll(StringUtils.commaDelimitedListToSet(StringUtils.trimAllWhitespace(tenants)));
+		allTenants.remove("");
+
+		return Collections.unmodifiableSet(allTenants);
+	}
+
+	public String getKeyspaceName(String tenant) {
+		if (TenantContext.DEFAULT_TENANT.equals(tenant)) {
+			return keyspaceName;
+		}
+
+		String tenantKeyspaceName = environment.getProperty("lists.database.tenant." + tenant + ".keyspace");
+		if (!StringUtils.hasText(tenantKeyspaceName)) {
+			throw new RuntimeException("The tenant has no keyspace. Set lists.database.tenant." + tenant + ".keyspace. Tenant: " + tenant);
+		}
+
+		return tenantKeyspaceName.trim();
+	}
+
+	public Integer getConnectionsPerHost(String tenant) {
+		return getTenantProperty(tenant, "connections-per-host", connectionsPerHost);
+	}
+
+	public Integer getCoreConnectionsPerHost(String tenant) {
+		return getTenantProperty(tenant, "core-connections-per-host", coreConnectionsPerHost);
+	}
+
+	public Integer getMaxConnectionsPerHost(String tenant) {
+		return getTenantProperty(tenant, "max-connections-per-host", maxConnectionsPerHost);
+	}
+
+	public Integer getMaxRequestsPerConnection(String tenant) {
+		return getTenantProperty(tenant, "max-requests-per-connection", maxRequestsPerConnection);
+	}
+
+	private Integer getTenantProperty(String tenant, String name, Integer defaultValue) {
+		if (TenantContext.DEFAULT_TENANT.equals(tenant)) {
+			return defaultValue;
+		}
+		return environment.getProperty("lists.database.tenant." + tenant + "." + name, Integer.class, defaultValue);
+	}
 }
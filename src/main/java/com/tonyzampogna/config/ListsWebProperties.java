@@ -0,0 +1,133 @@
+package com.tonyzampogna.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Properties for the web (controller) layer
+ */
+@Component
+public class ListsWebProperties {
+
+	@Value("${lists.web.async-requests}")
+	private Boolean asyncRequests = null;
+
+	@Value("${lists.web.async-timeout}")
+	private Long asyncTimeout = null;
+
+	@Value("${lists.web.max-page-size}")
+	private Integer maxPageSize = null;
+
+	@Value("${lists.web.routing.enabled}")
+	private Boolean routingEnabled = null;
+
+	@Value("${lists.web.routing.self}")
+	private String routingSelf = null;
+
+	@Value("${lists.web.routing.nodes}")
+	private String routingNodes = null;
+
+	@Value("${lists.web.routing.virtual-nodes}")
+	private Integer routingVirtualNodes = null;
+
+	@Value("${lists.web.routing.mode}")
+	private String routingMode = null;
+
+	@Value("${lists.web.routing.timeout-millis}")
+	private Integer routingTimeoutMillis = null;
+
+	@Value("${lists.web.routing.down-seconds}")
+	private Long routingDownSeconds = null;
+
+	@Value("${lists.web.tenant-header}")
+	private String tenantHeader = null;
+
+
+	public Boolean getAsyncRequests() {
+		return asyncRequests;
+	}
+
+	public void setAsyncRequests(Boolean asyncRequests) {
+		this.asyncRequests = asyncRequests;
+	}
+
+	public Long getAsyncTimeout() {
+		return asyncTimeout;
+	}
+
+	public void setAsyncTimeout(Long asyncTimeout) {
+		this.asyncTimeout = asyncTimeout;
+	}
+
+	public Integer getMaxPageSize() {
+		return maxPageSize;
+	}
+
+	public void setMaxPageSize(Integer maxPageSize) {
+		this.maxPageSize = maxPageSize;
+	}
+
+	public Boolean getRoutingEnabled() {
+		return routingEnabled;
+	}
+
+	public void setRoutingEnabled(Boolean routingEnabled) {
+		this.routingEnabled = routingEnabled;
+	}
+
+	public String getRoutingSelf() {
+		return routingSelf;
+	}
+
+	public void setRoutingSelf(String routingSelf) {
+		this.routingSelf = routingSelf;
+	}
+
+	public String getRoutingNodes() {
+		return routingNodes;
+	}
+
+	public void setRoutingNodes(String routingNodes) {
+		this.routingNodes = routingNodes;
+	}
+
+	public Integer getRoutingVirtualNodes() {
+		return routingVirtualNodes;
+	}
+
+	public void setRoutingVirtualNodes(Integer routingVirtualNodes) {
+		this.routingVirtualNodes = routingVirtualNodes;
+	}
+
+	public String getRoutingMode() {
+		return routingMode;
+	}
+
+	public void setRoutingMode(String routingMode) {
+		this.routingMode = routingMode;
+	}
+
+	public Integer getRoutingTimeoutMillis() {
+		return routingTimeoutMillis;
+	}
+
+	public void setRoutingTimeoutMillis(Integer routingTimeoutMillis) {
+		this.routingTimeoutMillis = routingTimeoutMillis;
+	}
+
+	public Long getRoutingDownSeconds() {
+		return routingDownSeconds;
+	}
+
+	public void setRoutingDownSeconds(Long routingDownSeconds) {
+		this.routingDownSeconds = routingDownSeconds;
+	}
+
+	public String getTenantHeader() {
+		return tenantHeader;
+	}
+
+	public void setTenantHeader(String tenantHeader) {
+		this.tenantHeader = tenantHeader;
+	}
+}
@@ -1,17 +1,39 @@
 package com.tonyzampogna.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tonyzampogna.cache.CachedModel;
+import com.tonyzampogna.config.ListsWebProperties;
 import com.tonyzampogna.domain.ItemModel;
 import com.tonyzampogna.domain.ListModel;
+import com.tonyzampogna.domain.ListProjection;
+import com.tonyzampogna.domain.PageModel;
 import com.tonyzampogna.domain.UserModel;
 import com.tonyzampogna.services.ItemService;
 import com.tonyzampogna.services.ListService;
 import com.tonyzampogna.services.UserService;
+import com.tonyzampogna.tenant.TenantContext;
+import com.tonyzampogna.util.BadRequestException;
+import com.tonyzampogna.util.FutureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,6 +41,9 @@ import java.util.regex.Pattern;
 public abstract class BaseController {
 	private static final Logger log = LoggerFactory.getLogger(BaseController.class);
 
+	protected static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	protected static final String STALENESS_HEADER = "X-Staleness-Millis";
+
 	@Autowired
 	private UserService userService;
 
@@ -28,6 +53,12 @@ public abstract class BaseController {
 	@Autowired
 	private ItemService itemService;
 
+	@Autowired
+	private ListsWebProperties listsWebProperties;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 
 	/////////////////////////////////////////////////
 	// Controller Methods
@@ -41,27 +72,58 @@ public abstract class BaseController {
 	 *
 	 * @Param userIdOrUsername: Either a user ID (UUID) or a username
 	 */
-	protected UserModel getUserModel(String userIdOrUsername) {
-		UserModel userModel = null;
+	protected CompletableFuture<UserModel> getUserModelAsync(String userIdOrUsername) {
+		CompletableFuture<UserModel> userModel = null;
 
 		// Check to see if it is a UUID or a username.
 		if (isUUID(userIdOrUsername)) {
-			userModel = userService.getUserById(UUID.fromString(userIdOrUsername));
+			userModel = userService.getUserByIdAsync(UUID.fromString(userIdOrUsername));
 		}
 		else {
-			userModel = userService.getUserByUsername(userIdOrUsername);
+			userModel = userService.getUserByUsernameAsync(userIdOrUsername);
 		}
 
 		return userModel;
 	}
 
+	/**
+	 * This function returns the UserModel from the user cache,
+	 * with how stale it is.
+	 *
+	 * @Param userIdOrUsername: Either a user ID (UUID) or a username
+	 */
+	protected CompletableFuture<CachedModel<UserModel>> getCachedUserModelAsync(String userIdOrUsername) {
+		CompletableFuture<CachedModel<UserModel>> cachedModel = null;
+
+		// Check to see if it is a UUID or a username.
+		if (isUUID(userIdOrUsername)) {
+			cachedModel = userService.getCachedUserByIdAsync(UUID.fromString(userIdOrUsername));
+		}
+		else {
+			cachedModel = userService.getCachedUserByUsernameAsync(userIdOrUsername);
+		}
+
+		return cachedModel;
+	}
+
 	/**
 	 * This function returns the ListModel from the database.
 	 *
 	 * @Param listId: List ID for the list.
 	 */
-	protected ListModel getListModel(String listId) {
-		return listService.getListById(UUID.fromString(listId));
+	protected CompletableFuture<ListModel> getListModelAsync(String listId) {
+		return listService.getListByIdAsync(UUID.fromString(listId));
+	}
+
+	/**
+	 * This function returns the ListModel from the database,
+	 * with only the fields in the projection.
+	 *
+	 * @Param listId: List ID for the list.
+	 * @Param listProjection: The fields to read.
+	 */
+	protected CompletableFuture<ListModel> getListModelAsync(String listId, ListProjection listProjection) {
+		return listService.getListByIdAsync(UUID.fromString(listId), listProjection);
 	}
 
 	/**
@@ -69,8 +131,8 @@ public abstract class BaseController {
 	 *
 	 * @Param itemId: Item ID for the list.
 	 */
-	protected ItemModel getItemModel(String itemId) {
-		return itemService.getItemById(UUID.fromString(itemId));
+	protected CompletableFuture<ItemModel> getItemModelAsync(String itemId) {
+		return itemService.getItemByIdAsync(UUID.fromString(itemId));
 	}
 
 
@@ -78,6 +140,181 @@ public abstract class BaseController {
 	// Helper Methods
 	/////////////////////////////////////////////////
 
+	/**
+	 * Wraps the result of an asynchronous service call in a DeferredResult,
+	 * so the servlet thread is released while Cassandra works on the request.
+	 *
+	 * If lists.web.async-requests is false, the request thread waits
+	 * for the result instead, which is the original synchronous behavior.
+	 */
+	protected <T> DeferredResult<T> toDeferredResult(CompletableFuture<T> future) {
+		DeferredResult<T> deferredResult = new DeferredResult<T>(listsWebProperties.getAsyncTimeout());
+
+		if (!listsWebProperties.getAsyncRequests()) {
+			deferredResult.setResult(FutureUtils.getUninterruptibly(future));
+			return deferredResult;
+		}
+
+		future.whenComplete((result, t) -> {
+			if (t != null) {
+				Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+				log.error("Exception occurred while handling an asynchronous request.", cause);
+				deferredResult.setErrorResult(cause);
+			}
+			else {
+				deferredResult.setResult(result);
+			}
+		});
+
+		return deferredResult;
+	}
+
+	/**
+	 * Returns the projection for the fields and includeItems request
+	 * parameters. The fields are a comma-separated list of ListModel
+	 * fields. If there are no fields, every field is returned.
+	 */
+	protected ListProjection getListProjection(String fields, boolean includeItems) {
+		ListProjection listProjection = ListProjection.all();
+
+		if (!StringUtils.isEmpty(fields)) {
+			listProjection.setFields(StringUtils.commaDelimitedListToSet(fields.replace(" ", "")));
+		}
+		listProjection.setIncludeItems(includeItems);
+
+		return listProjection;
+	}
+
+	/**
+	 * Returns the entity tag for a model, made from its version and its
+	 * update date. The writes keep both current, so the tag changes
+	 * whenever the model does, and it is cheap to read.
+	 */
+	protected String getETag(Object version, Date updateDate) {
+		return "\"" + version + "-" + ((updateDate != null) ? updateDate.getTime() : 0) + "\"";
+	}
+
+	/**
+	 * Returns true if the If-None-Match request header matches the
+	 * entity tag. Weak tags (W/"...") are compared by their value.
+	 */
+	protected boolean isNotModified(String ifNoneMatch, String eTag) {
+		if (StringUtils.isEmpty(ifNoneMatch) || eTag == null) {
+			return false;
+		}
+
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if ("*".equals(tag) || tag.equals(eTag)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns a 304 Not Modified response, with no body.
+	 */
+	protected <T> ResponseEntity<T> toNotModifiedResponse(String eTag, HttpHeaders headers) {
+		return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).eTag(eTag).<T>body(null);
+	}
+
+	/**
+	 * Returns the response headers for a model read through a cache. If
+	 * the model is stale, the X-Staleness-Millis header says how stale.
+	 */
+	protected HttpHeaders getCacheHeaders(CachedModel<?> cachedModel) {
+		HttpHeaders headers = new HttpHeaders();
+
+		if (cachedModel.isStale()) {
+			headers.set(STALENESS_HEADER, String.valueOf(cachedModel.getStaleMillis()));
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Returns the page of models as the response body, with the cursor
+	 * for the next page in the X-Next-Cursor header (if there is one).
+	 */
+	protected <T> CompletableFuture<ResponseEntity<List<T>>> toPageResponse(CompletableFuture<PageModel<T>> pageModelFuture) {
+		return pageModelFuture.thenApply(pageModel -> {
+			ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+			if (pageModel.getNextCursor() != null) {
+				response.header(NEXT_CURSOR_HEADER, pageModel.getNextCursor());
+			}
+			return response.body(pageModel.getModels());
+		});
+	}
+
+	/**
+	 * Returns the page size to use for the requested limit. The limit
+	 * cannot be more than lists.web.max-page-size.
+	 */
+	protected int getPageSize(Integer limit) {
+		int maxPageSize = listsWebProperties.getMaxPageSize();
+
+		if (limit == null) {
+			return maxPageSize;
+		}
+		if (limit < 1) {
+			throw new BadRequestException("The limit must be greater than zero. Limit: " + limit);
+		}
+
+		return Math.min(limit, maxPageSize);
+	}
+
+	/**
+	 * Writes the models as a JSON array, one page at a time, as the reader
+	 * hands the pages over. The first rows are sent before the last ones
+	 * are read, and only the current page is held in memory.
+	 *
+	 * The reader is called with the consumer to hand each page to. The body
+	 * is written on an MVC async thread, after the request thread has let
+	 * go of the request, so it is written for the tenant of the request.
+	 */
+	protected <T> StreamingResponseBody toJsonArrayStream(Consumer<Consumer<List<T>>> pageReader) {
+		String tenant = TenantContext.get();
+
+		return outputStream -> {
+			try {
+				TenantContext.runAs(tenant, () -> writeJsonArray(outputStream, pageReader));
+			}
+			catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		};
+	}
+
+	private <T> void writeJsonArray(OutputStream outputStream, Consumer<Consumer<List<T>>> pageReader) {
+		try {
+			JsonGenerator jsonGenerator = objectMapper.getFactory().createGenerator(outputStream);
+			jsonGenerator.writeStartArray();
+
+			pageReader.accept(models -> {
+				try {
+					for (T model : models) {
+						objectMapper.writeValue(jsonGenerator, model);
+					}
+					jsonGenerator.flush();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+
+			jsonGenerator.writeEndArray();
+			jsonGenerator.flush();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	protected boolean isUUID(String value) {
 		boolean isUUID = false;
 
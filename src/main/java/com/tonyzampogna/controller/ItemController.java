@@ -5,11 +5,16 @@ import com.tonyzampogna.services.ItemService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
@@ -35,22 +40,24 @@ public class ItemController extends BaseController {
 			method = RequestMethod.POST,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ItemModel> createItems(
+	public DeferredResult<List<ItemModel>> createItems(
 			@RequestParam(name = "userId") String createUserId,
 			@RequestParam(name = "action", required = false) String action,
 			@RequestBody List<ItemModel> itemModelList) {
 
+		CompletableFuture<List<ItemModel>> itemModelListFuture = null;
+
 		if ("UPDATE".equals(action)) {
-			itemModelList = handleUpdateItemsRequest(createUserId, itemModelList);
+			itemModelListFuture = handleUpdateItemsRequest(createUserId, itemModelList);
 		}
 		else if ("DELETE".equals(action)) {
-			itemModelList = handleDeleteItemsRequest(createUserId, itemModelList);
+			itemModelListFuture = handleDeleteItemsRequest(createUserId, itemModelList);
 		}
 		else {
-			itemModelList = handleCreateItemsRequest(createUserId, itemModelList);
+			itemModelListFuture = handleCreateItemsRequest(createUserId, itemModelList);
 		}
 
-		return itemModelList;
+		return toDeferredResult(itemModelListFuture);
 	}
 
 	/**
@@ -60,25 +67,50 @@ public class ItemController extends BaseController {
 			value = "/item/{itemId}",
 			method = RequestMethod.GET,
 			produces = "application/json")
-	public ItemModel getItem(
+	public DeferredResult<ItemModel> getItem(
 			@RequestParam(name = "userId") String readUserId,
 			@PathVariable(name = "itemId") String itemId) {
 
-		return handleGetItemRequest(readUserId, itemId);
+		return toDeferredResult(handleGetItemRequest(readUserId, itemId));
 	}
 
 	/**
 	 * Get items by list ID.
+	 *
+	 * If a limit or cursor is given, one page of items is returned,
+	 * and the cursor for the next page is in the X-Next-Cursor header.
 	 */
 	@RequestMapping(
 			value = "/list/{listId}/items",
 			method = RequestMethod.GET,
 			produces = "application/json")
-	public List<ItemModel> getItemsForList(
+	public DeferredResult<ResponseEntity<List<ItemModel>>> getItemsForList(
+			@RequestParam(name = "userId") String readUserId,
+			@PathVariable(name = "listId") String listId,
+			@RequestParam(name = "limit", required = false) Integer limit,
+			@RequestParam(name = "cursor", required = false) String cursor) {
+
+		return toDeferredResult(handleGetItemsForListRequest(readUserId, listId, limit, cursor));
+	}
+
+	/**
+	 * Get items by list ID, streamed.
+	 *
+	 * The items are written to the response as each page is read
+	 * from the database, instead of after the whole list is read.
+	 */
+	@RequestMapping(
+			value = "/list/{listId}/items",
+			method = RequestMethod.GET,
+			params = "stream=true",
+			produces = "application/json")
+	public StreamingResponseBody streamItemsForList(
 			@RequestParam(name = "userId") String readUserId,
 			@PathVariable(name = "listId") String listId) {
 
-		return handleGetItemsForListRequest(readUserId, listId);
+		log.info("A request has come in to stream items for a list. Request User ID: " + readUserId + ". For List ID: " + listId);
+
+		return this.<ItemModel>toJsonArrayStream(consumer -> itemService.forEachItemPageByListId(UUID.fromString(listId), consumer));
 	}
 
 	/**
@@ -89,11 +121,11 @@ public class ItemController extends BaseController {
 			method = RequestMethod.PUT,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ItemModel> updateItems(
+	public DeferredResult<List<ItemModel>> updateItems(
 			@RequestParam(name = "userId") String updateUserId,
 			@RequestBody List<ItemModel> itemModelList) {
 
-		return handleUpdateItemsRequest(updateUserId, itemModelList);
+		return toDeferredResult(handleUpdateItemsRequest(updateUserId, itemModelList));
 	}
 
 	/**
@@ -104,11 +136,11 @@ public class ItemController extends BaseController {
 			method = RequestMethod.DELETE,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ItemModel> deleteItems(
+	public DeferredResult<List<ItemModel>> deleteItems(
 			@RequestParam(name = "userId") String deleteUserId,
 			@RequestBody List<ItemModel> itemModelList) {
 
-		return handleDeleteItemsRequest(deleteUserId, itemModelList);
+		return toDeferredResult(handleDeleteItemsRequest(deleteUserId, itemModelList));
 	}
 
 
@@ -116,7 +148,7 @@ public class ItemController extends BaseController {
 	// Helper Methods
 	/////////////////////////////////////////////////
 
-	private List<ItemModel> handleCreateItemsRequest(String createUserId, List<ItemModel> itemModelList) {
+	private CompletableFuture<List<ItemModel>> handleCreateItemsRequest(String createUserId, List<ItemModel> itemModelList) {
 		log.info("A request has come in to create a list. Request User ID: " + createUserId);
 
 		// Set the create and update fields.
@@ -128,28 +160,27 @@ public class ItemController extends BaseController {
 		}
 
 		// Service call
-		itemModelList = itemService.createItems(itemModelList);
-
-		return itemModelList;
+		return itemService.createItemsAsync(itemModelList);
 	}
 
-	private ItemModel handleGetItemRequest(String readUserId, String itemId) {
+	private CompletableFuture<ItemModel> handleGetItemRequest(String readUserId, String itemId) {
 		log.info("A request has come in to read an item. Request User ID: " + readUserId);
 
-		return getItemModel(itemId);
+		return getItemModelAsync(itemId);
 	}
 
-	private List<ItemModel> handleGetItemsForListRequest(String readUserId, String listId) {
-		List<ItemModel> itemModelList = null;
-
+	private CompletableFuture<ResponseEntity<List<ItemModel>>> handleGetItemsForListRequest(String readUserId, String listId, Integer limit, String cursor) {
 		log.info("A request has come in to read items for a list. Request User ID: " + readUserId + ". For List ID: " + listId);
 
-		itemModelList = itemService.getItemsByListId(UUID.fromString(listId));
+		if (limit == null && StringUtils.isEmpty(cursor)) {
+			return itemService.getItemsByListIdAsync(UUID.fromString(listId))
+				.thenApply(itemModelList -> ResponseEntity.ok(itemModelList));
+		}
 
-		return itemModelList;
+		return toPageResponse(itemService.getItemsByListIdAsync(UUID.fromString(listId), getPageSize(limit), cursor));
 	}
 
-	private List<ItemModel> handleUpdateItemsRequest(String updateUserId, List<ItemModel> itemModelList) {
+	private CompletableFuture<List<ItemModel>> handleUpdateItemsRequest(String updateUserId, List<ItemModel> itemModelList) {
 		log.info("A request has come in to update a list. Request User ID: " + updateUserId);
 
 		// Set the update fields.
@@ -159,17 +190,13 @@ public class ItemController extends BaseController {
 		}
 
 		// Service call
-		itemModelList = itemService.updateItems(itemModelList);
-
-		return itemModelList;
+		return itemService.updateItemsAsync(itemModelList);
 	}
 
-	private List<ItemModel> handleDeleteItemsRequest(String deleteUserId, List<ItemModel> itemModelList) {
+	private CompletableFuture<List<ItemModel>> handleDeleteItemsRequest(String deleteUserId, List<ItemModel> itemModelList) {
 		log.info("A request has come in to delete items. Request User ID: " + deleteUserId);
 
 		// Service call
-		itemModelList = itemService.deleteItems(itemModelList);
-
-		return itemModelList;
+		return itemService.deleteItemsAsync(itemModelList);
 	}
 }
@@ -1,16 +1,36 @@
 package com.tonyzampogna.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tonyzampogna.cache.ListResponseCache;
+import com.tonyzampogna.cache.ResponseCache;
 import com.tonyzampogna.domain.ListModel;
+import com.tonyzampogna.domain.ListProjection;
+import com.tonyzampogna.domain.PageModel;
 import com.tonyzampogna.domain.UserModel;
 import com.tonyzampogna.services.ListService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
@@ -20,6 +40,12 @@ public class ListController extends BaseController {
 	@Autowired
 	private ListService listService;
 
+	@Autowired
+	private ListResponseCache listResponseCache;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 
 	/////////////////////////////////////////////////
 	// Controller Methods
@@ -36,22 +62,24 @@ public class ListController extends BaseController {
 			method = RequestMethod.POST,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ListModel> createLists(
+	public DeferredResult<List<ListModel>> createLists(
 			@RequestParam(name = "userId") String createUserId,
 			@RequestParam(name = "action", required = false) String action,
 			@RequestBody List<ListModel> listModelList) {
 
+		CompletableFuture<List<ListModel>> listModelListFuture = null;
+
 		if ("UPDATE".equals(action)) {
-			listModelList = handleUpdateListsRequest(createUserId, listModelList);
+			listModelListFuture = handleUpdateListsRequest(createUserId, listModelList);
 		}
 		else if ("DELETE".equals(action)) {
-			listModelList = handleDeleteListsRequest(createUserId, listModelList);
+			listModelListFuture = handleDeleteListsRequest(createUserId, listModelList);
 		}
 		else {
-			listModelList = handleCreateListsRequest(createUserId, listModelList);
+			listModelListFuture = handleCreateListsRequest(createUserId, listModelList);
 		}
 
-		return listModelList;
+		return toDeferredResult(listModelListFuture);
 	}
 
 	/**
@@ -62,40 +90,135 @@ public class ListController extends BaseController {
 			method = RequestMethod.POST,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ListModel> createListsForUser(
+	public DeferredResult<List<ListModel>> createListsForUser(
 			@RequestParam(name = "userId") String createUserId,
 			@PathVariable(name = "userIdOrUsername") String userIdOrUsername,
 			@RequestBody List<ListModel> listModelList) {
 
-		return handleCreateListsForUserRequest(createUserId, userIdOrUsername, listModelList);
+		return toDeferredResult(handleCreateListsForUserRequest(createUserId, userIdOrUsername, listModelList));
 	}
 
 	/**
 	 * Get list by list ID.
+	 *
+	 * The fields parameter (comma-separated) limits the fields that are
+	 * returned. With includeItems=false, the items are not read at all.
+	 *
+	 * The full list is served from the list response cache if it is
+	 * there, by copying the cached (or gzipped) JSON to the response.
+	 *
+	 * The full list has an ETag, made from the list's version and update
+	 * date. If the If-None-Match header matches it, 304 Not Modified is
+	 * returned. The tag is checked against the cached response, or else
+	 * against a read of just those two static columns, so the items are
+	 * not read and nothing is serialized for an unchanged list.
+	 *
+	 * Otherwise the list is read through the list cache, which may serve
+	 * it stale (see X-Staleness-Millis) while it is refreshed, or while
+	 * the database is failing.
 	 */
 	@RequestMapping(
 			value = "/list/{listId}",
 			method = RequestMethod.GET,
 			produces = "application/json")
-	public ListModel getList(
+	public DeferredResult<ResponseEntity<ListModel>> getList(
 			@RequestParam(name = "userId") String readUserId,
-			@PathVariable(name = "listId") String listId) {
+			@PathVariable(name = "listId") String listId,
+			@RequestParam(name = "fields", required = false) String fields,
+			@RequestParam(name = "includeItems", defaultValue = "true") boolean includeItems,
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+
+		// Only the full list is cached.
+		if (StringUtils.isEmpty(fields) && includeItems) {
+			UUID cacheKey = UUID.fromString(listId);
+
+			// Write the cached response, if there is one. Returning null
+			// tells Spring MVC that the response has been handled.
+			ResponseCache.CachedResponse cachedResponse = listResponseCache.get(cacheKey);
+			if (cachedResponse != null) {
+				log.info("A request has come in to read a list. Request User ID: " + readUserId + ". Served from the cache.");
+				if (isNotModified(ifNoneMatch, cachedResponse.getETag())) {
+					writeNotModifiedResponse(cachedResponse.getETag(), response);
+				}
+				else {
+					writeCachedResponse(cachedResponse, request, response);
+				}
+				return null;
+			}
+
+			// Check the version first, if the client has a copy. If the
+			// version cannot be read, fall back to the list cache.
+			long generation = listResponseCache.getGeneration();
+			if (!StringUtils.isEmpty(ifNoneMatch)) {
+				return toDeferredResult(handleGetListRequest(readUserId, listId, getListVersionProjection())
+					.handle((versionModel, t) -> (versionModel != null) ? getETag(versionModel) : null)
+					.thenCompose(eTag -> {
+						if (isNotModified(ifNoneMatch, eTag)) {
+							return CompletableFuture.completedFuture(this.<ListModel>toNotModifiedResponse(eTag, new HttpHeaders()));
+						}
+						return getCachedListResponse(readUserId, listId, ifNoneMatch, generation);
+					}));
+			}
+
+			return toDeferredResult(getCachedListResponse(readUserId, listId, ifNoneMatch, generation));
+		}
 
-		return handleGetListRequest(readUserId, listId);
+		return toDeferredResult(handleGetListRequest(readUserId, listId, getListProjection(fields, includeItems))
+			.thenApply(listModel -> ResponseEntity.ok(listModel)));
 	}
 
 	/**
 	 * Get lists by user ID or by username.
+	 *
+	 * If a limit or cursor is given, one page of lists is returned,
+	 * and the cursor for the next page is in the X-Next-Cursor header.
+	 * The fields and includeItems parameters work as they do for a list.
+	 */
+	@RequestMapping(
+			value = "/user/{userIdOrUsername}/lists",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	public DeferredResult<ResponseEntity<List<ListModel>>> getListsForUser(
+			@RequestParam(name = "userId") String readUserId,
+			@PathVariable(name = "userIdOrUsername") String userIdOrUsername,
+			@RequestParam(name = "fields", required = false) String fields,
+			@RequestParam(name = "includeItems", defaultValue = "true") boolean includeItems,
+			@RequestParam(name = "limit", required = false) Integer limit,
+			@RequestParam(name = "cursor", required = false) String cursor) {
+
+		ListProjection listProjection = getListProjection(fields, includeItems);
+
+		return toDeferredResult(handleGetListsForUserRequest(readUserId, userIdOrUsername, listProjection, limit, cursor));
+	}
+
+	/**
+	 * Get lists by user ID or by username, streamed.
+	 *
+	 * The lists are written to the response a page at a time, as they
+	 * are read from the database, instead of after every list is read.
 	 */
 	@RequestMapping(
 			value = "/user/{userIdOrUsername}/lists",
 			method = RequestMethod.GET,
+			params = "stream=true",
 			produces = "application/json")
-	public List<ListModel> getListsForUser(
+	public StreamingResponseBody streamListsForUser(
 			@RequestParam(name = "userId") String readUserId,
-			@PathVariable(name = "userIdOrUsername") String userIdOrUsername) {
+			@PathVariable(name = "userIdOrUsername") String userIdOrUsername,
+			@RequestParam(name = "fields", required = false) String fields,
+			@RequestParam(name = "includeItems", defaultValue = "true") boolean includeItems) {
+
+		ListProjection listProjection = getListProjection(fields, includeItems);
 
-		return handleGetListsForUserRequest(readUserId, userIdOrUsername);
+		log.info("A request has come in to stream lists for a user. Request User ID: " + readUserId + ". For User: " + userIdOrUsername);
+
+		if (isUUID(userIdOrUsername)) {
+			return this.<ListModel>toJsonArrayStream(consumer -> listService.forEachListPageByUserId(UUID.fromString(userIdOrUsername), listProjection, consumer));
+		}
+
+		return this.<ListModel>toJsonArrayStream(consumer -> listService.forEachListPageByUsername(userIdOrUsername, listProjection, consumer));
 	}
 
 	/**
@@ -106,11 +229,11 @@ public class ListController extends BaseController {
 			method = RequestMethod.PUT,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ListModel> updateLists(
+	public DeferredResult<List<ListModel>> updateLists(
 			@RequestParam(name = "userId") String updateUserId,
 			@RequestBody List<ListModel> listModelList) {
 
-		return handleUpdateListsRequest(updateUserId, listModelList);
+		return toDeferredResult(handleUpdateListsRequest(updateUserId, listModelList));
 	}
 
 	/**
@@ -121,11 +244,11 @@ public class ListController extends BaseController {
 			method = RequestMethod.DELETE,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<ListModel> deleteLists(
+	public DeferredResult<List<ListModel>> deleteLists(
 			@RequestParam(name = "userId") String deleteUserId,
 			@RequestBody List<ListModel> listModelList) {
 
-		return handleDeleteListsRequest(deleteUserId, listModelList);
+		return toDeferredResult(handleDeleteListsRequest(deleteUserId, listModelList));
 	}
 
 
@@ -133,7 +256,98 @@ public class ListController extends BaseController {
 	// Helper Methods
 	/////////////////////////////////////////////////
 
-	private List<ListModel> handleCreateListsRequest(String createUserId, List<ListModel> listModelList) {
+	/**
+	 * Reads the full list through the list cache, and returns it with its
+	 * ETag (or 304 Not Modified). A fresh list's response is cached. A stale
+	 * one is not, since the response cache does not know it is stale.
+	 */
+	private CompletableFuture<ResponseEntity<ListModel>> getCachedListResponse(String readUserId, String listId, String ifNoneMatch, long generation) {
+		log.info("A request has come in to read a list. Request User ID: " + readUserId);
+
+		return listService.getCachedListByIdAsync(UUID.fromString(listId)).thenApply(cachedModel -> {
+			ListModel listModel = cachedModel.getModel();
+			if (listModel == null) {
+				return ResponseEntity.ok(listModel);
+			}
+
+			HttpHeaders headers = getCacheHeaders(cachedModel);
+			String eTag = getETag(listModel);
+			if (isNotModified(ifNoneMatch, eTag)) {
+				return this.<ListModel>toNotModifiedResponse(eTag, headers);
+			}
+
+			if (!cachedModel.isStale()) {
+				cacheResponse(UUID.fromString(listId), listModel, generation);
+			}
+			return ResponseEntity.ok().headers(headers).eTag(eTag).body(listModel);
+		});
+	}
+
+	/**
+	 * The projection for checking a list's ETag. Both columns are static,
+	 * so only the first row of the partition is read.
+	 */
+	private ListProjection getListVersionProjection() {
+		ListProjection listProjection = ListProjection.all();
+		listProjection.setFields(Arrays.asList("version", "updateDate"));
+		listProjection.setIncludeItems(false);
+		return listProjection;
+	}
+
+	private String getETag(ListModel listModel) {
+		return getETag(listModel.getVersion(), listModel.getUpdateDate());
+	}
+
+	/**
+	 * Serializes the list and puts it in the list response cache.
+	 */
+	private ListModel cacheResponse(UUID listId, ListModel listModel, long generation) {
+		if (listModel != null) {
+			try {
+				listResponseCache.put(listId, objectMapper.writeValueAsBytes(listModel), getETag(listModel), generation);
+			}
+			catch (JsonProcessingException e) {
+				log.error("Exception occurred while caching the response for a list. List ID: " + listId, e);
+			}
+		}
+
+		return listModel;
+	}
+
+	/**
+	 * Copies the cached JSON to the response. The gzipped copy is
+	 * sent if the client accepts it.
+	 */
+	private void writeCachedResponse(ResponseCache.CachedResponse cachedResponse, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		boolean gzip = (acceptEncoding != null && acceptEncoding.contains("gzip"));
+		ByteBuffer body = gzip ? cachedResponse.getGzipBody() : cachedResponse.getBody();
+
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (cachedResponse.getETag() != null) {
+			response.setHeader(HttpHeaders.ETAG, cachedResponse.getETag());
+		}
+		if (gzip) {
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		response.setContentLength(body.remaining());
+
+		WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+		while (body.hasRemaining()) {
+			channel.write(body);
+		}
+		response.flushBuffer();
+	}
+
+	private void writeNotModifiedResponse(String eTag, HttpServletResponse response) throws IOException {
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		response.setHeader(HttpHeaders.ETAG, eTag);
+		response.flushBuffer();
+	}
+
+	private CompletableFuture<List<ListModel>> handleCreateListsRequest(String createUserId, List<ListModel> listModelList) {
 		log.info("A request has come in to create a list. Request User ID: " + createUserId);
 
 		// Set the create and update fields.
@@ -145,19 +359,12 @@ public class ListController extends BaseController {
 		}
 
 		// Service call
-		listModelList = listService.createLists(listModelList);
-
-		return listModelList;
+		return listService.createListsAsync(listModelList);
 	}
 
-	private List<ListModel> handleCreateListsForUserRequest(String createUserId, String userIdOrUsername, List<ListModel> listModelList) {
+	private CompletableFuture<List<ListModel>> handleCreateListsForUserRequest(String createUserId, String userIdOrUsername, List<ListModel> listModelList) {
 		log.info("A request has come in to create a list for a user. Request User ID: " + createUserId + ". For User: " + userIdOrUsername);
 
-		UserModel userModel = getUserModel(userIdOrUsername);
-		if (userModel == null) {
-			return null;
-		}
-
 		// Set the create and update fields.
 		for (ListModel listModel : listModelList) {
 			listModel.setCreateUser(UUID.fromString(createUserId));
@@ -166,34 +373,52 @@ public class ListController extends BaseController {
 			listModel.setUpdateDate(new Date());
 		}
 
-		// Service call
-		listModelList = listService.createListsForUser(userModel, listModelList);
+		return getUserModelAsync(userIdOrUsername).thenCompose(userModel -> {
+			if (userModel == null) {
+				return CompletableFuture.completedFuture(null);
+			}
 
-		return listModelList;
+			// Service call
+			return listService.createListsForUserAsync(userModel, listModelList);
+		});
 	}
 
-	private ListModel handleGetListRequest(String readUserId, String listId) {
+	private CompletableFuture<ListModel> handleGetListRequest(String readUserId, String listId, ListProjection listProjection) {
 		log.info("A request has come in to read a list. Request User ID: " + readUserId);
 
-		return getListModel(listId);
+		return getListModelAsync(listId, listProjection);
 	}
 
-	private List<ListModel> handleGetListsForUserRequest(String readUserId, String userIdOrUsername) {
-		List<ListModel> listModelList = null;
-
+	private CompletableFuture<ResponseEntity<List<ListModel>>> handleGetListsForUserRequest(String readUserId, String userIdOrUsername, ListProjection listProjection, Integer limit, String cursor) {
 		log.info("A request has come in to read lists for a user. Request User ID: " + readUserId + ". For User: " + userIdOrUsername);
 
+		// Read every list, if the request is not paged.
+		if (limit == null && StringUtils.isEmpty(cursor)) {
+			CompletableFuture<List<ListModel>> listModelList = null;
+
+			if (isUUID(userIdOrUsername)) {
+				listModelList = listService.getListsByUserIdAsync(UUID.fromString(userIdOrUsername), listProjection);
+			}
+			else {
+				listModelList = listService.getListsByUsernameAsync(userIdOrUsername, listProjection);
+			}
+
+			return listModelList.thenApply(listModels -> ResponseEntity.ok(listModels));
+		}
+
+		CompletableFuture<PageModel<ListModel>> pageModel = null;
+
 		if (isUUID(userIdOrUsername)) {
-			listModelList = listService.getListsByUserId(UUID.fromString(userIdOrUsername));
+			pageModel = listService.getListsByUserIdAsync(UUID.fromString(userIdOrUsername), listProjection, getPageSize(limit), cursor);
 		}
 		else {
-			listModelList = listService.getListsByUsername(userIdOrUsername);
+			pageModel = listService.getListsByUsernameAsync(userIdOrUsername, listProjection, getPageSize(limit), cursor);
 		}
 
-		return listModelList;
+		return toPageResponse(pageModel);
 	}
 
-	private List<ListModel> handleUpdateListsRequest(String updateUserId, List<ListModel> listModelList) {
+	private CompletableFuture<List<ListModel>> handleUpdateListsRequest(String updateUserId, List<ListModel> listModelList) {
 		log.info("A request has come in to update a list. Request User ID: " + updateUserId);
 
 		// Set the update fields.
@@ -203,17 +428,13 @@ public class ListController extends BaseController {
 		}
 
 		// Service call
-		listModelList = listService.updateLists(listModelList);
-
-		return listModelList;
+		return listService.updateListsAsync(listModelList);
 	}
 
-	private List<ListModel> handleDeleteListsRequest(String deleteUserId, List<ListModel> listModelList) {
+	private CompletableFuture<List<ListModel>> handleDeleteListsRequest(String deleteUserId, List<ListModel> listModelList) {
 		log.info("A request has come in to delete a list. Request User ID: " + deleteUserId);
 
 		// Service call
-		listModelList = listService.deleteLists(listModelList);
-
-		return listModelList;
+		return listService.deleteListsAsync(listModelList);
 	}
 }
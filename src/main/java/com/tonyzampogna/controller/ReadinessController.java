@@ -0,0 +1,38 @@
+package com.tonyzampogna.controller;
+
+import com.tonyzampogna.factory.StatementCatalog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+
+@RestController
+public class ReadinessController {
+
+	@Autowired
+	private StatementCatalog statementCatalog;
+
+
+	/////////////////////////////////////////////////
+	// Controller Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Returns 200 once the statements are prepared and the warm-up is
+	 * done, and 503 until then. Load balancers should only send traffic
+	 * to the application once this returns 200.
+	 */
+	@RequestMapping(
+			value = "/ready",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	public ResponseEntity<Map<String, Object>> getReadiness() {
+		HttpStatus status = statementCatalog.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+		return ResponseEntity.status(status).body(statementCatalog.getStats());
+	}
+}
@@ -0,0 +1,80 @@
+package com.tonyzampogna.controller;
+
+import com.tonyzampogna.cache.ModelCacheRegistry;
+import com.tonyzampogna.factory.ExecutionProfiles;
+import com.tonyzampogna.factory.ListsDatabaseSessionFactory;
+import com.tonyzampogna.routing.RequestRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+
+@RestController
+public class StatsController {
+
+	@Autowired
+	private ModelCacheRegistry modelCacheRegistry;
+
+	@Autowired
+	private RequestRouter requestRouter;
+
+	@Autowired
+	private ListsDatabaseSessionFactory listsDatabaseSessionFactory;
+
+	@Autowired
+	private ExecutionProfiles executionProfiles;
+
+
+	/////////////////////////////////////////////////
+	// Controller Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Get the statistics for the caches (hit rate, evictions, load times).
+	 */
+	@RequestMapping(
+			value = "/stats/caches",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	public Map<String, Map<String, Object>> getCacheStats() {
+		return modelCacheRegistry.getStats();
+	}
+
+	/**
+	 * Get the statistics for request routing (requests served here, forwarded and redirected).
+	 */
+	@RequestMapping(
+			value = "/stats/routing",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	public Map<String, Object> getRoutingStats() {
+		return requestRouter.getStats();
+	}
+
+	/**
+	 * Get the statistics for speculative executions (how many reads were
+	 * speculated, and how often the speculative execution answered first),
+	 * for the request's tenant.
+	 */
+	@RequestMapping(
+			value = "/stats/speculative-executions",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	public Map<String, Object> getSpeculativeExecutionStats() {
+		return listsDatabaseSessionFactory.getSpeculativeExecutionStats();
+	}
+
+	/**
+	 * Get the settings of the execution profiles (consistency and timeout).
+	 */
+	@RequestMapping(
+			value = "/stats/execution-profiles",
+			method = RequestMethod.GET,
+			produces = "application/json")
+	public Map<String, Object> getExecutionProfileStats() {
+		return executionProfiles.getStats();
+	}
+}
@@ -1,15 +1,20 @@
 package com.tonyzampogna.controller;
 
+import com.tonyzampogna.cache.CachedModel;
 import com.tonyzampogna.domain.UserModel;
 import com.tonyzampogna.services.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
@@ -35,36 +40,59 @@ public class UserController extends BaseController {
 			method = RequestMethod.POST,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<UserModel> createUser(
+	public DeferredResult<List<UserModel>> createUser(
 			@RequestParam(name = "userId") String createUserId,
 			@RequestParam(name = "action", required = false) String action,
 			@RequestBody List<UserModel> userModelList) {
 
+		CompletableFuture<List<UserModel>> userModelListFuture = null;
+
 		if ("UPDATE".equals(action)) {
-			userModelList = handleUpdateUsersRequest(createUserId, userModelList);
+			userModelListFuture = handleUpdateUsersRequest(createUserId, userModelList);
 		}
 		else if ("DELETE".equals(action)) {
-			userModelList = handleDeleteUsersRequest(createUserId, userModelList);
+			userModelListFuture = handleDeleteUsersRequest(createUserId, userModelList);
 		}
 		else {
-			userModelList = handleCreateUsersRequest(createUserId, userModelList);
+			userModelListFuture = handleCreateUsersRequest(createUserId, userModelList);
 		}
 
-		return userModelList;
+		return toDeferredResult(userModelListFuture);
 	}
 
 	/**
 	 * Get user by user ID or by username.
+	 *
+	 * The user has an ETag, made from the user ID and update date. If the
+	 * If-None-Match header matches it, 304 Not Modified is returned and
+	 * the user is not serialized.
+	 *
+	 * The user is read through the user cache, which may serve it stale
+	 * (see X-Staleness-Millis) while it is refreshed, or while the
+	 * database is failing.
 	 */
 	@RequestMapping(
 			value = "/user/{userIdOrUsername}",
 			method = RequestMethod.GET,
 			produces = "application/json")
-	public UserModel getUser(
+	public DeferredResult<ResponseEntity<UserModel>> getUser(
 			@RequestParam(name = "userId") String readUserId,
-			@PathVariable(name = "userIdOrUsername") String userIdOrUsername) {
-
-		return handleGetUserRequest(readUserId, userIdOrUsername);
+			@PathVariable(name = "userIdOrUsername") String userIdOrUsername,
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+		return toDeferredResult(handleGetUserRequest(readUserId, userIdOrUsername).thenApply(cachedModel -> {
+			UserModel userModel = cachedModel.getModel();
+			if (userModel == null) {
+				return ResponseEntity.ok(userModel);
+			}
+
+			HttpHeaders headers = getCacheHeaders(cachedModel);
+			String eTag = getETag(userModel.getUserId(), userModel.getUpdateDate());
+			if (isNotModified(ifNoneMatch, eTag)) {
+				return this.<UserModel>toNotModifiedResponse(eTag, headers);
+			}
+			return ResponseEntity.ok().headers(headers).eTag(eTag).body(userModel);
+		}));
 	}
 
 	/**
@@ -78,11 +106,11 @@ public class UserController extends BaseController {
 			method = RequestMethod.PUT,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<UserModel> updateUser(
+	public DeferredResult<List<UserModel>> updateUser(
 			@RequestParam(name = "userId") String updateUserId,
 			@RequestBody List<UserModel> userModelList) {
 
-		return handleUpdateUsersRequest(updateUserId, userModelList);
+		return toDeferredResult(handleUpdateUsersRequest(updateUserId, userModelList));
 	}
 
 	/**
@@ -93,11 +121,11 @@ public class UserController extends BaseController {
 			method = RequestMethod.PUT,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<UserModel> updateUserCredentials(
+	public DeferredResult<List<UserModel>> updateUserCredentials(
 			@RequestParam(name = "userId") String updateUserId,
 			@RequestBody List<UserModel> userModelList) {
 
-		return handleUpdateUserCredentialsRequest(updateUserId, userModelList);
+		return toDeferredResult(handleUpdateUserCredentialsRequest(updateUserId, userModelList));
 	}
 
 	/**
@@ -108,11 +136,11 @@ public class UserController extends BaseController {
 			method = RequestMethod.DELETE,
 			consumes = "application/json",
 			produces = "application/json")
-	public List<UserModel> deleteUsers(
+	public DeferredResult<List<UserModel>> deleteUsers(
 			@RequestParam(name = "userId") String deleteUserId,
 			@RequestBody List<UserModel> userModelList) {
 
-		return handleDeleteUsersRequest(deleteUserId, userModelList);
+		return toDeferredResult(handleDeleteUsersRequest(deleteUserId, userModelList));
 	}
 
 
@@ -120,7 +148,7 @@ public class UserController extends BaseController {
 	// Helper Methods
 	/////////////////////////////////////////////////
 
-	private List<UserModel> handleCreateUsersRequest(String createUserId, List<UserModel> userModelList) {
+	private CompletableFuture<List<UserModel>> handleCreateUsersRequest(String createUserId, List<UserModel> userModelList) {
 		log.info("A request has come in to create a user. Request User ID: " + createUserId);
 
 		// Set the create and update fields.
@@ -132,22 +160,20 @@ public class UserController extends BaseController {
 		}
 
 		// Service call
-		userModelList = userService.createUsers(userModelList);
-
-		return userModelList;
+		return userService.createUsersAsync(userModelList);
 	}
 
-	private UserModel handleGetUserRequest(String readUserId, String userIdOrUsername) {
-		log.info("A request has come in to update a user. Request User ID: " + readUserId);
+	private CompletableFuture<CachedModel<UserModel>> handleGetUserRequest(String readUserId, String userIdOrUsername) {
+		log.info("A request has come in to read a user. Request User ID: " + readUserId);
 
-		return getUserModel(userIdOrUsername);
+		return getCachedUserModelAsync(userIdOrUsername);
 	}
 
 	/**
 	 * This function updates the UserModel in the database. It uses the
 	 * function that does not update the username/password.
 	 */
-	private List<UserModel> handleUpdateUsersRequest(String updateUserId, List<UserModel> userModelList) {
+	private CompletableFuture<List<UserModel>> handleUpdateUsersRequest(String updateUserId, List<UserModel> userModelList) {
 		log.info("A request has come in to update a user. Request User ID: " + updateUserId);
 
 		// Set the update fields.
@@ -157,9 +183,7 @@ public class UserController extends BaseController {
 		}
 
 		// Service call
-		userModelList = userService.updateUsers(userModelList);
-
-		return userModelList;
+		return userService.updateUsersAsync(userModelList);
 	}
 
 	/**
@@ -167,7 +191,7 @@ public class UserController extends BaseController {
 	 * For example, the username and password. To update other fields,
 	 * use updateUser().
 	 */
-	private List<UserModel> handleUpdateUserCredentialsRequest(String updateUserId, List<UserModel> userModelList) {
+	private CompletableFuture<List<UserModel>> handleUpdateUserCredentialsRequest(String updateUserId, List<UserModel> userModelList) {
 		log.info("A request has come in to update a user. Request User ID: " + updateUserId);
 
 		// Set the update fields.
@@ -177,17 +201,13 @@ public class UserController extends BaseController {
 		}
 
 		// Service call
-		userModelList = userService.updateUserCredentials(userModelList);
-
-		return userModelList;
+		return userService.updateUserCredentialsAsync(userModelList);
 	}
 
-	private List<UserModel> handleDeleteUsersRequest(String deleteUserId, List<UserModel> userModelList) {
+	private CompletableFuture<List<UserModel>> handleDeleteUsersRequest(String deleteUserId, List<UserModel> userModelList) {
 		log.info("A request has come in to delete a user. Request User ID: " + deleteUserId);
 
 		// Service call
-		userModelList = userService.deleteUsers(userModelList);
-
-		return userModelList;
+		return userService.deleteUsersAsync(userModelList);
 	}
 }
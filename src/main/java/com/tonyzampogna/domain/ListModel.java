@@ -18,6 +18,7 @@ public class ListModel {
 	private UUID updateUser = null;
 	private Date updateDate = null;
 	private List<UUID> itemSortOrder = null;
+	private UUID version = null;
 
 	@JsonProperty("items")
 	private List<ItemModel> itemModels = new ArrayList<ItemModel>();
@@ -79,6 +80,18 @@ public class ListModel {
 		this.itemSortOrder = itemSortOrder;
 	}
 
+	/**
+	 * A time-based UUID that changes on every write to the list
+	 * or its items. It is only read from list_items.
+	 */
+	public UUID getVersion() {
+		return version;
+	}
+
+	public void setVersion(UUID version) {
+		this.version = version;
+	}
+
 	public List<ItemModel> getItemModels() {
 		return itemModels;
 	}
@@ -0,0 +1,71 @@
+package com.tonyzampogna.domain;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * List Projection
+ *
+ * The ListModel fields that a read should return. The list services only
+ * select the columns for these fields, and only load the items when they
+ * are included.
+ */
+public class ListProjection {
+	public static final List<String> FIELDS = Arrays.asList(
+		"listId", "listName", "itemSortOrder", "createUser", "createDate", "updateUser", "updateDate", "version", "itemModels");
+
+	private Set<String> fields = new LinkedHashSet<String>(FIELDS);
+	private boolean includeItems = true;
+
+
+	/**
+	 * A projection with every field, and the items.
+	 */
+	public static ListProjection all() {
+		return new ListProjection();
+	}
+
+	public Set<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Set the fields to return. The listId is always returned.
+	 */
+	public void setFields(Collection<String> fields) {
+		Set<String> projectedFields = new LinkedHashSet<String>();
+		projectedFields.add("listId");
+
+		for (String field : fields) {
+			if (!FIELDS.contains(field)) {
+				throw new RuntimeException("The field is not a list field. Field: " + field + ". Fields: " + FIELDS);
+			}
+			projectedFields.add(field);
+		}
+
+		this.fields = projectedFields;
+	}
+
+	public boolean isIncludeItems() {
+		return includeItems;
+	}
+
+	public void setIncludeItems(boolean includeItems) {
+		this.includeItems = includeItems;
+	}
+
+	public boolean includesField(String field) {
+		return fields.contains(field);
+	}
+
+	/**
+	 * The items are loaded only if includeItems is true,
+	 * and itemModels is one of the fields.
+	 */
+	public boolean includesItems() {
+		return includeItems && fields.contains("itemModels");
+	}
+}
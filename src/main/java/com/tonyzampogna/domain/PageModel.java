@@ -0,0 +1,31 @@
+package com.tonyzampogna.domain;
+
+import java.util.List;
+
+/**
+ * Page Model
+ *
+ * One page of a larger result. The nextCursor is passed back
+ * to get the next page, and is null on the last page.
+ */
+public class PageModel<T> {
+	private List<T> models = null;
+	private String nextCursor = null;
+
+
+	public List<T> getModels() {
+		return models;
+	}
+
+	public void setModels(List<T> models) {
+		this.models = models;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+}
@@ -0,0 +1,46 @@
+package com.tonyzampogna.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A CQL statement in the StatementCatalog, and whether it is idempotent.
+ *
+ * The services declare their statements as constants. Each one is added to
+ * the list of statements the catalog prepares at startup, when it is made.
+ */
+public class CatalogStatement {
+
+	private static final List<CatalogStatement> STATEMENTS = new CopyOnWriteArrayList<CatalogStatement>();
+
+	private final String query;
+	private final boolean idempotent;
+
+
+	public CatalogStatement(String query, boolean idempotent) {
+		this.query = query;
+		this.idempotent = idempotent;
+		STATEMENTS.add(this);
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	/**
+	 * Returns every statement that has been declared.
+	 */
+	public static List<CatalogStatement> getStatements() {
+		return new ArrayList<CatalogStatement>(STATEMENTS);
+	}
+
+	@Override
+	public String toString() {
+		return query;
+	}
+}
@@ -0,0 +1,148 @@
+package com.tonyzampogna.factory;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a speculative execution policy, so only reads are speculated, and
+ * counts the speculative executions and how often one of them answered first.
+ *
+ * The driver only speculates on statements marked idempotent. The writes are
+ * idempotent too (so the driver can retry them on a timeout), but sending a
+ * write to a second coordinator only adds load, so only SELECTs are speculated.
+ *
+ * This is also registered as a latency tracker. The first successful response
+ * for a speculated statement is the one that was used, and if it came from a
+ * host other than the first one tried, the speculative execution won. (If the
+ * first execution was retried on another host, it is counted as a win too.)
+ */
+public class CountingSpeculativeExecutionPolicy implements SpeculativeExecutionPolicy, LatencyTracker {
+
+	private final SpeculativeExecutionPolicy policy;
+
+	// The statements that have had a speculative execution, until
+	// their first response. The keys are compared by identity.
+	private final Cache<Statement, SpeculatedStatement> speculatedStatements = CacheBuilder.newBuilder()
+		.weakKeys()
+		.expireAfterWrite(1, TimeUnit.MINUTES)
+		.build();
+
+	private final AtomicLong speculatedStatementCount = new AtomicLong();
+	private final AtomicLong speculativeExecutionCount = new AtomicLong();
+	private final AtomicLong speculativeWinCount = new AtomicLong();
+
+
+	public CountingSpeculativeExecutionPolicy(SpeculativeExecutionPolicy policy) {
+		this.policy = policy;
+	}
+
+	@Override
+	public void init(Cluster cluster) {
+		policy.init(cluster);
+	}
+
+	@Override
+	public SpeculativeExecutionPlan newPlan(String loggedKeyspace, Statement statement) {
+		if (!isRead(statement)) {
+			return lastQueried -> -1;
+		}
+
+		SpeculativeExecutionPlan plan = policy.newPlan(loggedKeyspace, statement);
+
+		// The plan is asked for the next delay each time an execution is
+		// sent, with the host it was sent to. The first call is for the
+		// first execution, and each one after that is for a speculative one.
+		return new SpeculativeExecutionPlan() {
+			private Host firstHost = null;
+
+			@Override
+			public long nextExecution(Host lastQueried) {
+				if (firstHost == null) {
+					firstHost = lastQueried;
+				}
+				else {
+					speculativeExecutionCount.incrementAndGet();
+					if (speculatedStatements.asMap().putIfAbsent(statement, new SpeculatedStatement(firstHost)) == null) {
+						speculatedStatementCount.incrementAndGet();
+					}
+				}
+				return plan.nextExecution(lastQueried);
+			}
+		};
+	}
+
+	@Override
+	public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+		if (exception != null) {
+			return;
+		}
+
+		SpeculatedStatement speculatedStatement = speculatedStatements.getIfPresent(statement);
+		if (speculatedStatement != null && speculatedStatement.answered.compareAndSet(false, true)) {
+			speculatedStatements.invalidate(statement);
+			if (!host.equals(speculatedStatement.firstHost)) {
+				speculativeWinCount.incrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public void onRegister(Cluster cluster) {
+	}
+
+	@Override
+	public void onUnregister(Cluster cluster) {
+	}
+
+	@Override
+	public void close() {
+		policy.close();
+	}
+
+	public Map<String, Object> getStats() {
+		long speculated = speculatedStatementCount.get();
+
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("speculatedStatementCount", speculated);
+		stats.put("speculativeExecutionCount", speculativeExecutionCount.get());
+		stats.put("speculativeWinCount", speculativeWinCount.get());
+		stats.put("speculativeWinRate", (speculated > 0) ? speculativeWinCount.get() / (double) speculated : 0.0);
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	private static boolean isRead(Statement statement) {
+		return statement instanceof BoundStatement &&
+			((BoundStatement) statement).preparedStatement().getQueryString().trim().regionMatches(true, 0, "SELECT", 0, 6);
+	}
+
+
+	/**
+	 * A speculated statement, and the host its first execution went to.
+	 */
+	private static class SpeculatedStatement {
+		private final Host firstHost;
+		private final AtomicBoolean answered = new AtomicBoolean();
+
+		SpeculatedStatement(Host firstHost) {
+			this.firstHost = firstHost;
+		}
+	}
+}
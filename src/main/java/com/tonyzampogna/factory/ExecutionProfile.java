@@ -0,0 +1,51 @@
+package com.tonyzampogna.factory;
+
+/**
+ * The consistency and timeout profiles a statement can be run with. Each
+ * service method picks one when it binds its statements, so a cheap read
+ * does not pay for the same quorum as a credential change.
+ *
+ * The settings for each profile are in lists-database.properties
+ * (lists.database.profile.*), and are applied by ExecutionProfiles.
+ */
+public enum ExecutionProfile {
+
+	/**
+	 * Reads that can be a little stale, such as showing a user's lists.
+	 * LOCAL_ONE, with a short timeout.
+	 */
+	FAST_READ("fast-read"),
+
+	/**
+	 * Reads that have to see the last write, such as reading
+	 * the rows a write is about to change. LOCAL_QUORUM.
+	 */
+	SAFE_READ("safe-read"),
+
+	/**
+	 * Writes. LOCAL_QUORUM, so a SAFE_READ always sees them.
+	 */
+	SAFE_WRITE("safe-write"),
+
+	/**
+	 * Lightweight transactions, such as claiming a unique username.
+	 * LOCAL_SERIAL for the Paxos round, and LOCAL_QUORUM for the commit.
+	 */
+	SERIAL("serial");
+
+
+	private final String name;
+
+	ExecutionProfile(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
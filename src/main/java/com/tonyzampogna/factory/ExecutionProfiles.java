@@ -0,0 +1,123 @@
+package com.tonyzampogna.factory;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Statement;
+import com.tonyzampogna.config.ListsDatabaseProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies the consistency level, serial consistency level and read timeout
+ * of an ExecutionProfile to a statement.
+ *
+ * The settings are read from lists-database.properties at startup, so
+ * latency can be traded against durability for each kind of operation
+ * without changing the services. The read timeout is how long the driver
+ * waits for a host before it tries the next one (or fails the request).
+ */
+@Component
+public class ExecutionProfiles {
+	private static final Logger log = LoggerFactory.getLogger(ExecutionProfiles.class);
+
+	private final Map<ExecutionProfile, Settings> settingsByProfile = new EnumMap<ExecutionProfile, Settings>(ExecutionProfile.class);
+
+
+	@Autowired
+	public ExecutionProfiles(ListsDatabaseProperties listsDatabaseProperties) {
+		settingsByProfile.put(ExecutionProfile.FAST_READ, new Settings(
+			getConsistencyLevel(listsDatabaseProperties.getFastReadConsistency()),
+			null,
+			listsDatabaseProperties.getFastReadTimeoutMillis()));
+
+		settingsByProfile.put(ExecutionProfile.SAFE_READ, new Settings(
+			getConsistencyLevel(listsDatabaseProperties.getSafeReadConsistency()),
+			null,
+			listsDatabaseProperties.getSafeReadTimeoutMillis()));
+
+		settingsByProfile.put(ExecutionProfile.SAFE_WRITE, new Settings(
+			getConsistencyLevel(listsDatabaseProperties.getSafeWriteConsistency()),
+			null,
+			listsDatabaseProperties.getSafeWriteTimeoutMillis()));
+
+		settingsByProfile.put(ExecutionProfile.SERIAL, new Settings(
+			getConsistencyLevel(listsDatabaseProperties.getSerialConsistency()),
+			getConsistencyLevel(listsDatabaseProperties.getSerialSerialConsistency()),
+			listsDatabaseProperties.getSerialTimeoutMillis()));
+
+		for (ExecutionProfile profile : ExecutionProfile.values()) {
+			log.info("Execution profile: " + profile + ". " + settingsByProfile.get(profile));
+		}
+	}
+
+	/**
+	 * Sets the profile's consistency levels and read timeout on the
+	 * statement, and returns it.
+	 */
+	public <T extends Statement> T apply(ExecutionProfile profile, T statement) {
+		Settings settings = settingsByProfile.get(profile);
+
+		statement.setConsistencyLevel(settings.consistencyLevel);
+		if (settings.serialConsistencyLevel != null) {
+			statement.setSerialConsistencyLevel(settings.serialConsistencyLevel);
+		}
+		statement.setReadTimeoutMillis(settings.readTimeoutMillis);
+
+		return statement;
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		for (ExecutionProfile profile : ExecutionProfile.values()) {
+			stats.put(profile.getName(), settingsByProfile.get(profile).toString());
+		}
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	private static ConsistencyLevel getConsistencyLevel(String consistencyLevel) {
+		if (!StringUtils.hasText(consistencyLevel)) {
+			return null;
+		}
+
+		try {
+			return ConsistencyLevel.valueOf(consistencyLevel.trim().toUpperCase());
+		}
+		catch (IllegalArgumentException e) {
+			throw new RuntimeException("Unknown consistency level in lists-database.properties. Consistency level: " + consistencyLevel);
+		}
+	}
+
+
+	/**
+	 * The settings for one profile. A null consistency level
+	 * means the driver's default is used.
+	 */
+	private static class Settings {
+		private final ConsistencyLevel consistencyLevel;
+		private final ConsistencyLevel serialConsistencyLevel;
+		private final int readTimeoutMillis;
+
+		Settings(ConsistencyLevel consistencyLevel, ConsistencyLevel serialConsistencyLevel, int readTimeoutMillis) {
+			this.consistencyLevel = consistencyLevel;
+			this.serialConsistencyLevel = serialConsistencyLevel;
+			this.readTimeoutMillis = readTimeoutMillis;
+		}
+
+		@Override
+		public String toString() {
+			return "Consistency: " + consistencyLevel + ". Serial consistency: " + serialConsistencyLevel + ". Read timeout millis: " + readTimeoutMillis;
+		}
+	}
+}
@@ -1,78 +1,288 @@
 package com.tonyzampogna.factory;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
 import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PerHostPercentileTracker;
 import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.ProtocolOptions;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
 import com.datastax.driver.core.policies.ExponentialReconnectionPolicy;
+import com.datastax.driver.core.policies.LatencyAwarePolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.datastax.driver.core.policies.NoSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.PercentileSpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
 import com.tonyzampogna.config.ListsDatabaseProperties;
+import com.tonyzampogna.tenant.TenantContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This factory will return an instance of the Cassandra Session object.
  * There is one instance per keyspace per application. So, we keep a map
  * of the instances by keyspace name.
+ *
+ * Each tenant has its own keyspace, and its session is built the first
+ * time the tenant is worked for. Each session has its own Cluster, with
+ * the tenant's pool sizes, so one busy tenant cannot use up the
+ * connections (or in-flight requests) of another.
  */
 @Component
 public class ListsDatabaseSessionFactory {
 	private static final Logger log = LoggerFactory.getLogger(ListsDatabaseSessionFactory.class);
 
 
-	private static Session SESSION = null;
+	private static final ConcurrentMap<String, Session> SESSIONS = new ConcurrentHashMap<String, Session>();
+	private static final ConcurrentMap<String, CountingSpeculativeExecutionPolicy> SPECULATIVE_EXECUTION_POLICIES = new ConcurrentHashMap<String, CountingSpeculativeExecutionPolicy>();
 
 	@Autowired
 	private ListsDatabaseProperties listsDatabaseProperties;
 
 
 	/**
-	 * Get the Cassandra session for the keyspace name.
+	 * Get the Cassandra session for the current tenant's keyspace.
 	 */
 	public Session getSession() {
+		return getSession(TenantContext.get());
+	}
+
+	/**
+	 * Get the Cassandra session for the tenant's keyspace.
+	 */
+	public Session getSession(String tenant) {
+		Session session = ListsDatabaseSessionFactory.SESSIONS.get(tenant);
+
+		if (session == null) {
+			if (!listsDatabaseProperties.getAllTenants().contains(tenant)) {
+				throw new RuntimeException("Unknown tenant. Tenant: " + tenant);
+			}
 
-		if (ListsDatabaseSessionFactory.SESSION == null) {
 			synchronized(Session.class) {
-				try {
-					String cassandraNodes = listsDatabaseProperties.getNodes();
-					String keyspace = listsDatabaseProperties.getKeyspaceName();
-					String username = listsDatabaseProperties.getUsername();
-					String password = listsDatabaseProperties.getPassword();
-					int connectionsPerHost = listsDatabaseProperties.getConnectionsPerHost();
-					int coreConnectionsPerHost = listsDatabaseProperties.getCoreConnectionsPerHost();
-					int maxConnectionsPerHost = listsDatabaseProperties.getMaxConnectionsPerHost();
-					int maxRequestsPerConnection = listsDatabaseProperties.getMaxRequestsPerConnection();
-
-					Cluster.Builder builder = Cluster.builder()
-						.addContactPoints(cassandraNodes.split(","))
-						.withReconnectionPolicy(new ExponentialReconnectionPolicy(1000, 30000));
-
-					PoolingOptions poolingOptions = new PoolingOptions();
-					poolingOptions.setConnectionsPerHost(HostDistance.LOCAL, connectionsPerHost, maxConnectionsPerHost);
-					poolingOptions.setCoreConnectionsPerHost(HostDistance.LOCAL, coreConnectionsPerHost);
-					poolingOptions.setMaxRequestsPerConnection(HostDistance.LOCAL, maxRequestsPerConnection);
-					builder.withPoolingOptions(poolingOptions);
-
-					if (StringUtils.hasLength(username) && StringUtils.hasLength(password)) {
-						builder.withCredentials(username, password);
+				session = ListsDatabaseSessionFactory.SESSIONS.get(tenant);
+				if (session == null) {
+					session = connect(tenant);
+					if (session != null) {
+						ListsDatabaseSessionFactory.SESSIONS.put(tenant, session);
 					}
+				}
+			}
+		}
 
-					// Get the Session
-					Cluster cluster = builder.build();
+		return session;
+	}
 
-					// Connect to the DB, and set the static variable.
-					ListsDatabaseSessionFactory.SESSION = cluster.connect(keyspace);
-				}
-				catch (Exception e) {
-					log.error("Exception occurred while getting Cassandra session for the Lists database.", e);
+	/**
+	 * Returns the speculative execution counts for the current
+	 * tenant, or nothing if it has no session yet.
+	 */
+	public Map<String, Object> getSpeculativeExecutionStats() {
+		CountingSpeculativeExecutionPolicy speculativeExecutionPolicy = ListsDatabaseSessionFactory.SPECULATIVE_EXECUTION_POLICIES.get(TenantContext.get());
+		return (speculativeExecutionPolicy != null) ? speculativeExecutionPolicy.getStats() : Collections.<String, Object>emptyMap();
+	}
+
+	/**
+	 * Returns the open connections and in-flight queries of each tenant's
+	 * session, by host.
+	 */
+	public Map<String, Object> getTenantStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+
+		for (String tenant : listsDatabaseProperties.getAllTenants()) {
+			Session session = ListsDatabaseSessionFactory.SESSIONS.get(tenant);
+			Map<String, Object> tenantStats = new LinkedHashMap<String, Object>();
+			tenantStats.put("keyspace", (session != null) ? session.getLoggedKeyspace() : null);
+			tenantStats.put("connected", session != null);
+
+			if (session != null) {
+				Map<String, Object> hostStats = new LinkedHashMap<String, Object>();
+				for (Host host : session.getState().getConnectedHosts()) {
+					Map<String, Object> poolStats = new LinkedHashMap<String, Object>();
+					poolStats.put("openConnections", session.getState().getOpenConnections(host));
+					poolStats.put("inFlightQueries", session.getState().getInFlightQueries(host));
+					hostStats.put(host.toString(), poolStats);
 				}
+				tenantStats.put("hosts", hostStats);
 			}
+
+			stats.put(tenant, tenantStats);
+		}
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Builds a Cluster for the tenant (with its pool sizes), and
+	 * connects to its keyspace. Returns null if it could not connect.
+	 */
+	private Session connect(String tenant) {
+		try {
+			String cassandraNodes = listsDatabaseProperties.getNodes();
+			String keyspace = listsDatabaseProperties.getKeyspaceName(tenant);
+			String username = listsDatabaseProperties.getUsername();
+			String password = listsDatabaseProperties.getPassword();
+			int connectionsPerHost = listsDatabaseProperties.getConnectionsPerHost(tenant);
+			int coreConnectionsPerHost = listsDatabaseProperties.getCoreConnectionsPerHost(tenant);
+			int maxConnectionsPerHost = listsDatabaseProperties.getMaxConnectionsPerHost(tenant);
+			int maxRequestsPerConnection = listsDatabaseProperties.getMaxRequestsPerConnection(tenant);
+
+			Cluster.Builder builder = Cluster.builder()
+				.withClusterName("lists-" + tenant)
+				.addContactPoints(cassandraNodes.split(","))
+				.withReconnectionPolicy(new ExponentialReconnectionPolicy(1000, 30000))
+				.withLoadBalancingPolicy(getLoadBalancingPolicy())
+				.withCompression(getCompression());
+
+			// Only reads are speculated (see CountingSpeculativeExecutionPolicy).
+			PerHostPercentileTracker percentileTracker = getPercentileTracker();
+			CountingSpeculativeExecutionPolicy speculativeExecutionPolicy = new CountingSpeculativeExecutionPolicy(getSpeculativeExecutionPolicy(percentileTracker));
+			builder.withSpeculativeExecutionPolicy(speculativeExecutionPolicy);
+
+			PoolingOptions poolingOptions = new PoolingOptions();
+			poolingOptions.setConnectionsPerHost(HostDistance.LOCAL, connectionsPerHost, maxConnectionsPerHost);
+			poolingOptions.setCoreConnectionsPerHost(HostDistance.LOCAL, coreConnectionsPerHost);
+			poolingOptions.setMaxRequestsPerConnection(HostDistance.LOCAL, maxRequestsPerConnection);
+			builder.withPoolingOptions(poolingOptions);
+
+			if (StringUtils.hasLength(username) && StringUtils.hasLength(password)) {
+				builder.withCredentials(username, password);
+			}
+
+			// Get the Session
+			Cluster cluster = builder.build();
+			cluster.register(speculativeExecutionPolicy);
+			if (percentileTracker != null) {
+				cluster.register(percentileTracker);
+			}
+			ListsDatabaseSessionFactory.SPECULATIVE_EXECUTION_POLICIES.put(tenant, speculativeExecutionPolicy);
+
+			// Connect to the DB.
+			Session session = cluster.connect(keyspace);
+			log.info("Connected to the Lists database. Tenant: " + tenant + ". Keyspace: " + keyspace +
+				". Connections per host: " + coreConnectionsPerHost + "-" + maxConnectionsPerHost + ". Max requests per connection: " + maxRequestsPerConnection);
+
+			return session;
+		}
+		catch (Exception e) {
+			log.error("Exception occurred while getting Cassandra session for the Lists database. Tenant: " + tenant, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the load balancing policy. Queries go to the hosts in the
+	 * local data center (DC-aware). With token-aware on, they go straight
+	 * to a replica of the partition, which saves the coordinator's hop to
+	 * the replica. With latency-aware on, hosts that are much slower than
+	 * the fastest one (by exclusion-threshold times) are tried last, until
+	 * retry-period-seconds has passed.
+	 */
+	private LoadBalancingPolicy getLoadBalancingPolicy() {
+		DCAwareRoundRobinPolicy.Builder dcAwareBuilder = DCAwareRoundRobinPolicy.builder()
+			.withUsedHostsPerRemoteDc(listsDatabaseProperties.getUsedHostsPerRemoteDc());
+		if (StringUtils.hasLength(listsDatabaseProperties.getLocalDatacenter())) {
+			dcAwareBuilder.withLocalDc(listsDatabaseProperties.getLocalDatacenter());
+		}
+
+		LoadBalancingPolicy policy = dcAwareBuilder.build();
+
+		if (listsDatabaseProperties.getTokenAware()) {
+			policy = new TokenAwarePolicy(policy);
+		}
+
+		if (listsDatabaseProperties.getLatencyAware()) {
+			policy = LatencyAwarePolicy.builder(policy)
+				.withExclusionThreshold(listsDatabaseProperties.getLatencyExclusionThreshold())
+				.withScale(listsDatabaseProperties.getLatencyScaleMillis(), TimeUnit.MILLISECONDS)
+				.withRetryPeriod(listsDatabaseProperties.getLatencyRetryPeriodSeconds(), TimeUnit.SECONDS)
+				.withMininumMeasurements(listsDatabaseProperties.getLatencyMinimumMeasurements())
+				.build();
+		}
+
+		return policy;
+	}
+
+	/**
+	 * Returns the speculative execution policy (none, constant or percentile).
+	 * If a read has not been answered after the delay, it is sent to the next
+	 * host as well, up to max-executions in all, and the first answer is used.
+	 * The constant delay is delay-millis. The percentile delay is the host's
+	 * latency at that percentile, so only the slowest reads are speculated.
+	 */
+	private SpeculativeExecutionPolicy getSpeculativeExecutionPolicy(PerHostPercentileTracker percentileTracker) {
+		String speculativeExecution = listsDatabaseProperties.getSpeculativeExecution();
+		int maxExecutions = listsDatabaseProperties.getSpeculativeMaxExecutions();
+
+		if (percentileTracker != null) {
+			return new PercentileSpeculativeExecutionPolicy(percentileTracker, listsDatabaseProperties.getSpeculativePercentile(), maxExecutions);
+		}
+		if ("constant".equalsIgnoreCase(speculativeExecution) || "percentile".equalsIgnoreCase(speculativeExecution)) {
+			return new ConstantSpeculativeExecutionPolicy(listsDatabaseProperties.getSpeculativeDelayMillis(), maxExecutions);
 		}
 
-		return ListsDatabaseSessionFactory.SESSION;
+		return NoSpeculativeExecutionPolicy.INSTANCE;
+	}
+
+	/**
+	 * Returns the latency tracker for percentile speculative executions, or
+	 * null if they are not used. The tracker needs the HdrHistogram jar
+	 * (org.hdrhistogram:HdrHistogram). If it is not on the classpath, the
+	 * constant delay is used instead.
+	 */
+	private PerHostPercentileTracker getPercentileTracker() {
+		if (!"percentile".equalsIgnoreCase(listsDatabaseProperties.getSpeculativeExecution()) ||
+			!isClassPresent("org.HdrHistogram.Recorder", "percentile speculative execution")) {
+			return null;
+		}
+
+		return PerHostPercentileTracker.builder(15000).build();
+	}
+
+	/**
+	 * Returns the protocol compression (none, lz4 or snappy). The driver
+	 * needs the lz4 (net.jpountz.lz4:lz4) or snappy (org.xerial.snappy:snappy-java)
+	 * jar to compress. If it is not on the classpath, compression is off.
+	 */
+	private ProtocolOptions.Compression getCompression() {
+		String compression = listsDatabaseProperties.getCompression();
+
+		if ("lz4".equalsIgnoreCase(compression)) {
+			return isClassPresent("net.jpountz.lz4.LZ4Factory", "lz4 compression") ? ProtocolOptions.Compression.LZ4 : ProtocolOptions.Compression.NONE;
+		}
+		if ("snappy".equalsIgnoreCase(compression)) {
+			return isClassPresent("org.xerial.snappy.Snappy", "snappy compression") ? ProtocolOptions.Compression.SNAPPY : ProtocolOptions.Compression.NONE;
+		}
+
+		return ProtocolOptions.Compression.NONE;
+	}
+
+	private boolean isClassPresent(String className, String feature) {
+		try {
+			Class.forName(className);
+			return true;
+		}
+		catch (ClassNotFoundException e) {
+			log.warn("The library for " + feature + " is not on the classpath, so it is not used. Class: " + className);
+			return false;
+		}
 	}
 
 }
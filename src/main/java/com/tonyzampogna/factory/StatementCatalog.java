@@ -0,0 +1,317 @@
+package com.tonyzampogna.factory;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.utils.UUIDs;
+import com.tonyzampogna.config.ListsDatabaseProperties;
+import com.tonyzampogna.tenant.TenantContext;
+import com.tonyzampogna.util.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The prepared statements for the Lists database, for each tenant. A
+ * statement is prepared in the session for the tenant's keyspace, so the
+ * prepared statements are kept by tenant.
+ *
+ * Once the application is up, every CatalogStatement is prepared (in
+ * parallel) for every tenant, and a synthetic load of warm-up-requests reads (with random
+ * keys, so they find nothing) is run through the read statements. This
+ * connects to Cassandra, fills the connection pools, and warms up the
+ * JIT before the first real requests. The application reports that it
+ * is ready (GET /ready) only once this is done. If Cassandra cannot be
+ * reached, it is tried again every few seconds.
+ *
+ * A statement that was not prepared at startup (such as a projected
+ * list read) is prepared the first time it is used.
+ *
+ * Every statement is bound with the ExecutionProfile (consistency and
+ * timeout) of the service method that runs it.
+ */
+@Component
+public class StatementCatalog {
+	private static final Logger log = LoggerFactory.getLogger(StatementCatalog.class);
+
+	private static final long WARM_UP_RETRY_MILLIS = 5000;
+
+	@Autowired
+	private ListsDatabaseSessionFactory listsDatabaseSessionFactory;
+
+	@Autowired
+	private ListsDatabaseProperties listsDatabaseProperties;
+
+	@Autowired
+	private ExecutionProfiles executionProfiles;
+
+	// The prepared statements by tenant, then by query.
+	private final ConcurrentMap<String, ConcurrentMap<String, PreparedStatement>> preparedStatementsByTenant = new ConcurrentHashMap<String, ConcurrentMap<String, PreparedStatement>>();
+	private volatile boolean ready = false;
+
+	private final AtomicLong lazyPrepareCount = new AtomicLong();
+	private final AtomicLong warmUpRequestCount = new AtomicLong();
+	private final AtomicLong warmUpFailureCount = new AtomicLong();
+	// Summed over the tenants. Only the warm-up thread sets them.
+	private volatile long prepareMillis = 0;
+	private volatile long warmUpMillis = 0;
+
+
+	/**
+	 * Returns a new BoundStatement for the statement, with the profile applied.
+	 */
+	public BoundStatement bind(CatalogStatement catalogStatement, ExecutionProfile profile) {
+		return executionProfiles.apply(profile, getPreparedStatement(catalogStatement.getQuery(), catalogStatement.isIdempotent()).bind());
+	}
+
+	/**
+	 * Returns a new BoundStatement for a query that is not a CatalogStatement
+	 * (one that is built at runtime), with the profile applied.
+	 */
+	public BoundStatement bind(String query, boolean idempotent, ExecutionProfile profile) {
+		return executionProfiles.apply(profile, getPreparedStatement(query, idempotent).bind());
+	}
+
+	/**
+	 * Returns true once the statements are prepared and the warm-up is done.
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Prepare the statements and run the warm-up in the background,
+	 * once the application is up.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void warmUpInBackground() {
+		Thread thread = new Thread(() -> {
+			while (!warmUp()) {
+				try {
+					Thread.sleep(WARM_UP_RETRY_MILLIS);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		}, "statement-catalog-warm-up");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Prepares every statement, and runs the warm-up load, for each
+	 * tenant. Returns false if it failed (and should be tried again).
+	 */
+	public boolean warmUp() {
+		prepareMillis = 0;
+		warmUpMillis = 0;
+
+		for (String tenant : listsDatabaseProperties.getAllTenants()) {
+			try {
+				Session session = listsDatabaseSessionFactory.getSession(tenant);
+				if (session == null) {
+					log.warn("Could not connect to the Lists database. The warm-up will be tried again. Tenant: " + tenant + ". Millis: " + WARM_UP_RETRY_MILLIS);
+					return false;
+				}
+
+				TenantContext.runAs(tenant, () -> {
+					prepareAll(session);
+					runWarmUpLoad(session);
+				});
+
+				for (Host host : session.getState().getConnectedHosts()) {
+					log.info("Connection pool is warm. Tenant: " + tenant + ". Host: " + host + ". Open connections: " + session.getState().getOpenConnections(host));
+				}
+			}
+			catch (Exception e) {
+				log.error("Exception occurred while warming up the Lists database. The warm-up will be tried again. Tenant: " + tenant + ". Millis: " + WARM_UP_RETRY_MILLIS, e);
+				return false;
+			}
+		}
+
+		ready = true;
+		log.info("The Lists database is ready. Tenants: " + listsDatabaseProperties.getAllTenants() + ". Statements: " + getPreparedCount() + ". Prepare millis: " + prepareMillis + ". Warm-up millis: " + warmUpMillis);
+		return true;
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("ready", ready);
+		stats.put("statementCount", CatalogStatement.getStatements().size());
+		stats.put("tenantCount", preparedStatementsByTenant.size());
+		stats.put("preparedCount", getPreparedCount());
+		stats.put("lazyPrepareCount", lazyPrepareCount.get());
+		stats.put("prepareMillis", prepareMillis);
+		stats.put("warmUpRequestCount", warmUpRequestCount.get());
+		stats.put("warmUpFailureCount", warmUpFailureCount.get());
+		stats.put("warmUpMillis", warmUpMillis);
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Returns the prepared statements for the current tenant.
+	 */
+	private ConcurrentMap<String, PreparedStatement> getPreparedStatements() {
+		String tenant = TenantContext.get();
+		ConcurrentMap<String, PreparedStatement> preparedStatements = preparedStatementsByTenant.get(tenant);
+
+		if (preparedStatements == null) {
+			preparedStatements = new ConcurrentHashMap<String, PreparedStatement>();
+			ConcurrentMap<String, PreparedStatement> existingStatements = preparedStatementsByTenant.putIfAbsent(tenant, preparedStatements);
+			if (existingStatements != null) {
+				return existingStatements;
+			}
+		}
+
+		return preparedStatements;
+	}
+
+	private int getPreparedCount() {
+		int preparedCount = 0;
+		for (Map<String, PreparedStatement> preparedStatements : preparedStatementsByTenant.values()) {
+			preparedCount += preparedStatements.size();
+		}
+		return preparedCount;
+	}
+
+	private PreparedStatement getPreparedStatement(String query, boolean idempotent) {
+		ConcurrentMap<String, PreparedStatement> preparedStatements = getPreparedStatements();
+		PreparedStatement preparedStatement = preparedStatements.get(query);
+
+		// Prepare the statement if it was not prepared at startup.
+		if (preparedStatement == null) {
+			preparedStatement = listsDatabaseSessionFactory.getSession().prepare(query).setIdempotent(idempotent);
+			PreparedStatement existingStatement = preparedStatements.putIfAbsent(query, preparedStatement);
+			if (existingStatement != null) {
+				return existingStatement;
+			}
+			lazyPrepareCount.incrementAndGet();
+		}
+
+		return preparedStatement;
+	}
+
+	/**
+	 * Prepares all of the statements at once.
+	 */
+	private void prepareAll(Session session) {
+		long start = System.currentTimeMillis();
+		ConcurrentMap<String, PreparedStatement> preparedStatements = getPreparedStatements();
+		List<CompletableFuture<Void>> prepares = new ArrayList<CompletableFuture<Void>>();
+
+		for (CatalogStatement catalogStatement : CatalogStatement.getStatements()) {
+			if (!preparedStatements.containsKey(catalogStatement.getQuery())) {
+				prepares.add(FutureUtils.toCompletableFuture(session.prepareAsync(catalogStatement.getQuery())).thenAccept(preparedStatement ->
+					preparedStatements.putIfAbsent(catalogStatement.getQuery(), preparedStatement.setIdempotent(catalogStatement.isIdempotent()))));
+			}
+		}
+
+		FutureUtils.getUninterruptibly(CompletableFuture.allOf(prepares.toArray(new CompletableFuture<?>[prepares.size()])));
+		prepareMillis += System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Runs warm-up-requests reads, warm-up-concurrency at a time, spread
+	 * over the read statements that can be bound with random keys.
+	 */
+	private void runWarmUpLoad(Session session) {
+		long start = System.currentTimeMillis();
+		ConcurrentMap<String, PreparedStatement> preparedStatements = getPreparedStatements();
+		int requestCount = listsDatabaseProperties.getWarmUpRequests();
+		List<CatalogStatement> readStatements = CatalogStatement.getStatements().stream()
+			.filter(catalogStatement -> catalogStatement.getQuery().startsWith("SELECT"))
+			.filter(catalogStatement -> canBindRandomly(preparedStatements.get(catalogStatement.getQuery())))
+			.collect(Collectors.toList());
+
+		if (requestCount > 0 && !readStatements.isEmpty()) {
+			List<Integer> requests = IntStream.range(0, requestCount).boxed().collect(Collectors.toList());
+
+			FutureUtils.getUninterruptibly(FutureUtils.allBounded(requests, listsDatabaseProperties.getWarmUpConcurrency(), request -> {
+				BoundStatement boundStatement = executionProfiles.apply(ExecutionProfile.FAST_READ,
+					bindRandomly(preparedStatements.get(readStatements.get(request % readStatements.size()).getQuery())));
+				warmUpRequestCount.incrementAndGet();
+
+				return FutureUtils.toCompletableFuture(session.executeAsync(boundStatement)).handle((resultSet, t) -> {
+					if (t != null) {
+						warmUpFailureCount.incrementAndGet();
+					}
+					return null;
+				});
+			}));
+		}
+
+		warmUpMillis += System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Returns true if the statement has bind variables, and all of them can be
+	 * given random values. A statement with none would read a whole table.
+	 */
+	private static boolean canBindRandomly(PreparedStatement preparedStatement) {
+		if (preparedStatement == null || preparedStatement.getVariables().size() == 0) {
+			return false;
+		}
+
+		for (ColumnDefinitions.Definition variable : preparedStatement.getVariables()) {
+			if (getRandomValue(variable.getType()) == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static BoundStatement bindRandomly(PreparedStatement preparedStatement) {
+		List<Object> values = new ArrayList<Object>();
+
+		for (ColumnDefinitions.Definition variable : preparedStatement.getVariables()) {
+			values.add(getRandomValue(variable.getType()));
+		}
+
+		return preparedStatement.bind(values.toArray());
+	}
+
+	private static Object getRandomValue(DataType dataType) {
+		if (dataType.equals(DataType.uuid())) {
+			return UUID.randomUUID();
+		}
+		if (dataType.equals(DataType.timeuuid())) {
+			return UUIDs.timeBased();
+		}
+		if (dataType.equals(DataType.text()) || dataType.equals(DataType.varchar())) {
+			return "warm-up-" + UUID.randomUUID();
+		}
+		if (dataType.getName() == DataType.Name.LIST && !dataType.getTypeArguments().isEmpty()) {
+			Object value = getRandomValue(dataType.getTypeArguments().get(0));
+			return (value != null) ? Collections.singletonList(value) : null;
+		}
+
+		return null;
+	}
+}
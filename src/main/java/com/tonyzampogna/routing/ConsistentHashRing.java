@@ -0,0 +1,95 @@
+package com.tonyzampogna.routing;
+
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * A consistent-hash ring of application nodes (host:port), used to pick
+ * the node that owns a key.
+ *
+ * Each node is put on the ring at virtual-nodes points, so the keys are
+ * spread evenly, and when a node is added or removed only about 1/N of
+ * the keys move (to or from that node). The ring cannot be changed. To
+ * change the nodes, build a new ring.
+ */
+public class ConsistentHashRing {
+
+	private final List<String> nodes;
+	private final int virtualNodes;
+	private final NavigableMap<Long, String> ring = new TreeMap<Long, String>();
+
+
+	public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+		this.nodes = Collections.unmodifiableList(new ArrayList<String>(new LinkedHashSet<String>(nodes)));
+		this.virtualNodes = Math.max(1, virtualNodes);
+
+		for (String node : this.nodes) {
+			for (int count = 0; count < this.virtualNodes; count++) {
+				ring.put(hash(node + "#" + count), node);
+			}
+		}
+	}
+
+	public List<String> getNodes() {
+		return nodes;
+	}
+
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	/**
+	 * Returns the node that owns the key, or null if there are no nodes.
+	 */
+	public String getNode(String key) {
+		return getNode(key, node -> true);
+	}
+
+	/**
+	 * Returns the node that owns the key, skipping the nodes that are not
+	 * available (the next node on the ring takes over their keys). Returns
+	 * null if no node is available.
+	 */
+	public String getNode(String key, Predicate<String> isAvailable) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+
+		Set<String> checkedNodes = new LinkedHashSet<String>();
+		long hash = hash(key);
+
+		// Walk the ring clockwise from the key, wrapping around.
+		for (String node : Iterables.concat(ring.tailMap(hash, true).values(), ring.headMap(hash, false).values())) {
+			if (checkedNodes.add(node)) {
+				if (isAvailable.test(node)) {
+					return node;
+				}
+				if (checkedNodes.size() == nodes.size()) {
+					return null;
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	static long hash(String value) {
+		return Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8).asLong();
+	}
+}
@@ -0,0 +1,275 @@
+package com.tonyzampogna.routing;
+
+import com.tonyzampogna.config.ListsWebProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends each request for a list or a user to the application node that owns
+ * it, so each node only caches its own slice of the lists and users, and the
+ * total cache capacity grows with the number of nodes.
+ *
+ * The owner is picked with a consistent-hash ring of the nodes, keyed on the
+ * listId path variable (or, if there is none, userIdOrUsername). Requests
+ * without either are served by the node that gets them. In forward mode, the
+ * request is proxied to the owner. In redirect mode, the client is sent a
+ * 307 to the owner. A forwarded request is always served by the node that
+ * receives it, so a request is never forwarded twice.
+ *
+ * If the owner cannot be reached, it is skipped for down-seconds (its keys
+ * move to the next node on the ring). A read (GET, HEAD or OPTIONS) that
+ * could not be sent is served here instead. Any other failure gets a 502
+ * (or a 504, if the owner timed out), since the owner may already have
+ * applied a write, and the request body has been read.
+ */
+@Component
+public class RequestRouter extends HandlerInterceptorAdapter {
+	private static final Logger log = LoggerFactory.getLogger(RequestRouter.class);
+
+	public static final String FORWARDED_BY_HEADER = "X-Lists-Forwarded-By";
+
+	private static final String LIST_ID = "listId";
+	private static final String USER_ID_OR_USERNAME = "userIdOrUsername";
+
+	// Headers that are for one connection, and are not passed on.
+	private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<String>(Arrays.asList(
+		"connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+		"transfer-encoding", "upgrade", "host", "content-length"));
+
+	// Methods that only read, and have no body, so they can be served here
+	// if they could not be sent to the owner.
+	private static final Set<String> SAFE_METHODS = new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS"));
+
+	private final boolean enabled;
+	private final String self;
+	private final boolean redirect;
+	private final int timeoutMillis;
+	private final long downMillis;
+
+	private volatile ConsistentHashRing ring;
+	private final ConcurrentMap<String, Long> downUntilByNode = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicLong localCount = new AtomicLong();
+	private final AtomicLong forwardedCount = new AtomicLong();
+	private final AtomicLong redirectedCount = new AtomicLong();
+	private final AtomicLong forwardFailureCount = new AtomicLong();
+
+
+	@Autowired
+	public RequestRouter(ListsWebProperties listsWebProperties) {
+		this.enabled = listsWebProperties.getRoutingEnabled();
+		this.self = listsWebProperties.getRoutingSelf();
+		this.redirect = "redirect".equalsIgnoreCase(listsWebProperties.getRoutingMode());
+		this.timeoutMillis = listsWebProperties.getRoutingTimeoutMillis();
+		this.downMillis = TimeUnit.SECONDS.toMillis(listsWebProperties.getRoutingDownSeconds());
+		this.ring = new ConsistentHashRing(StringUtils.commaDelimitedListToSet(listsWebProperties.getRoutingNodes().replace(" ", "")),
+			listsWebProperties.getRoutingVirtualNodes());
+
+		if (enabled) {
+			log.info("Routing requests to their owning nodes. Self: " + self + ". Nodes: " + ring.getNodes() + ". Mode: " + listsWebProperties.getRoutingMode());
+		}
+	}
+
+	/**
+	 * Replace the nodes. Only the keys of the nodes that were added or
+	 * removed move, and they start cold on their new node.
+	 */
+	public void setNodes(List<String> nodes) {
+		ring = new ConsistentHashRing(nodes, ring.getVirtualNodes());
+		log.info("Changed the routing nodes. Nodes: " + ring.getNodes());
+	}
+
+	/**
+	 * Returns the node that owns the key, skipping the nodes that are down.
+	 */
+	public String getOwner(String key) {
+		return ring.getNode(key, this::isAvailable);
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+		String key = getRoutingKey(request);
+
+		if (!enabled || key == null ||
+			request.getDispatcherType() == DispatcherType.ASYNC ||
+			request.getHeader(FORWARDED_BY_HEADER) != null) {
+			return true;
+		}
+
+		String owner = getOwner(key);
+		if (owner == null || owner.equals(self)) {
+			localCount.incrementAndGet();
+			return true;
+		}
+
+		if (redirect) {
+			redirectedCount.incrementAndGet();
+			response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+			response.setHeader("Location", getOwnerUrl(owner, request));
+			return false;
+		}
+
+		return !forward(owner, request, response);
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		stats.put("enabled", enabled);
+		stats.put("self", self);
+		stats.put("nodes", ring.getNodes());
+		stats.put("downNodes", getDownNodes());
+		stats.put("localCount", localCount.get());
+		stats.put("forwardedCount", forwardedCount.get());
+		stats.put("redirectedCount", redirectedCount.get());
+		stats.put("forwardFailureCount", forwardFailureCount.get());
+
+		return stats;
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	@SuppressWarnings("unchecked")
+	private static String getRoutingKey(HttpServletRequest request) {
+		Map<String, String> pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+		if (pathVariables == null) {
+			return null;
+		}
+		if (pathVariables.containsKey(LIST_ID)) {
+			return pathVariables.get(LIST_ID);
+		}
+		return pathVariables.get(USER_ID_OR_USERNAME);
+	}
+
+	private static String getOwnerUrl(String owner, HttpServletRequest request) {
+		String queryString = request.getQueryString();
+		return "http://" + owner + request.getRequestURI() + ((queryString != null) ? "?" + queryString : "");
+	}
+
+	/**
+	 * Proxies the request to the owner, and copies its response back.
+	 * Returns false (and marks the owner down) if a safe request could not
+	 * be sent to the owner, so it can be served here.
+	 */
+	private boolean forward(String owner, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		HttpURLConnection connection = null;
+		boolean sent = false;
+		int status = 0;
+
+		try {
+			connection = (HttpURLConnection) new URL(getOwnerUrl(owner, request)).openConnection();
+			connection.setRequestMethod(request.getMethod());
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setInstanceFollowRedirects(false);
+
+			for (String name : Collections.list(request.getHeaderNames())) {
+				if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+					for (String value : Collections.list(request.getHeaders(name))) {
+						connection.addRequestProperty(name, value);
+					}
+				}
+			}
+			connection.setRequestProperty(FORWARDED_BY_HEADER, self);
+
+			boolean hasBody = request.getContentLength() != 0 && !SAFE_METHODS.contains(request.getMethod());
+			connection.setDoOutput(hasBody);
+			connection.connect();
+
+			// Once the body starts to be read, the request cannot be served here.
+			sent = true;
+			if (hasBody) {
+				try (OutputStream outputStream = connection.getOutputStream()) {
+					StreamUtils.copy(request.getInputStream(), outputStream);
+				}
+			}
+
+			status = connection.getResponseCode();
+		}
+		catch (IOException e) {
+			forwardFailureCount.incrementAndGet();
+			downUntilByNode.put(owner, System.currentTimeMillis() + downMillis);
+
+			if (!sent && SAFE_METHODS.contains(request.getMethod())) {
+				log.warn("Could not forward the request to its owning node. Serving it here. Node: " + owner + ". URI: " + request.getRequestURI(), e);
+				return false;
+			}
+
+			log.warn("Could not forward the request to its owning node. Node: " + owner + ". URI: " + request.getRequestURI(), e);
+			response.sendError((e instanceof SocketTimeoutException) ? HttpServletResponse.SC_GATEWAY_TIMEOUT : HttpServletResponse.SC_BAD_GATEWAY,
+				"Could not forward the request to its owning node: " + owner);
+			return true;
+		}
+
+		forwardedCount.incrementAndGet();
+		response.setStatus(status);
+
+		for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+			if (header.getKey() != null && !HOP_BY_HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+				for (String value : header.getValue()) {
+					response.addHeader(header.getKey(), value);
+				}
+			}
+		}
+
+		InputStream inputStream = (status >= 400) ? connection.getErrorStream() : connection.getInputStream();
+		if (inputStream != null) {
+			try (InputStream body = inputStream) {
+				StreamUtils.copy(body, response.getOutputStream());
+			}
+		}
+
+		return true;
+	}
+
+	private boolean isAvailable(String node) {
+		Long downUntil = downUntilByNode.get(node);
+		if (downUntil == null) {
+			return true;
+		}
+		if (System.currentTimeMillis() >= downUntil) {
+			downUntilByNode.remove(node, downUntil);
+			return true;
+		}
+		return false;
+	}
+
+	private Set<String> getDownNodes() {
+		Set<String> downNodes = new HashSet<String>();
+		for (String node : downUntilByNode.keySet()) {
+			if (!isAvailable(node)) {
+				downNodes.add(node);
+			}
+		}
+		return downNodes;
+	}
+}
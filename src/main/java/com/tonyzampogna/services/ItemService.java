@@ -1,17 +1,40 @@
 package com.tonyzampogna.services;
 
 import com.datastax.driver.core.*;
+import com.datastax.driver.core.utils.UUIDs;
+import com.tonyzampogna.cache.BatchLoader;
+import com.tonyzampogna.cache.InvalidationBus;
+import com.tonyzampogna.cache.ListModelCache;
+import com.tonyzampogna.cache.ListResponseCache;
+import com.tonyzampogna.cache.ModelCacheRegistry;
+import com.tonyzampogna.cache.SingleFlight;
+import com.tonyzampogna.config.ListsDatabaseProperties;
 import com.tonyzampogna.domain.ItemModel;
+import com.tonyzampogna.domain.PageModel;
+import com.tonyzampogna.factory.CatalogStatement;
+import com.tonyzampogna.factory.ExecutionProfile;
 import com.tonyzampogna.factory.ListsDatabaseSessionFactory;
+import com.tonyzampogna.factory.StatementCatalog;
+import com.tonyzampogna.util.CursorUtils;
+import com.tonyzampogna.util.FutureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * This class contains the methods for operating on ItemModel.
@@ -20,16 +43,90 @@ import java.util.UUID;
 public class ItemService {
 	private static final Logger log = LoggerFactory.getLogger(ItemService.class);
 
-	// Prepared Statements
-	private static PreparedStatement PS_CREATE_ITEM = null;
-	private static PreparedStatement PS_GET_ITEM_BY_ITEMID = null;
-	private static PreparedStatement PS_GET_ITEMS_BY_LISTID = null;
-	private static PreparedStatement PS_UPDATE_ITEM_BY_ITEMID = null;
-	private static PreparedStatement PS_DELETE_ITEM_BY_ITEMID = null;
+	// Prepared Statements (prepared at startup by the StatementCatalog)
+	private static final CatalogStatement PS_CREATE_ITEM = new CatalogStatement(
+		"INSERT INTO items (item_id, list_id, item_name, create_user, create_date, update_user, update_date) " +
+		"VALUES (:itemId, :listId, :itemName, :createUser, :createDate, :updateUser, :updateDate)", true);
+
+	private static final CatalogStatement PS_CREATE_LIST_ITEM = new CatalogStatement(
+		"INSERT INTO list_items (list_id, item_id, item_name, create_user, create_date, update_user, update_date, list_version) " +
+		"VALUES (:listId, :itemId, :itemName, :createUser, :createDate, :updateUser, :updateDate, :listVersion)", true);
+
+	private static final CatalogStatement PS_GET_ITEMS_BY_ITEMIDS = new CatalogStatement(
+		"SELECT item_id, list_id, item_name, create_user, create_date, update_user, update_date " +
+		"FROM items WHERE item_id IN :itemIds", true);
+
+	private static final CatalogStatement PS_GET_ITEMS_BY_LISTID = new CatalogStatement(
+		"SELECT item_id, list_id, item_name, create_user, create_date, update_user, update_date " +
+		"FROM list_items WHERE list_id = :listId", true);
+
+	private static final CatalogStatement PS_UPDATE_ITEM_BY_ITEMID = new CatalogStatement(
+		"UPDATE items SET " +
+		"list_id = :listId, " +
+		"item_name = :itemName, " +
+		"update_user = :updateUser, " +
+		"update_date = :updateDate " +
+		"WHERE item_id = :itemId", true);
+
+	private static final CatalogStatement PS_UPDATE_LIST_ITEM = new CatalogStatement(
+		"UPDATE list_items SET " +
+		"item_name = :itemName, " +
+		"update_user = :updateUser, " +
+		"update_date = :updateDate, " +
+		"list_version = :listVersion " +
+		"WHERE list_id = :listId AND item_id = :itemId", true);
+
+	private static final CatalogStatement PS_DELETE_ITEM_BY_ITEMID = new CatalogStatement(
+		"DELETE FROM items WHERE item_id = :itemId", true);
+
+	private static final CatalogStatement PS_DELETE_LIST_ITEM = new CatalogStatement(
+		"DELETE FROM list_items WHERE list_id = :listId AND item_id = :itemId", true);
+
+	private static final CatalogStatement PS_UPDATE_LIST_VERSION = new CatalogStatement(
+		"UPDATE list_items SET list_version = :listVersion WHERE list_id = :listId", true);
 
 	@Autowired
 	private ListsDatabaseSessionFactory listsDatabaseSessionFactory;
 
+	@Autowired
+	private StatementCatalog statementCatalog;
+
+	@Autowired
+	private ListsDatabaseProperties listsDatabaseProperties;
+
+	@Autowired
+	private WritePipeline writePipeline;
+
+	@Autowired
+	private ListResponseCache listResponseCache;
+
+	@Autowired
+	private ListModelCache listModelCache;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private ModelCacheRegistry modelCacheRegistry;
+
+	@Autowired
+	private ListService listService;
+
+	// Loads in flight, and batched point reads
+	private SingleFlight<UUID, List<ItemModel>> itemLoads = null;
+	private BatchLoader<UUID, ItemModel> itemBatchLoader = null;
+
+
+	/**
+	 * Create the single-flight and batch loaders.
+	 */
+	@PostConstruct
+	public void createCaches() {
+		itemLoads = modelCacheRegistry.register(new SingleFlight<UUID, List<ItemModel>>("itemLoads"));
+		itemBatchLoader = modelCacheRegistry.register(new BatchLoader<UUID, ItemModel>("itemPointReads",
+			listsDatabaseProperties.getPointReadBatchWindowMicros(), listsDatabaseProperties.getPointReadBatchSize(), this::loadItemsByIdsAsync));
+	}
+
 
 	/////////////////////////////////////////////////
 	// Service Methods
@@ -39,18 +136,29 @@ public class ItemService {
 	 * Create
 	 */
 	public List<ItemModel> createItems(List<ItemModel> itemModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(createItemsAsync(itemModelList));
+	}
 
+	/**
+	 * Create (asynchronous)
+	 */
+	public CompletableFuture<List<ItemModel>> createItemsAsync(List<ItemModel> itemModelList) {
 		// For each ItemModel...
 		for (ItemModel itemModel : itemModelList) {
 			UUID itemId = itemModel.getItemId();
 
-			// Create a new ID, if necessary.
+			// Create a new ID, if necessary. The ID is time-based, so
+			// the items cluster in creation order within the list.
 			if (StringUtils.isEmpty(itemId)) {
-				itemId = UUID.randomUUID();
+				itemId = UUIDs.timeBased();
 				itemModel.setItemId(itemId);
 			}
 
+			// The list ID is the partition key for the item.
+			if (StringUtils.isEmpty(itemModel.getListId())) {
+				throw new RuntimeException("The list ID cannot be blank. Item ID: " + itemId);
+			}
+
 			// Generate a log buffer.
 			log.info("Creating item in the database. Item ID: " + itemId);
 
@@ -64,89 +172,139 @@ public class ItemService {
 		}
 
 		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getCreateItemsBoundStatements(itemModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
-		}
-
-		return itemModelList;
+		return executeWritesAsync(getCreateItemsBoundStatements(itemModelList), itemModelList);
 	}
 
 	/**
 	 * Read (by itemId)
 	 */
 	public ItemModel getItemById(UUID itemId) {
-		ItemModel itemModel = null;
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(getItemByIdAsync(itemId));
+	}
 
+	/**
+	 * Read (by itemId, asynchronous)
+	 *
+	 * Item reads that come in close together are sent as one
+	 * read of all of their item IDs (see the item batch loader).
+	 */
+	public CompletableFuture<ItemModel> getItemByIdAsync(UUID itemId) {
 		log.info("Reading item from the database (by itemId). Item ID: " + itemId);
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_ITEM_BY_ITEMID == null) {
-			PS_GET_ITEM_BY_ITEMID = session.prepare(
-				"SELECT item_id, list_id, item_name, create_user, create_date, update_user, update_date " +
-				"FROM items WHERE item_id = :itemId");
-		}
-
-		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_ITEM_BY_ITEMID.bind();
-		boundStatement.setUUID("itemId", itemId);
-		ResultSet resultSet = session.execute(boundStatement);
-
-		// Transform Results
-		Row row = resultSet.one();
-		if (row != null) {
-			itemModel = transformRowToItem(row);
-		}
+		return itemBatchLoader.load(itemId);
+	}
 
-		return itemModel;
+	/**
+	 * Stop sharing the read of the list's items in flight (after a
+	 * write to the list), so the next read starts a new one.
+	 */
+	public void forgetLoads(UUID listId) {
+		itemLoads.forget(listId);
 	}
 
 	/**
 	 * Read (by listId)
 	 */
 	public List<ItemModel> getItemsByListId(UUID listId) {
-		List<ItemModel> itemModelList = null;
+		return FutureUtils.getUninterruptibly(getItemsByListIdAsync(listId));
+	}
+
+	/**
+	 * Read (by listId, asynchronous)
+	 *
+	 * This reads the items from the list's partition in list_items.
+	 * Concurrent reads of the same list share one database read. A
+	 * write to the list stops the read in flight from being shared,
+	 * so a read that starts after the write never joins one from
+	 * before it.
+	 */
+	public CompletableFuture<List<ItemModel>> getItemsByListIdAsync(UUID listId) {
+		return itemLoads.get(listId, this::loadItemsByListIdAsync);
+	}
+
+	/**
+	 * Read (by listId, one page)
+	 */
+	public PageModel<ItemModel> getItemsByListId(UUID listId, int limit, String cursor) {
+		return FutureUtils.getUninterruptibly(getItemsByListIdAsync(listId, limit, cursor));
+	}
+
+	/**
+	 * Read (by listId, one page, asynchronous)
+	 *
+	 * Reads at most limit items, starting from the cursor (or from the
+	 * start of the list, if the cursor is null).
+	 */
+	public CompletableFuture<PageModel<ItemModel>> getItemsByListIdAsync(UUID listId, int limit, String cursor) {
 		Session session = listsDatabaseSessionFactory.getSession();
 
-		log.info("Reading items from the database for list. List ID: " + listId);
+		log.info("Reading a page of items from the database for list. List ID: " + listId + ". Limit: " + limit);
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_ITEMS_BY_LISTID == null) {
-			PS_GET_ITEMS_BY_LISTID = session.prepare(
-				"SELECT item_id, list_id, item_name, create_user, create_date, update_user, update_date " +
-				"FROM items WHERE list_id = :listId"
-			);
-		}
+		// Execute Database Transaction
+		BoundStatement boundStatement = getItemsByListIdBoundStatement(listId);
+		boundStatement.setFetchSize(limit);
+		CursorUtils.setCursor(boundStatement, cursor);
+
+		// Transform Results
+		return FutureUtils.transformPage(session.executeAsync(boundStatement), this::transformRowToItem);
+	}
+
+	/**
+	 * Read (by listId, streaming)
+	 *
+	 * Hands the items to the consumer one page at a time, as the pages
+	 * come back from Cassandra. This blocks until the last page is consumed.
+	 */
+	public void forEachItemPageByListId(UUID listId, Consumer<List<ItemModel>> consumer) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		log.info("Streaming items from the database for list. List ID: " + listId);
 
 		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_ITEMS_BY_LISTID.bind();
-		boundStatement.setUUID("listId", listId);
+		BoundStatement boundStatement = getItemsByListIdBoundStatement(listId);
 		boundStatement.setFetchSize(1000);
-		ResultSet resultSet = session.execute(boundStatement);
 
 		// Transform Results
-		for (Row row : resultSet) {
-			if (resultSet.getAvailableWithoutFetching() == 100 && !resultSet.isFullyFetched()) {
-				resultSet.fetchMoreResults();
-			}
+		FutureUtils.forEachPage(session.executeAsync(boundStatement), this::transformRowToItem, consumer);
+	}
 
-			if (row != null) {
-				ItemModel itemModel = transformRowToItem(row);
-				itemModelList.add(itemModel);
-			}
+	/**
+	 * Read (by many listIds)
+	 */
+	public Map<UUID, List<ItemModel>> getItemsByListIds(Collection<UUID> listIds) {
+		return FutureUtils.getUninterruptibly(getItemsByListIdsAsync(listIds));
+	}
+
+	/**
+	 * Read (by many listIds, asynchronous)
+	 *
+	 * The list partitions are queried concurrently, with at most
+	 * max-in-flight-queries requests outstanding at a time. The items
+	 * are returned grouped by list ID. Every list ID passed in has an
+	 * entry in the map, even if the list has no items.
+	 */
+	public CompletableFuture<Map<UUID, List<ItemModel>>> getItemsByListIdsAsync(Collection<UUID> listIds) {
+		if (listIds == null || listIds.isEmpty()) {
+			return CompletableFuture.completedFuture(new LinkedHashMap<UUID, List<ItemModel>>());
 		}
 
-		return itemModelList;
+		log.info("Reading items from the database for lists. Number of lists: " + listIds.size());
+
+		return FutureUtils.allBounded(listIds, listsDatabaseProperties.getMaxInFlightQueries(), this::getItemsByListIdAsync);
 	}
 
 	/**
 	 * Update
 	 */
 	public List<ItemModel> updateItems(List<ItemModel> itemModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(updateItemsAsync(itemModelList));
+	}
+
+	/**
+	 * Update (asynchronous)
+	 */
+	public CompletableFuture<List<ItemModel>> updateItemsAsync(List<ItemModel> itemModelList) {
+		List<UUID> itemIds = new ArrayList<UUID>();
 
 		// For each ItemModel...
 		for (ItemModel itemModel : itemModelList) {
@@ -160,24 +318,56 @@ public class ItemService {
 				StringUtils.isEmpty(itemModel.getUpdateDate())) {
 				throw new RuntimeException("The update user and timestamp cannot be blank. Item ID: " + itemId);
 			}
-		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getUpdateItemsBoundStatements(itemModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
+			itemIds.add(itemId);
 		}
 
-		return itemModelList;
+		// The current items tell us which list_items row each item is in
+		// now, so it can be moved if the list changed.
+		return getCurrentItemsByIdsAsync(itemIds)
+			.thenCompose(currentItemModelsByItemId -> {
+				Set<UUID> previousListIds = new LinkedHashSet<UUID>();
+
+				for (ItemModel itemModel : itemModelList) {
+					ItemModel currentItemModel = currentItemModelsByItemId.get(itemModel.getItemId());
+
+					// Keep the item in its list, if the caller did not send the list ID.
+					if (StringUtils.isEmpty(itemModel.getListId())) {
+						if (currentItemModel == null) {
+							throw new RuntimeException("The list ID cannot be blank. Item ID: " + itemModel.getItemId());
+						}
+						itemModel.setListId(currentItemModel.getListId());
+					}
+
+					// A moved item gets a full row in its new list, so it
+					// keeps the create user and timestamp it already has.
+					if (isMoved(itemModel, currentItemModel)) {
+						if (StringUtils.isEmpty(itemModel.getCreateUser())) {
+							itemModel.setCreateUser(currentItemModel.getCreateUser());
+						}
+						if (StringUtils.isEmpty(itemModel.getCreateDate())) {
+							itemModel.setCreateDate(currentItemModel.getCreateDate());
+						}
+						previousListIds.add(currentItemModel.getListId());
+					}
+				}
+
+				return executeWritesAsync(getUpdateItemsBoundStatements(itemModelList, currentItemModelsByItemId), itemModelList, previousListIds);
+			});
 	}
 
 	/**
 	 * Delete
 	 */
 	public List<ItemModel> deleteItems(List<ItemModel> itemModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(deleteItemsAsync(itemModelList));
+	}
+
+	/**
+	 * Delete (asynchronous)
+	 */
+	public CompletableFuture<List<ItemModel>> deleteItemsAsync(List<ItemModel> itemModelList) {
+		List<UUID> itemIds = new ArrayList<UUID>();
 
 		// For each ItemModel...
 		for (ItemModel itemModel : itemModelList) {
@@ -185,17 +375,26 @@ public class ItemService {
 
 			// Generate a log buffer.
 			log.info("Deleting item from the database. Item ID: " + itemId);
-		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getDeleteItemsBoundStatements(itemModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
+			// The list ID is needed to find the item's row in list_items.
+			// Look it up if the caller did not send it.
+			if (StringUtils.isEmpty(itemModel.getListId())) {
+				itemIds.add(itemId);
+			}
 		}
 
-		return itemModelList;
+		// Execute Database Transaction
+		return getCurrentItemsByIdsAsync(itemIds)
+			.thenCompose(currentItemModelsByItemId -> {
+				for (ItemModel itemModel : itemModelList) {
+					ItemModel currentItemModel = currentItemModelsByItemId.get(itemModel.getItemId());
+					if (StringUtils.isEmpty(itemModel.getListId()) && currentItemModel != null) {
+						itemModel.setListId(currentItemModel.getListId());
+					}
+				}
+
+				return executeWritesAsync(getDeleteItemsBoundStatements(itemModelList), itemModelList);
+			});
 	}
 
 
@@ -205,23 +404,22 @@ public class ItemService {
 
 	/**
 	 * Return the bound statements to create a list of items.
+	 *
+	 * Each item is written to its list's partition in list_items,
+	 * and to the items table for lookups by item ID.
 	 */
 	public List<BoundStatement> getCreateItemsBoundStatements(List<ItemModel> itemModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_CREATE_ITEM == null) {
-			PS_CREATE_ITEM = session.prepare(
-				"INSERT INTO items (item_id, list_id, item_name, create_user, create_date, update_user, update_date) " +
-				"VALUES (:itemId, :listId, :itemName, :createUser, :createDate, :updateUser, :updateDate)");
-		}
 
 		if (itemModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (ItemModel itemModel : itemModelList) {
-				BoundStatement boundStatement = PS_CREATE_ITEM.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_CREATE_LIST_ITEM, ExecutionProfile.SAFE_WRITE);
+				updateBoundStatement(boundStatement, itemModel);
+				boundStatements.add(boundStatement);
+
+				boundStatement = statementCatalog.bind(PS_CREATE_ITEM, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, itemModel);
 				boundStatements.add(boundStatement);
 			}
@@ -232,30 +430,45 @@ public class ItemService {
 
 	/**
 	 * Return the bound statements to update a list of items.
+	 *
+	 * The current items are the ones in the database (by item ID). An
+	 * item whose list changed is deleted from its old list's partition
+	 * in list_items and created in the new one, and the version of the
+	 * old list is changed too.
 	 */
-	public List<BoundStatement> getUpdateItemsBoundStatements(List<ItemModel> itemModelList) {
+	public List<BoundStatement> getUpdateItemsBoundStatements(List<ItemModel> itemModelList, Map<UUID, ItemModel> currentItemModelsByItemId) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_UPDATE_ITEM_BY_ITEMID == null) {
-			PS_UPDATE_ITEM_BY_ITEMID = session.prepare(
-				"UPDATE items SET " +
-				"item_id = :itemId, " +
-				"list_id = :listId, " +
-				"item_name = :listName, " +
-				"create_user = :createUser, " +
-				"create_date = :createDate, " +
-				"update_user = :updateUser, " +
-				"update_date = :updateDate " +
-				"WHERE item_id = :itemId");
-		}
 
 		if (itemModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
+			Map<UUID, ItemModel> movedItemModelsByListId = new LinkedHashMap<UUID, ItemModel>();
 
 			for (ItemModel itemModel : itemModelList) {
-				BoundStatement boundStatement = PS_UPDATE_ITEM_BY_ITEMID.bind();
+				ItemModel currentItemModel = currentItemModelsByItemId.get(itemModel.getItemId());
+				BoundStatement boundStatement = null;
+
+				if (isMoved(itemModel, currentItemModel)) {
+					boundStatement = statementCatalog.bind(PS_DELETE_LIST_ITEM, ExecutionProfile.SAFE_WRITE);
+					updateBoundStatement(boundStatement, currentItemModel);
+					boundStatements.add(boundStatement);
+
+					movedItemModelsByListId.put(currentItemModel.getListId(), currentItemModel);
+
+					boundStatement = statementCatalog.bind(PS_CREATE_LIST_ITEM, ExecutionProfile.SAFE_WRITE);
+				}
+				else {
+					boundStatement = statementCatalog.bind(PS_UPDATE_LIST_ITEM, ExecutionProfile.SAFE_WRITE);
+				}
+				updateBoundStatement(boundStatement, itemModel);
+				boundStatements.add(boundStatement);
+
+				boundStatement = statementCatalog.bind(PS_UPDATE_ITEM_BY_ITEMID, ExecutionProfile.SAFE_WRITE);
+				updateBoundStatement(boundStatement, itemModel);
+				boundStatements.add(boundStatement);
+			}
+
+			for (ItemModel itemModel : movedItemModelsByListId.values()) {
+				BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_LIST_VERSION, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, itemModel);
 				boundStatements.add(boundStatement);
 			}
@@ -265,23 +478,52 @@ public class ItemService {
 	}
 
 	/**
-	 * Return the bound statements to delete a list of items.
+	 * Return the bound statements to delete a list of items. The
+	 * version of each list the items are deleted from is changed too.
 	 */
 	public List<BoundStatement> getDeleteItemsBoundStatements(List<ItemModel> itemModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_DELETE_ITEM_BY_ITEMID == null) {
-			PS_DELETE_ITEM_BY_ITEMID = session.prepare(
-				"DELETE FROM items WHERE item_id = :itemId");
+		if (itemModelList != null) {
+			boundStatements = new ArrayList<BoundStatement>();
+			Map<UUID, ItemModel> itemModelsByListId = new LinkedHashMap<UUID, ItemModel>();
+
+			for (ItemModel itemModel : itemModelList) {
+				// Items that no longer exist have no list ID.
+				if (itemModel.getListId() != null) {
+					BoundStatement boundStatement = statementCatalog.bind(PS_DELETE_LIST_ITEM, ExecutionProfile.SAFE_WRITE);
+					updateBoundStatement(boundStatement, itemModel);
+					boundStatements.add(boundStatement);
+
+					itemModelsByListId.put(itemModel.getListId(), itemModel);
+				}
+			}
+
+			for (ItemModel itemModel : itemModelsByListId.values()) {
+				BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_LIST_VERSION, ExecutionProfile.SAFE_WRITE);
+				updateBoundStatement(boundStatement, itemModel);
+				boundStatements.add(boundStatement);
+			}
+
+			boundStatements.addAll(getDeleteItemLookupsBoundStatements(itemModelList));
 		}
 
+		return boundStatements;
+	}
+
+	/**
+	 * Return the bound statements to delete the items table rows
+	 * (the lookups by item ID) for a list of items. Used when the
+	 * whole list partition is being deleted.
+	 */
+	public List<BoundStatement> getDeleteItemLookupsBoundStatements(List<ItemModel> itemModelList) {
+		List<BoundStatement> boundStatements = null;
+
 		if (itemModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (ItemModel itemModel : itemModelList) {
-				BoundStatement boundStatement = PS_DELETE_ITEM_BY_ITEMID.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_DELETE_ITEM_BY_ITEMID, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, itemModel);
 				boundStatements.add(boundStatement);
 			}
@@ -295,18 +537,147 @@ public class ItemService {
 	// Helper Methods
 	/////////////////////////////////////////////////
 
+	/**
+	 * Reads the items from the items table, by item ID. This is the
+	 * batch function for the item batch loader.
+	 */
+	private CompletableFuture<Map<UUID, ItemModel>> loadItemsByIdsAsync(List<UUID> itemIds) {
+		return loadItemsByIdsAsync(itemIds, ExecutionProfile.FAST_READ);
+	}
+
+	/**
+	 * Reads the items that a write is about to change, by item ID. The
+	 * write uses them to pick the list_items rows and list versions it
+	 * changes, so they are read at SAFE_READ (not through the batch loader).
+	 */
+	private CompletableFuture<Map<UUID, ItemModel>> getCurrentItemsByIdsAsync(List<UUID> itemIds) {
+		if (itemIds.isEmpty()) {
+			return CompletableFuture.completedFuture(new LinkedHashMap<UUID, ItemModel>());
+		}
+
+		return loadItemsByIdsAsync(itemIds, ExecutionProfile.SAFE_READ);
+	}
+
+	private CompletableFuture<Map<UUID, ItemModel>> loadItemsByIdsAsync(List<UUID> itemIds, ExecutionProfile profile) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		// Execute Database Transaction
+		BoundStatement boundStatement = statementCatalog.bind(PS_GET_ITEMS_BY_ITEMIDS, profile);
+		boundStatement.setList("itemIds", itemIds, UUID.class);
+
+		// Transform Results
+		return FutureUtils.transformAllRows(session.executeAsync(boundStatement), this::transformRowToItem)
+			.thenApply(itemModelList -> {
+				Map<UUID, ItemModel> itemModelsByItemId = new LinkedHashMap<UUID, ItemModel>();
+				for (ItemModel itemModel : itemModelList) {
+					itemModelsByItemId.put(itemModel.getItemId(), itemModel);
+				}
+				return itemModelsByItemId;
+			});
+	}
+
+	/**
+	 * Reads the items for the list from the database.
+	 */
+	private CompletableFuture<List<ItemModel>> loadItemsByListIdAsync(UUID listId) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		log.info("Reading items from the database for list. List ID: " + listId);
+
+		// Execute Database Transaction
+		BoundStatement boundStatement = getItemsByListIdBoundStatement(listId);
+		boundStatement.setFetchSize(1000);
+
+		// Transform Results
+		return FutureUtils.transformAllRows(session.executeAsync(boundStatement), this::transformRowToItem);
+	}
+
+	private BoundStatement getItemsByListIdBoundStatement(UUID listId) {
+		BoundStatement boundStatement = statementCatalog.bind(PS_GET_ITEMS_BY_LISTID, ExecutionProfile.FAST_READ);
+		boundStatement.setUUID("listId", listId);
+
+		return boundStatement;
+	}
+
+	/**
+	 * Writes the statements, then invalidates the cached lists and
+	 * responses for the lists the items are in (on every instance).
+	 */
+	private CompletableFuture<List<ItemModel>> executeWritesAsync(List<BoundStatement> boundStatements, List<ItemModel> itemModelList) {
+		return executeWritesAsync(boundStatements, itemModelList, Collections.<UUID>emptySet());
+	}
+
+	/**
+	 * Same as above, but also invalidates the lists the items were
+	 * moved out of.
+	 */
+	private CompletableFuture<List<ItemModel>> executeWritesAsync(List<BoundStatement> boundStatements, List<ItemModel> itemModelList, Set<UUID> previousListIds) {
+		Set<UUID> listIds = new LinkedHashSet<UUID>(previousListIds);
+		for (ItemModel itemModel : itemModelList) {
+			listIds.add(itemModel.getListId());
+		}
+
+		return writePipeline.executeAsync(boundStatements)
+			.whenComplete((written, t) -> {
+				for (UUID listId : listIds) {
+					forgetLoads(listId);
+					listService.forgetLoads(listId);
+					listModelCache.invalidate(listId);
+					listResponseCache.invalidate(listId);
+					invalidationBus.publish(InvalidationBus.LIST_TOPIC, listId);
+				}
+			})
+			.thenApply(written -> itemModelList);
+	}
+
+	/**
+	 * Returns true if the item is in the database, and the update
+	 * puts it in a different list.
+	 */
+	private static boolean isMoved(ItemModel itemModel, ItemModel currentItemModel) {
+		return currentItemModel != null && !currentItemModel.getListId().equals(itemModel.getListId());
+	}
+
+	/**
+	 * Sets the ItemModel values on the bound statement. Only the
+	 * values the statement uses are set.
+	 */
 	private void updateBoundStatement(BoundStatement boundStatement, ItemModel itemModel) {
-		boundStatement.setUUID("itemId", itemModel.getItemId());
-		boundStatement.setUUID("listId", itemModel.getListId());
-		boundStatement.setString("itemName", itemModel.getItemName());
-		boundStatement.setUUID("createUser", itemModel.getCreateUser());
-		boundStatement.setTimestamp("createDate", itemModel.getCreateDate());
-		boundStatement.setUUID("updateUser", itemModel.getUpdateUser());
-		boundStatement.setTimestamp("updateDate", itemModel.getUpdateDate());
+		ColumnDefinitions variables = boundStatement.preparedStatement().getVariables();
+
+		if (variables.contains("itemId")) {
+			boundStatement.setUUID("itemId", itemModel.getItemId());
+		}
+		if (variables.contains("listId")) {
+			boundStatement.setUUID("listId", itemModel.getListId());
+		}
+		if (variables.contains("itemName")) {
+			boundStatement.setString("itemName", itemModel.getItemName());
+		}
+		if (variables.contains("createUser")) {
+			boundStatement.setUUID("createUser", itemModel.getCreateUser());
+		}
+		if (variables.contains("createDate")) {
+			boundStatement.setTimestamp("createDate", itemModel.getCreateDate());
+		}
+		if (variables.contains("updateUser")) {
+			boundStatement.setUUID("updateUser", itemModel.getUpdateUser());
+		}
+		if (variables.contains("updateDate")) {
+			boundStatement.setTimestamp("updateDate", itemModel.getUpdateDate());
+		}
+		if (variables.contains("listVersion")) {
+			boundStatement.setUUID("listVersion", UUIDs.timeBased());
+		}
 	}
 
-	private ItemModel transformRowToItem(Row row) {
-		if (row == null) {
+	/**
+	 * Transforms an items or list_items row into an ItemModel. In
+	 * list_items, the row for a list with no items has a null item_id,
+	 * so null is returned for it.
+	 */
+	ItemModel transformRowToItem(Row row) {
+		if (row == null || row.isNull("item_id")) {
 			return null;
 		}
 
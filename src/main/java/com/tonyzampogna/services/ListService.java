@@ -1,19 +1,40 @@
 package com.tonyzampogna.services;
 
 import com.datastax.driver.core.*;
+import com.datastax.driver.core.utils.UUIDs;
+import com.tonyzampogna.cache.CachedModel;
+import com.tonyzampogna.cache.InvalidationBus;
+import com.tonyzampogna.cache.ListModelCache;
+import com.tonyzampogna.cache.ListResponseCache;
+import com.tonyzampogna.cache.ModelCacheRegistry;
+import com.tonyzampogna.cache.SingleFlight;
+import com.tonyzampogna.config.ListsDatabaseProperties;
 import com.tonyzampogna.domain.ItemModel;
 import com.tonyzampogna.domain.ListModel;
+import com.tonyzampogna.domain.ListProjection;
+import com.tonyzampogna.domain.PageModel;
 import com.tonyzampogna.domain.UserModel;
+import com.tonyzampogna.factory.CatalogStatement;
+import com.tonyzampogna.factory.ExecutionProfile;
 import com.tonyzampogna.factory.ListsDatabaseSessionFactory;
+import com.tonyzampogna.factory.StatementCatalog;
+import com.tonyzampogna.util.CursorUtils;
+import com.tonyzampogna.util.FutureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * This class contains the methods for operating on ListModels.
@@ -22,21 +43,111 @@ import java.util.UUID;
 public class ListService {
 	private static final Logger log = LoggerFactory.getLogger(ListService.class);
 
-	// Prepared Statements
-	private static PreparedStatement PS_CREATE_LIST = null;
-	private static PreparedStatement PS_CREATE_USER_LIST = null;
-	private static PreparedStatement PS_GET_LIST_BY_LISTID = null;
-	private static PreparedStatement PS_GET_LISTS_BY_USERID = null;
-	private static PreparedStatement PS_GET_LISTS_BY_USERNAME = null;
-	private static PreparedStatement PS_UPDATE_LIST_BY_LISTID = null;
-	private static PreparedStatement PS_DELETE_LIST_BY_LISTID = null;
+	// Prepared Statements (prepared at startup by the StatementCatalog)
+	private static final CatalogStatement PS_CREATE_LIST = new CatalogStatement(
+		"INSERT INTO list_items (list_id, list_name, item_sort_order, list_create_user, list_create_date, list_update_user, list_update_date, list_version) " +
+		"VALUES (:listId, :listName, :item_sort_order, :createUser, :createDate, :updateUser, :updateDate, :listVersion)", true);
+
+	private static final CatalogStatement PS_CREATE_LIST_BY_USER = new CatalogStatement(
+		"INSERT INTO lists_by_user (user_id, list_id, list_name, item_sort_order, list_create_user, list_create_date, list_update_user, list_update_date) " +
+		"VALUES (:userId, :listId, :listName, :item_sort_order, :createUser, :createDate, :updateUser, :updateDate)", true);
+
+	private static final CatalogStatement PS_GET_LIST_OWNER_BY_LISTID = new CatalogStatement(
+		"SELECT list_user_id FROM list_items WHERE list_id = :listId LIMIT 1", true);
+
+	private static final CatalogStatement PS_UPDATE_LIST_BY_LISTID = new CatalogStatement(
+		"UPDATE list_items SET " +
+		"list_name = :listName, " +
+		"item_sort_order = :item_sort_order, " +
+		"list_update_user = :updateUser, " +
+		"list_update_date = :updateDate, " +
+		"list_version = :listVersion " +
+		"WHERE list_id = :listId", true);
+
+	private static final CatalogStatement PS_UPDATE_LIST_OWNER_BY_LISTID = new CatalogStatement(
+		"UPDATE list_items SET list_user_id = :userId WHERE list_id = :listId", true);
+
+	private static final CatalogStatement PS_UPDATE_LIST_BY_USER = new CatalogStatement(
+		"UPDATE lists_by_user SET " +
+		"list_name = :listName, " +
+		"item_sort_order = :item_sort_order, " +
+		"list_update_user = :updateUser, " +
+		"list_update_date = :updateDate " +
+		"WHERE user_id = :userId AND list_id = :listId", true);
+
+	private static final CatalogStatement PS_DELETE_LIST_BY_LISTID = new CatalogStatement(
+		"DELETE FROM list_items WHERE list_id = :listId", true);
+
+	private static final CatalogStatement PS_DELETE_LIST_BY_USER = new CatalogStatement(
+		"DELETE FROM lists_by_user WHERE user_id = :userId AND list_id = :listId", true);
+
+	// Prepared Statements for the projected reads (by query)
+
+	// The static list columns for each ListModel field (the list_id is always read)
+	private static final Map<String, String> LIST_COLUMNS_BY_FIELD = new LinkedHashMap<String, String>();
+	static {
+		LIST_COLUMNS_BY_FIELD.put("listName", "list_name");
+		LIST_COLUMNS_BY_FIELD.put("itemSortOrder", "item_sort_order");
+		LIST_COLUMNS_BY_FIELD.put("createUser", "list_create_user");
+		LIST_COLUMNS_BY_FIELD.put("createDate", "list_create_date");
+		LIST_COLUMNS_BY_FIELD.put("updateUser", "list_update_user");
+		LIST_COLUMNS_BY_FIELD.put("updateDate", "list_update_date");
+		LIST_COLUMNS_BY_FIELD.put("version", "list_version");
+	}
+
+	// The list columns that are only in list_items (not in lists_by_user)
+	private static final List<String> LIST_ITEMS_ONLY_COLUMNS = Arrays.asList("list_version");
 
 	@Autowired
 	private ListsDatabaseSessionFactory listsDatabaseSessionFactory;
 
+	@Autowired
+	private StatementCatalog statementCatalog;
+
+	@Autowired
+	private ListsDatabaseProperties listsDatabaseProperties;
+
+	@Autowired
+	private WritePipeline writePipeline;
+
+	@Autowired
+	private ListResponseCache listResponseCache;
+
+	@Autowired
+	private ListModelCache listModelCache;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private ModelCacheRegistry modelCacheRegistry;
+
 	@Autowired
 	private ItemService itemService;
 
+	@Autowired
+	private UserService userService;
+
+	// Loads in flight
+	private SingleFlight<List<Object>, ListModel> listLoads = null;
+
+
+	/**
+	 * Create the single-flight loader. The list caches drop the
+	 * lists that other instances write to.
+	 */
+	@PostConstruct
+	public void createCaches() {
+		listLoads = modelCacheRegistry.register(new SingleFlight<List<Object>, ListModel>("listLoads"));
+
+		invalidationBus.subscribe(InvalidationBus.LIST_TOPIC, listId -> {
+			forgetLoads(UUID.fromString(listId));
+			itemService.forgetLoads(UUID.fromString(listId));
+			listModelCache.invalidate(UUID.fromString(listId));
+			listResponseCache.invalidate(UUID.fromString(listId));
+		});
+	}
+
 
 	/////////////////////////////////////////////////
 	// Service Methods
@@ -46,8 +157,13 @@ public class ListService {
 	 * Create
 	 */
 	public List<ListModel> createLists(List<ListModel> listModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(createListsAsync(listModelList));
+	}
 
+	/**
+	 * Create (asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> createListsAsync(List<ListModel> listModelList) {
 		// For each ListModel...
 		for (ListModel listModel : listModelList) {
 			UUID listId = listModel.getListId();
@@ -71,22 +187,21 @@ public class ListService {
 		}
 
 		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getCreateListsBoundStatements(listModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
-		}
-
-		return listModelList;
+		return executeWritesAsync(getCreateListsBoundStatements(listModelList), listModelList);
 	}
 
 	/**
 	 * Create (for User)
 	 */
 	public List<ListModel> createListsForUser(UserModel userModel, List<ListModel> listModelList) {
+		return FutureUtils.getUninterruptibly(createListsForUserAsync(userModel, listModelList));
+	}
+
+	/**
+	 * Create (for User, asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> createListsForUserAsync(UserModel userModel, List<ListModel> listModelList) {
 		UUID userId = userModel.getUserId();
-		Session session = listsDatabaseSessionFactory.getSession();
 
 		// For each ListModel...
 		for (ListModel listModel : listModelList) {
@@ -110,149 +225,263 @@ public class ListService {
 			}
 		}
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_CREATE_USER_LIST == null) {
-			PS_CREATE_USER_LIST = session.prepare(
-				"INSERT INTO user_lists (user_id, list_id) VALUES (:userId, :listId)");
-		}
-
 		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
 		List<BoundStatement> boundStatements = new ArrayList<BoundStatement>();
-		// Create user lists bound statements.
+		// Create lists bound statements.
+		boundStatements.addAll(getCreateListsBoundStatements(listModelList));
+		// Create the owner and lists_by_user bound statements.
 		if (listModelList != null) {
 			for (ListModel listModel : listModelList) {
-				BoundStatement boundStatement = PS_CREATE_USER_LIST.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_LIST_OWNER_BY_LISTID, ExecutionProfile.SAFE_WRITE);
 				boundStatement.setUUID("userId", userId);
 				boundStatement.setUUID("listId", listModel.getListId());
 				boundStatements.add(boundStatement);
+
+				boundStatement = statementCatalog.bind(PS_CREATE_LIST_BY_USER, ExecutionProfile.SAFE_WRITE);
+				updateBoundStatement(boundStatement, listModel);
+				boundStatement.setUUID("userId", userId);
+				boundStatements.add(boundStatement);
 			}
 		}
-		// Create lists bound statements.
-		List<BoundStatement> listsBoundStatements = getCreateListsBoundStatements(listModelList);
-		batchStatement.addAll(listsBoundStatements);
-		session.execute(batchStatement);
 
-		return listModelList;
+		return executeWritesAsync(boundStatements, listModelList);
+	}
+
+	/**
+	 * Stop sharing the reads of the list in flight (for every projection,
+	 * after a write to the list), so the next read starts a new one.
+	 */
+	public void forgetLoads(UUID listId) {
+		listLoads.forgetIf(loadKey -> listId.equals(loadKey.get(0)));
 	}
 
 	/**
 	 * Read (by listId)
 	 */
 	public ListModel getListById(UUID listId) {
-		ListModel listModel = null;
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(getListByIdAsync(listId));
+	}
 
-		log.info("Reading list from the database (by listId). List ID: " + listId);
+	/**
+	 * Read (by listId, asynchronous)
+	 *
+	 * The full list is read through the list cache.
+	 */
+	public CompletableFuture<ListModel> getListByIdAsync(UUID listId) {
+		return getCachedListByIdAsync(listId).thenApply(CachedModel::getModel);
+	}
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_LIST_BY_LISTID == null) {
-			PS_GET_LIST_BY_LISTID = session.prepare(
-				"SELECT list_id, list_name, item_sort_order, create_user, create_date, update_user, update_date " +
-				"FROM lists WHERE list_id = :listId");
-		}
+	/**
+	 * Read (by listId, asynchronous, with the staleness)
+	 *
+	 * The same as getListByIdAsync, but returns how stale the cached
+	 * list is. A stale list is refreshed in the background, and is
+	 * still returned if the refresh fails.
+	 */
+	public CompletableFuture<CachedModel<ListModel>> getCachedListByIdAsync(UUID listId) {
+		return listModelCache.get(listId, id -> getListByIdAsync(id, ListProjection.all()));
+	}
 
-		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_LIST_BY_LISTID.bind();
-		boundStatement.setUUID("listId", listId);
-		ResultSet resultSet = session.execute(boundStatement);
+	/**
+	 * Read (by listId, projected)
+	 */
+	public ListModel getListById(UUID listId, ListProjection listProjection) {
+		return FutureUtils.getUninterruptibly(getListByIdAsync(listId, listProjection));
+	}
 
-		// Transform Results
-		Row row = resultSet.one();
-		if (row != null) {
-			listModel = transformRowToList(row);
-		}
+	/**
+	 * Read (by listId, projected, asynchronous)
+	 *
+	 * The list and its items are in one list_items partition, so this
+	 * is a single-partition read. The list fields are static columns,
+	 * and are the same on every row. If the items are not included,
+	 * only the first row (the static columns) is read.
+	 *
+	 * Concurrent reads of the same list (and projection) share one
+	 * database read. A write to the list stops the reads in flight from
+	 * being shared, so a read that starts after the write never joins
+	 * one from before it.
+	 */
+	public CompletableFuture<ListModel> getListByIdAsync(UUID listId, ListProjection listProjection) {
+		List<Object> loadKey = Arrays.<Object>asList(listId, listProjection.getFields(), listProjection.includesItems());
 
-		return listModel;
+		return listLoads.get(loadKey, key -> loadListByIdAsync(listId, listProjection));
 	}
 
 	/**
 	 * Read (by userId)
 	 */
 	public List<ListModel> getListsByUserId(UUID userId) {
-		List<ListModel> listModelList = null;
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(getListsByUserIdAsync(userId));
+	}
 
-		log.info("Reading lists from the database for user. User ID: " + userId);
+	/**
+	 * Read (by userId, asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> getListsByUserIdAsync(UUID userId) {
+		return getListsByUserIdAsync(userId, ListProjection.all());
+	}
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_LISTS_BY_USERID == null) {
-			PS_GET_LISTS_BY_USERID = session.prepare(
-				"SELECT l.list_id, l.list_name, l.item_sort_order, l.create_user, l.create_date, l.update_user, l.update_date " +
-				"FROM lists l, user_lists ul " +
-				"WHERE ul.user_id = :userId " +
-				"AND l.list_id == ul.list_id"
-			);
-		}
+	/**
+	 * Read (by userId, projected)
+	 */
+	public List<ListModel> getListsByUserId(UUID userId, ListProjection listProjection) {
+		return FutureUtils.getUninterruptibly(getListsByUserIdAsync(userId, listProjection));
+	}
+
+	/**
+	 * Read (by userId, projected, asynchronous)
+	 *
+	 * Reads the list summaries from the user's lists_by_user partition,
+	 * then loads the items for all of the lists in one bulk read (if the
+	 * items are included).
+	 */
+	public CompletableFuture<List<ListModel>> getListsByUserIdAsync(UUID userId, ListProjection listProjection) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		log.info("Reading lists from the database for user. User ID: " + userId + ". Fields: " + listProjection.getFields());
 
 		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_LISTS_BY_USERID.bind();
-		boundStatement.setUUID("userId", userId);
+		BoundStatement boundStatement = getListsByUserIdBoundStatement(userId, listProjection);
 		boundStatement.setFetchSize(1000);
-		ResultSet resultSet = session.execute(boundStatement);
 
-		// Transform Results
-		for (Row row : resultSet) {
-			if (resultSet.getAvailableWithoutFetching() == 100 && !resultSet.isFullyFetched()) {
-				resultSet.fetchMoreResults();
-			}
+		// Transform Results, then get the ItemModels for every list at once.
+		return FutureUtils.transformAllRows(session.executeAsync(boundStatement), this::transformRowToList)
+			.thenCompose(listModelList -> loadProjectedItemModelsAsync(listModelList, listProjection));
+	}
 
-			if (row != null) {
-				ListModel listModel = transformRowToList(row);
-				listModelList.add(listModel);
-			}
-		}
+	/**
+	 * Read (by userId, one page)
+	 */
+	public PageModel<ListModel> getListsByUserId(UUID userId, ListProjection listProjection, int limit, String cursor) {
+		return FutureUtils.getUninterruptibly(getListsByUserIdAsync(userId, listProjection, limit, cursor));
+	}
+
+	/**
+	 * Read (by userId, one page, asynchronous)
+	 *
+	 * Reads at most limit lists, starting from the cursor (or from the
+	 * first list, if the cursor is null). Items are only loaded for the
+	 * lists on the page.
+	 */
+	public CompletableFuture<PageModel<ListModel>> getListsByUserIdAsync(UUID userId, ListProjection listProjection, int limit, String cursor) {
+		Session session = listsDatabaseSessionFactory.getSession();
 
-		return listModelList;
+		log.info("Reading a page of lists from the database for user. User ID: " + userId + ". Limit: " + limit);
+
+		// Execute Database Transaction
+		BoundStatement boundStatement = getListsByUserIdBoundStatement(userId, listProjection);
+		boundStatement.setFetchSize(limit);
+		CursorUtils.setCursor(boundStatement, cursor);
+
+		// Transform Results, then get the ItemModels for the lists on the page.
+		return FutureUtils.transformPage(session.executeAsync(boundStatement), this::transformRowToList)
+			.thenCompose(pageModel -> loadProjectedItemModelsAsync(pageModel.getModels(), listProjection)
+				.thenApply(listModelList -> pageModel));
+	}
+
+	/**
+	 * Read (by userId, streaming)
+	 *
+	 * Hands the lists to the consumer one page at a time. The items are
+	 * loaded for each page of lists before it is handed over. This blocks
+	 * until the last page is consumed.
+	 */
+	public void forEachListPageByUserId(UUID userId, ListProjection listProjection, Consumer<List<ListModel>> consumer) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		log.info("Streaming lists from the database for user. User ID: " + userId);
+
+		// Execute Database Transaction
+		BoundStatement boundStatement = getListsByUserIdBoundStatement(userId, listProjection);
+		boundStatement.setFetchSize(100);
+
+		// Transform Results, and get the ItemModels for each page of lists.
+		FutureUtils.forEachPage(session.executeAsync(boundStatement), this::transformRowToList,
+			listModelList -> consumer.accept(FutureUtils.getUninterruptibly(loadProjectedItemModelsAsync(listModelList, listProjection))));
 	}
 
 	/**
 	 * Read (by username)
 	 */
 	public List<ListModel> getListsByUsername(String username) {
-		List<ListModel> listModelList = null;
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(getListsByUsernameAsync(username));
+	}
 
-		log.info("Reading lists from the database for user. Username: " + username);
+	/**
+	 * Read (by username, asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> getListsByUsernameAsync(String username) {
+		return getListsByUsernameAsync(username, ListProjection.all());
+	}
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_LISTS_BY_USERNAME == null) {
-			PS_GET_LISTS_BY_USERNAME = session.prepare(
-				"SELECT list_id, list_name, item_sort_order, create_user, create_date, update_user, update_date " +
-				"FROM users, lists, user_lists " +
-				"WHERE users.username = :username " +
-				"AND users.user_id == user_lists.user_id " +
-				"AND lists.list_id == user_lists.list_id"
-			);
-		}
+	/**
+	 * Read (by username, projected)
+	 */
+	public List<ListModel> getListsByUsername(String username, ListProjection listProjection) {
+		return FutureUtils.getUninterruptibly(getListsByUsernameAsync(username, listProjection));
+	}
 
-		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_LISTS_BY_USERNAME.bind();
-		boundStatement.setString("username", username);
-		boundStatement.setFetchSize(1000);
-		ResultSet resultSet = session.execute(boundStatement);
+	/**
+	 * Read (by username, projected, asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> getListsByUsernameAsync(String username, ListProjection listProjection) {
+		log.info("Reading lists from the database for user. Username: " + username);
 
-		// Transform Results
-		for (Row row : resultSet) {
-			if (resultSet.getAvailableWithoutFetching() == 100 && !resultSet.isFullyFetched()) {
-				resultSet.fetchMoreResults();
+		return userService.getUserByUsernameAsync(username).thenCompose(userModel -> {
+			if (userModel == null) {
+				return CompletableFuture.completedFuture(new ArrayList<ListModel>());
 			}
+			return getListsByUserIdAsync(userModel.getUserId(), listProjection);
+		});
+	}
 
-			if (row != null) {
-				ListModel listModel = transformRowToList(row);
-				listModelList.add(listModel);
+	/**
+	 * Read (by username, one page)
+	 */
+	public PageModel<ListModel> getListsByUsername(String username, ListProjection listProjection, int limit, String cursor) {
+		return FutureUtils.getUninterruptibly(getListsByUsernameAsync(username, listProjection, limit, cursor));
+	}
+
+	/**
+	 * Read (by username, one page, asynchronous)
+	 */
+	public CompletableFuture<PageModel<ListModel>> getListsByUsernameAsync(String username, ListProjection listProjection, int limit, String cursor) {
+		log.info("Reading a page of lists from the database for user. Username: " + username + ". Limit: " + limit);
+
+		return userService.getUserByUsernameAsync(username).thenCompose(userModel -> {
+			if (userModel == null) {
+				PageModel<ListModel> pageModel = new PageModel<ListModel>();
+				pageModel.setModels(new ArrayList<ListModel>());
+				return CompletableFuture.completedFuture(pageModel);
 			}
-		}
+			return getListsByUserIdAsync(userModel.getUserId(), listProjection, limit, cursor);
+		});
+	}
 
-		return listModelList;
+	/**
+	 * Read (by username, streaming)
+	 */
+	public void forEachListPageByUsername(String username, ListProjection listProjection, Consumer<List<ListModel>> consumer) {
+		log.info("Streaming lists from the database for user. Username: " + username);
+
+		UserModel userModel = userService.getUserByUsername(username);
+		if (userModel != null) {
+			forEachListPageByUserId(userModel.getUserId(), listProjection, consumer);
+		}
 	}
 
 	/**
 	 * Update
 	 */
 	public List<ListModel> updateLists(List<ListModel> listModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(updateListsAsync(listModelList));
+	}
 
+	/**
+	 * Update (asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> updateListsAsync(List<ListModel> listModelList) {
 		// For each ListModel...
 		for (ListModel listModel : listModelList) {
 			UUID listId = listModel.getListId();
@@ -267,22 +496,29 @@ public class ListService {
 			}
 		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getUpdateListsBoundStatements(listModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
-		}
+		// Update the list partitions, and the owners' lists_by_user rows.
+		return getListOwnersAsync(listModelList).thenCompose(ownersByListId -> {
+			List<BoundStatement> boundStatements = new ArrayList<BoundStatement>();
+			boundStatements.addAll(getUpdateListsBoundStatements(listModelList));
+			boundStatements.addAll(getUpdateListsByUserBoundStatements(ownersByListId, listModelList));
 
-		return listModelList;
+			// Execute Database Transaction
+			return executeWritesAsync(boundStatements, listModelList);
+		});
 	}
 
 	/**
 	 * Delete
 	 */
 	public List<ListModel> deleteLists(List<ListModel> listModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(deleteListsAsync(listModelList));
+	}
+
+	/**
+	 * Delete (asynchronous)
+	 */
+	public CompletableFuture<List<ListModel>> deleteListsAsync(List<ListModel> listModelList) {
+		List<UUID> listIds = new ArrayList<UUID>();
 
 		// For each ListModel...
 		for (ListModel listModel : listModelList) {
@@ -290,17 +526,25 @@ public class ListService {
 
 			// Generate a log buffer.
 			log.info("Deleting list from the database. List ID: " + listId);
-		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getDeleteListsBoundStatements(listModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
+			listIds.add(listId);
 		}
 
-		return listModelList;
+		// Deleting the list partition deletes its items, but the item
+		// lookups in the items table have to be deleted one by one, as
+		// do the owners' lists_by_user rows.
+		CompletableFuture<Map<UUID, List<ItemModel>>> itemModelsFuture = itemService.getItemsByListIdsAsync(listIds);
+		CompletableFuture<Map<UUID, UUID>> ownersFuture = getListOwnersAsync(listModelList);
+
+		return itemModelsFuture.thenCombine(ownersFuture, (itemModelsByListId, ownersByListId) -> {
+			List<BoundStatement> boundStatements = new ArrayList<BoundStatement>();
+			for (List<ItemModel> itemModelList : itemModelsByListId.values()) {
+				boundStatements.addAll(itemService.getDeleteItemLookupsBoundStatements(itemModelList));
+			}
+			boundStatements.addAll(getDeleteListsByUserBoundStatements(ownersByListId, listModelList));
+			boundStatements.addAll(getDeleteListsBoundStatements(listModelList));
+			return boundStatements;
+		}).thenCompose(boundStatements -> executeWritesAsync(boundStatements, listModelList));
 	}
 
 
@@ -313,20 +557,12 @@ public class ListService {
 	 */
 	public List<BoundStatement> getCreateListsBoundStatements(List<ListModel> listModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_CREATE_LIST == null) {
-			PS_CREATE_LIST = session.prepare(
-				"INSERT INTO lists (list_id, list_name, item_sort_order, create_user, create_date, update_user, update_date) " +
-				"VALUES (:listId, :listName, :item_sort_order, :createUser, :createDate, :updateUser, :updateDate)");
-		}
 
 		if (listModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (ListModel listModel : listModelList) {
-				BoundStatement boundStatement = PS_CREATE_LIST.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_CREATE_LIST, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, listModel);
 				boundStatements.add(boundStatement);
 			}
@@ -340,25 +576,32 @@ public class ListService {
 	 */
 	public List<BoundStatement> getUpdateListsBoundStatements(List<ListModel> listModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_UPDATE_LIST_BY_LISTID == null) {
-			PS_UPDATE_LIST_BY_LISTID = session.prepare(
-				"UPDATE lists SET " +
-				"list_id = :listId, " +
-				"list_name = :listName, " +
-				"item_sort_order = :item_sort_order, " +
-				"update_user = :updateUser, " +
-				"update_date = :updateDate " +
-				"WHERE list_id = :listId");
+		if (listModelList != null) {
+			boundStatements = new ArrayList<BoundStatement>();
+
+			for (ListModel listModel : listModelList) {
+				BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_LIST_BY_LISTID, ExecutionProfile.SAFE_WRITE);
+				updateBoundStatement(boundStatement, listModel);
+				boundStatements.add(boundStatement);
+			}
 		}
 
+		return boundStatements;
+	}
+
+	/**
+	 * Return the bound statements to delete a list of lists. This
+	 * deletes the whole list_items partition, including the items.
+	 */
+	public List<BoundStatement> getDeleteListsBoundStatements(List<ListModel> listModelList) {
+		List<BoundStatement> boundStatements = null;
+
 		if (listModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (ListModel listModel : listModelList) {
-				BoundStatement boundStatement = PS_UPDATE_LIST_BY_LISTID.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_DELETE_LIST_BY_LISTID, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, listModel);
 				boundStatements.add(boundStatement);
 			}
@@ -367,26 +610,49 @@ public class ListService {
 		return boundStatements;
 	}
 
+
 	/**
-	 * Return the bound statements to delete a list of lists.
+	 * Return the bound statements to update the lists_by_user rows
+	 * for a list of lists. Lists without an owner are skipped.
 	 */
-	public List<BoundStatement> getDeleteListsBoundStatements(List<ListModel> listModelList) {
+	public List<BoundStatement> getUpdateListsByUserBoundStatements(Map<UUID, UUID> ownersByListId, List<ListModel> listModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_DELETE_LIST_BY_LISTID == null) {
-			PS_DELETE_LIST_BY_LISTID = session.prepare(
-				"DELETE FROM lists WHERE list_id = :listId");
+		if (listModelList != null) {
+			boundStatements = new ArrayList<BoundStatement>();
+
+			for (ListModel listModel : listModelList) {
+				UUID userId = ownersByListId.get(listModel.getListId());
+				if (userId != null) {
+					BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_LIST_BY_USER, ExecutionProfile.SAFE_WRITE);
+					updateBoundStatement(boundStatement, listModel);
+					boundStatement.setUUID("userId", userId);
+					boundStatements.add(boundStatement);
+				}
+			}
 		}
 
+		return boundStatements;
+	}
+
+	/**
+	 * Return the bound statements to delete the lists_by_user rows
+	 * for a list of lists. Lists without an owner are skipped.
+	 */
+	public List<BoundStatement> getDeleteListsByUserBoundStatements(Map<UUID, UUID> ownersByListId, List<ListModel> listModelList) {
+		List<BoundStatement> boundStatements = null;
+
 		if (listModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (ListModel listModel : listModelList) {
-				BoundStatement boundStatement = PS_DELETE_LIST_BY_LISTID.bind();
-				updateBoundStatement(boundStatement, listModel);
-				boundStatements.add(boundStatement);
+				UUID userId = ownersByListId.get(listModel.getListId());
+				if (userId != null) {
+					BoundStatement boundStatement = statementCatalog.bind(PS_DELETE_LIST_BY_USER, ExecutionProfile.SAFE_WRITE);
+					boundStatement.setUUID("userId", userId);
+					boundStatement.setUUID("listId", listModel.getListId());
+					boundStatements.add(boundStatement);
+				}
 			}
 		}
 
@@ -398,49 +664,295 @@ public class ListService {
 	// Helper Methods
 	/////////////////////////////////////////////////
 
+	/**
+	 * Reads the owner (user ID) of each list from the list_items
+	 * static column. The map has a null value for lists that were
+	 * not created for a user.
+	 */
+	private CompletableFuture<Map<UUID, UUID>> getListOwnersAsync(List<ListModel> listModelList) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		List<UUID> listIds = new ArrayList<UUID>();
+		for (ListModel listModel : listModelList) {
+			listIds.add(listModel.getListId());
+		}
+
+		return FutureUtils.allBounded(listIds, listsDatabaseProperties.getMaxInFlightQueries(), listId -> {
+			BoundStatement boundStatement = statementCatalog.bind(PS_GET_LIST_OWNER_BY_LISTID, ExecutionProfile.SAFE_READ);
+			boundStatement.setUUID("listId", listId);
+			return FutureUtils.transformOneRow(session.executeAsync(boundStatement), row -> row.getUUID("list_user_id"));
+		});
+	}
+
+	/**
+	 * Reads the list from the database.
+	 */
+	private CompletableFuture<ListModel> loadListByIdAsync(UUID listId, ListProjection listProjection) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		log.info("Reading list from the database (by listId). List ID: " + listId + ". Fields: " + listProjection.getFields());
+
+		// Bind the statement for the projection. There is one
+		// statement per set of fields, prepared the first time it is used.
+		BoundStatement boundStatement = null;
+		if (listProjection.includesItems()) {
+			boundStatement = statementCatalog.bind(
+				"SELECT " + getListColumns(listProjection, true) + ", " +
+				"item_id, item_name, create_user, create_date, update_user, update_date " +
+				"FROM list_items WHERE list_id = :listId", true, ExecutionProfile.FAST_READ);
+		}
+		else {
+			boundStatement = statementCatalog.bind(
+				"SELECT " + getListColumns(listProjection, true) + " " +
+				"FROM list_items WHERE list_id = :listId LIMIT 1", true, ExecutionProfile.FAST_READ);
+		}
+
+		// Execute Database Transaction
+		boundStatement.setUUID("listId", listId);
+		boundStatement.setFetchSize(1000);
+
+		// Transform Results
+		if (listProjection.includesItems()) {
+			return FutureUtils.transformAllRows(session.executeAsync(boundStatement), row -> row)
+				.thenApply(rows -> applyProjection(transformRowsToList(rows), listProjection));
+		}
+
+		return FutureUtils.transformOneRow(session.executeAsync(boundStatement), this::transformRowToList)
+			.thenApply(listModel -> applyProjection(listModel, listProjection));
+	}
+
+	private BoundStatement getListsByUserIdBoundStatement(UUID userId, ListProjection listProjection) {
+		// Bind the statement for the projection.
+		BoundStatement boundStatement = statementCatalog.bind(
+			"SELECT " + getListColumns(listProjection, false) + " " +
+			"FROM lists_by_user WHERE user_id = :userId", true, ExecutionProfile.FAST_READ);
+
+		boundStatement.setUUID("userId", userId);
+
+		return boundStatement;
+	}
+
+	/**
+	 * Returns the list columns to select for the projection. The
+	 * item_sort_order is needed to sort the items, if they are loaded.
+	 * The columns that lists_by_user does not have are left out, unless
+	 * the read is from list_items.
+	 */
+	private String getListColumns(ListProjection listProjection, boolean fromListItems) {
+		StringBuilder columns = new StringBuilder("list_id");
+
+		for (Map.Entry<String, String> listColumn : LIST_COLUMNS_BY_FIELD.entrySet()) {
+			String field = listColumn.getKey();
+			if (!fromListItems && LIST_ITEMS_ONLY_COLUMNS.contains(listColumn.getValue())) {
+				continue;
+			}
+			if (listProjection.includesField(field) ||
+				("itemSortOrder".equals(field) && listProjection.includesItems())) {
+				columns.append(", ").append(listColumn.getValue());
+			}
+		}
+
+		return columns.toString();
+	}
+
+	private CompletableFuture<List<ListModel>> loadProjectedItemModelsAsync(List<ListModel> listModelList, ListProjection listProjection) {
+		CompletableFuture<List<ListModel>> listModelListFuture = null;
+
+		if (listProjection.includesItems()) {
+			listModelListFuture = loadItemModelsAsync(listModelList);
+		}
+		else {
+			listModelListFuture = CompletableFuture.completedFuture(listModelList);
+		}
+
+		return listModelListFuture.thenApply(listModels -> {
+			for (ListModel listModel : listModels) {
+				applyProjection(listModel, listProjection);
+			}
+			return listModels;
+		});
+	}
+
+	/**
+	 * Clears the fields that were read, but not asked for.
+	 */
+	private ListModel applyProjection(ListModel listModel, ListProjection listProjection) {
+		if (listModel == null) {
+			return null;
+		}
+
+		if (!listProjection.includesField("itemSortOrder")) {
+			listModel.setItemSortOrder(null);
+		}
+		if (!listProjection.includesItems()) {
+			listModel.setItemModels(null);
+		}
+
+		return listModel;
+	}
+
+	private CompletableFuture<List<ListModel>> loadItemModelsAsync(List<ListModel> listModelList) {
+		List<UUID> listIds = new ArrayList<UUID>();
+		for (ListModel listModel : listModelList) {
+			listIds.add(listModel.getListId());
+		}
+
+		return itemService.getItemsByListIdsAsync(listIds).thenApply(itemModelsByListId -> {
+			for (ListModel listModel : listModelList) {
+				setSortedItemModels(listModel, itemModelsByListId.get(listModel.getListId()));
+			}
+			return listModelList;
+		});
+	}
+
+	/**
+	 * The statements for each list are written as one logged batch, since
+	 * list_items and lists_by_user have to change together. The statements
+	 * that are not for a list (the item lookups) go through the write
+	 * pipeline without the batch log. Once the writes finish, the cached
+	 * lists and responses for the lists are invalidated (on every instance).
+	 */
+	private CompletableFuture<List<ListModel>> executeWritesAsync(List<BoundStatement> boundStatements, List<ListModel> listModelList) {
+		Map<UUID, List<BoundStatement>> boundStatementsByListId = new LinkedHashMap<UUID, List<BoundStatement>>();
+		List<BoundStatement> otherBoundStatements = new ArrayList<BoundStatement>();
+
+		for (BoundStatement boundStatement : boundStatements) {
+			if (boundStatement.preparedStatement().getVariables().contains("listId")) {
+				UUID listId = boundStatement.getUUID("listId");
+				if (!boundStatementsByListId.containsKey(listId)) {
+					boundStatementsByListId.put(listId, new ArrayList<BoundStatement>());
+				}
+				boundStatementsByListId.get(listId).add(boundStatement);
+			}
+			else {
+				otherBoundStatements.add(boundStatement);
+			}
+		}
+
+		return writePipeline.executeAtomicAsync(boundStatementsByListId.values())
+			.thenCombine(writePipeline.executeAsync(otherBoundStatements), (listsWritten, othersWritten) -> listModelList)
+			.whenComplete((written, t) -> {
+				for (ListModel listModel : listModelList) {
+					forgetLoads(listModel.getListId());
+					itemService.forgetLoads(listModel.getListId());
+					listModelCache.invalidate(listModel.getListId());
+					listResponseCache.invalidate(listModel.getListId());
+					invalidationBus.publish(InvalidationBus.LIST_TOPIC, listModel.getListId());
+				}
+			});
+	}
+
+	/**
+	 * Sets the ListModel values on the bound statement. Only the
+	 * values the statement uses are set.
+	 */
 	private void updateBoundStatement(BoundStatement boundStatement, ListModel listModel) {
+		ColumnDefinitions variables = boundStatement.preparedStatement().getVariables();
+
 		boundStatement.setUUID("listId", listModel.getListId());
-		boundStatement.setString("listName", listModel.getListName());
-		boundStatement.setUUID("createUser", listModel.getCreateUser());
-		boundStatement.setTimestamp("createDate", listModel.getCreateDate());
-		boundStatement.setUUID("updateUser", listModel.getUpdateUser());
-		boundStatement.setTimestamp("updateDate", listModel.getUpdateDate());
+		if (variables.contains("listName")) {
+			boundStatement.setString("listName", listModel.getListName());
+		}
+		if (variables.contains("createUser")) {
+			boundStatement.setUUID("createUser", listModel.getCreateUser());
+		}
+		if (variables.contains("createDate")) {
+			boundStatement.setTimestamp("createDate", listModel.getCreateDate());
+		}
+		if (variables.contains("updateUser")) {
+			boundStatement.setUUID("updateUser", listModel.getUpdateUser());
+		}
+		if (variables.contains("updateDate")) {
+			boundStatement.setTimestamp("updateDate", listModel.getUpdateDate());
+		}
+		if (variables.contains("listVersion")) {
+			listModel.setVersion(UUIDs.timeBased());
+			boundStatement.setUUID("listVersion", listModel.getVersion());
+		}
 
 		// Update the sort order based on the list of items.
-		List<UUID> itemSortOrder = null;
-		if (listModel.getItemModels() != null) {
-			itemSortOrder = new ArrayList<UUID>();
-			for (ItemModel itemModel : listModel.getItemModels()) {
-				itemSortOrder.add(itemModel.getItemId());
+		if (variables.contains("item_sort_order")) {
+			List<UUID> itemSortOrder = null;
+			if (listModel.getItemModels() != null) {
+				itemSortOrder = new ArrayList<UUID>();
+				for (ItemModel itemModel : listModel.getItemModels()) {
+					itemSortOrder.add(itemModel.getItemId());
+				}
 			}
+			listModel.setItemSortOrder(itemSortOrder);
+			boundStatement.setList("item_sort_order", itemSortOrder, UUID.class);
 		}
-		listModel.setItemSortOrder(itemSortOrder);
-		boundStatement.setList("item_sort_order", itemSortOrder, UUID.class);
 	}
 
+	/**
+	 * Transforms the rows of a list_items partition into a ListModel
+	 * with its items. Returns null if the partition is empty.
+	 */
+	private ListModel transformRowsToList(List<Row> rows) {
+		if (rows.isEmpty()) {
+			return null;
+		}
+
+		ListModel listModel = transformRowToList(rows.get(0));
+
+		List<ItemModel> itemModelList = new ArrayList<ItemModel>();
+		for (Row row : rows) {
+			ItemModel itemModel = itemService.transformRowToItem(row);
+			if (itemModel != null) {
+				itemModelList.add(itemModel);
+			}
+		}
+		setSortedItemModels(listModel, itemModelList);
+
+		return listModel;
+	}
+
+	/**
+	 * Transforms a list_items or lists_by_user row into a ListModel,
+	 * without the items. The list columns have the same names in both.
+	 */
 	private ListModel transformRowToList(Row row) {
 		if (row == null) {
 			return null;
 		}
 
+		ColumnDefinitions columns = row.getColumnDefinitions();
+
 		ListModel listModel = new ListModel();
 		listModel.setListId(row.getUUID("list_id"));
-		listModel.setListName(row.getString("list_name"));
-		listModel.setItemSortOrder(row.getList("item_sort_order", UUID.class));
-		listModel.setCreateUser(row.getUUID("create_user"));
-		listModel.setCreateDate(row.getTimestamp("create_date"));
-		listModel.setUpdateUser(row.getUUID("update_user"));
-		listModel.setUpdateDate(row.getTimestamp("update_date"));
-
-		// Get the ItemModels from the database.
-		// Sort the item model list after fetching, then
-		// set it on the ListModel.
-		List<ItemModel> itemModelList = itemService.getItemsByListId(listModel.getListId());
+		if (columns.contains("list_name")) {
+			listModel.setListName(row.getString("list_name"));
+		}
+		if (columns.contains("item_sort_order")) {
+			listModel.setItemSortOrder(row.getList("item_sort_order", UUID.class));
+		}
+		if (columns.contains("list_create_user")) {
+			listModel.setCreateUser(row.getUUID("list_create_user"));
+		}
+		if (columns.contains("list_create_date")) {
+			listModel.setCreateDate(row.getTimestamp("list_create_date"));
+		}
+		if (columns.contains("list_update_user")) {
+			listModel.setUpdateUser(row.getUUID("list_update_user"));
+		}
+		if (columns.contains("list_update_date")) {
+			listModel.setUpdateDate(row.getTimestamp("list_update_date"));
+		}
+		if (columns.contains("list_version")) {
+			listModel.setVersion(row.getUUID("list_version"));
+		}
+
+		return listModel;
+	}
+
+	/**
+	 * Sort the item model list after fetching, then
+	 * set it on the ListModel.
+	 */
+	private void setSortedItemModels(ListModel listModel, List<ItemModel> itemModelList) {
 		List<ItemModel> sortedItemModelList = getSortedItemModels(
 				listModel.getItemSortOrder(), itemModelList);
 		listModel.setItemModels(sortedItemModelList);
-
-		return listModel;
 	}
 
 	/**
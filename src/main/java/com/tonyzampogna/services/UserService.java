@@ -1,17 +1,44 @@
 package com.tonyzampogna.services;
 
 import com.datastax.driver.core.*;
+import com.tonyzampogna.cache.BatchLoader;
+import com.tonyzampogna.cache.CacheSnapshot;
+import com.tonyzampogna.cache.CachedModel;
+import com.tonyzampogna.cache.ExistenceFilter;
+import com.tonyzampogna.cache.InvalidationBus;
+import com.tonyzampogna.cache.ModelCache;
+import com.tonyzampogna.cache.ModelCacheRegistry;
+import com.tonyzampogna.cache.SingleFlight;
+import com.tonyzampogna.cache.StaleModelCache;
+import com.tonyzampogna.config.ListsCacheProperties;
+import com.tonyzampogna.config.ListsDatabaseProperties;
 import com.tonyzampogna.domain.UserModel;
+import com.tonyzampogna.factory.CatalogStatement;
+import com.tonyzampogna.factory.ExecutionProfile;
 import com.tonyzampogna.factory.ListsDatabaseSessionFactory;
+import com.tonyzampogna.factory.StatementCatalog;
+import com.tonyzampogna.tenant.TenantContext;
+import com.tonyzampogna.util.FutureUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class contains the methods for operating on UserModels.
@@ -20,18 +47,139 @@ import java.util.UUID;
 public class UserService {
 	private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
-	// Prepared Statements
-	private static PreparedStatement PS_CREATE_USER = null;
-	private static PreparedStatement PS_GET_USER_BY_USERID = null;
-	private static PreparedStatement PS_GET_USER_BY_USERNAME = null;
-	private static PreparedStatement PS_GET_USER_COUNT_BY_USERNAME = null;
-	private static PreparedStatement PS_UPDATE_USER_BY_USERID = null;
-	private static PreparedStatement PS_UPDATE_USER_CREDENTIALS_BY_USERID = null;
-	private static PreparedStatement PS_DELETE_USER_BY_USERID = null;
+	// Prepared Statements (prepared at startup by the StatementCatalog)
+	private static final CatalogStatement PS_CREATE_USER = new CatalogStatement(
+		"INSERT INTO users (user_id, username, password, first_name, last_name, email_address, create_user, create_date, update_user, update_date) " +
+		"VALUES (:userId, :username, :password, :firstName, :lastName, :emailAddress, :createUser, :createDate, :updateUser, :updateDate)", true);
+
+	private static final CatalogStatement PS_GET_USERS_BY_USERIDS = new CatalogStatement(
+		"SELECT user_id, username, password, first_name, last_name, email_address, create_user, create_date, update_user, update_date " +
+		"FROM users WHERE user_id IN :userIds", true);
+
+	private static final CatalogStatement PS_GET_USERID_BY_USERNAME = new CatalogStatement(
+		"SELECT user_id FROM users_by_username WHERE username = :username", true);
+
+	private static final CatalogStatement PS_GET_USERNAMES = new CatalogStatement(
+		"SELECT username FROM users_by_username", true);
+
+	private static final CatalogStatement PS_CLAIM_USERNAME = new CatalogStatement(
+		"INSERT INTO users_by_username (username, user_id) VALUES (:username, :userId) IF NOT EXISTS", false);
+
+	private static final CatalogStatement PS_RELEASE_USERNAME = new CatalogStatement(
+		"DELETE FROM users_by_username WHERE username = :username IF user_id = :userId", false);
+
+	private static final CatalogStatement PS_UPDATE_USER_BY_USERID = new CatalogStatement(
+		"UPDATE users SET " +
+		"first_name = :firstName, " +
+		"last_name = :lastName, " +
+		"email_address = :emailAddress, " +
+		"update_user = :updateUser, " +
+		"update_date = :updateDate " +
+		"WHERE user_id = :userId", true);
+
+	private static final CatalogStatement PS_UPDATE_USER_CREDENTIALS_BY_USERID = new CatalogStatement(
+		"UPDATE users SET " +
+		"username = :username, " +
+		"password = :password, " +
+		"update_user = :updateUser, " +
+		"update_date = :updateDate " +
+		"WHERE user_id = :userId", true);
+
+	private static final CatalogStatement PS_DELETE_USER_BY_USERID = new CatalogStatement(
+		"DELETE FROM users WHERE user_id = :userId", true);
 
 	@Autowired
 	private ListsDatabaseSessionFactory listsDatabaseSessionFactory;
 
+	@Autowired
+	private StatementCatalog statementCatalog;
+
+	@Autowired
+	private ListsDatabaseProperties listsDatabaseProperties;
+
+	@Autowired
+	private WritePipeline writePipeline;
+
+	@Autowired
+	private ListsCacheProperties listsCacheProperties;
+
+	@Autowired
+	private ModelCacheRegistry modelCacheRegistry;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private CacheSnapshot cacheSnapshot;
+
+	// Caches
+	private StaleModelCache<UUID, UserModel> userCache = null;
+	private ModelCache<String, UUID> userIdByUsernameCache = null;
+	private SingleFlight<UUID, UserModel> userLoads = null;
+	private BatchLoader<UUID, UserModel> userBatchLoader = null;
+	private ExistenceFilter usernameFilter = null;
+	private ScheduledExecutorService usernameFilterScheduler = null;
+
+
+	/**
+	 * Create the user caches, and the single-flight and batch loaders.
+	 * The caches drop the users that other instances write to. The
+	 * users (by ID) are kept in the cache snapshot across restarts.
+	 * The username filter (if it is enabled) is seeded once the
+	 * application is up.
+	 */
+	@PostConstruct
+	public void createCaches() {
+		long maximumSize = listsCacheProperties.getUserMaximumSize();
+		long expireAfterWriteSeconds = listsCacheProperties.getUserExpireAfterWriteSeconds();
+
+		userCache = modelCacheRegistry.register(new StaleModelCache<UUID, UserModel>("users", maximumSize, expireAfterWriteSeconds, listsCacheProperties.getUserMaxStaleSeconds()));
+		cacheSnapshot.register(userCache, UUID::fromString, UserModel.class);
+		userIdByUsernameCache = modelCacheRegistry.register(new ModelCache<String, UUID>("userIdsByUsername", maximumSize, expireAfterWriteSeconds));
+		userLoads = modelCacheRegistry.register(new SingleFlight<UUID, UserModel>("userLoads"));
+		userBatchLoader = modelCacheRegistry.register(new BatchLoader<UUID, UserModel>("userPointReads",
+			listsDatabaseProperties.getPointReadBatchWindowMicros(), listsDatabaseProperties.getPointReadBatchSize(), this::loadUsersByIdsAsync));
+
+		invalidationBus.subscribe(InvalidationBus.USER_TOPIC, userId -> {
+			userLoads.forget(UUID.fromString(userId));
+			userCache.invalidate(UUID.fromString(userId));
+		});
+		invalidationBus.subscribe(InvalidationBus.USERNAME_TOPIC, username -> {
+			userIdByUsernameCache.invalidate(username);
+			addToUsernameFilter(username);
+		});
+
+		if (listsCacheProperties.getUsernameFilterEnabled()) {
+			usernameFilter = modelCacheRegistry.register(new ExistenceFilter("usernameFilter",
+				listsCacheProperties.getUsernameFilterExpectedInsertions(), listsCacheProperties.getUsernameFilterFalsePositiveRate()));
+		}
+	}
+
+	/**
+	 * Seed the username filter, and rebuild it every rebuild-interval-seconds.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void startUsernameFilter() {
+		if (usernameFilter == null) {
+			return;
+		}
+
+		usernameFilterScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "username-filter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		usernameFilterScheduler.scheduleWithFixedDelay(this::rebuildUsernameFilter,
+			0, listsCacheProperties.getUsernameFilterRebuildIntervalSeconds(), TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stopUsernameFilter() {
+		if (usernameFilterScheduler != null) {
+			usernameFilterScheduler.shutdownNow();
+		}
+	}
+
 
 	/////////////////////////////////////////////////
 	// Service Methods
@@ -41,7 +189,20 @@ public class UserService {
 	 * Create
 	 */
 	public List<UserModel> createUsers(List<UserModel> userModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(createUsersAsync(userModelList));
+	}
+
+	/**
+	 * Create (asynchronous)
+	 *
+	 * The usernames are looked up for the whole batch in parallel, so a
+	 * taken name fails fast. The names are then claimed in users_by_username
+	 * with INSERT ... IF NOT EXISTS, which is what makes them unique. If any
+	 * claim (or the write of the users) fails, the names that were claimed
+	 * are released again.
+	 */
+	public CompletableFuture<List<UserModel>> createUsersAsync(List<UserModel> userModelList) {
+		Map<String, UUID> claims = new LinkedHashMap<String, UUID>();
 
 		// For each UserModel...
 		for (UserModel userModel : userModelList) {
@@ -66,12 +227,6 @@ public class UserService {
 				throw new RuntimeException("The create and update user and timestamp cannot be blank. User ID: " + userId + ". Username: " + username);
 			}
 
-			// Make sure the username does not already exist.
-			int count = getUserCountByUsername(username);
-			if (count > 0) {
-				throw new RuntimeException("Username already exists in the database. User ID: " + userId + ". Username: " + username);
-			}
-
 			// Username must not be blank.
 			if (StringUtils.isEmpty(username)) {
 				throw new RuntimeException("Username must not be blank during creation. User ID: " + userId + ". Username: " + username);
@@ -81,77 +236,78 @@ public class UserService {
 			if (StringUtils.isEmpty(password)) {
 				throw new RuntimeException("Password must not be blank during creation. User ID: " + userId + ". Username: " + username);
 			}
-		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getCreateUsersBoundStatements(userModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
+			// The same username cannot be used twice in one request.
+			if (claims.containsKey(username)) {
+				throw new RuntimeException("Username already exists in the request. User ID: " + userId + ". Username: " + username);
+			}
+			claims.put(username, userId);
 		}
 
-		return userModelList;
+		// Make sure the usernames do not already exist, then claim them.
+		return checkUsernamesAvailableAsync(claims)
+			.thenCompose(available -> claimUsernamesAsync(claims))
+			.thenCompose(claimed -> releaseUsernamesOnFailure(claims,
+				executeWritesAsync(getCreateUsersBoundStatements(userModelList), userModelList)));
 	}
 
 	/**
 	 * Read (by userId)
 	 */
 	public UserModel getUserById(UUID userId) {
-		UserModel userModel = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		log.info("Reading user from the database (by userId). User ID: " + userId);
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_USER_BY_USERID == null) {
-			PS_GET_USER_BY_USERID = session.prepare(
-				"SELECT user_id, username, password, first_name, last_name, email_address, create_user, create_date, update_user, update_date " +
-				"FROM users WHERE user_id = :userId");
-		}
-
-		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_USER_BY_USERID.bind();
-		boundStatement.setUUID("userId", userId);
-		ResultSet resultSet = session.execute(boundStatement);
+		return FutureUtils.getUninterruptibly(getUserByIdAsync(userId));
+	}
 
-		// Transform Results
-		Row row = resultSet.one();
-		if (row != null) {
-			userModel = transformRowToUser(row);
-		}
+	/**
+	 * Read (by userId, asynchronous)
+	 *
+	 * The user is read through the user cache. On a miss, concurrent
+	 * reads of the same user share one database read.
+	 */
+	public CompletableFuture<UserModel> getUserByIdAsync(UUID userId) {
+		return getCachedUserByIdAsync(userId).thenApply(CachedModel::getModel);
+	}
 
-		return userModel;
+	/**
+	 * Read (by userId, asynchronous, with the staleness)
+	 *
+	 * The same as getUserByIdAsync, but returns how stale the cached
+	 * user is. A stale user is refreshed in the background.
+	 */
+	public CompletableFuture<CachedModel<UserModel>> getCachedUserByIdAsync(UUID userId) {
+		return userCache.get(userId, id -> userLoads.get(id, this::loadUserByIdAsync));
 	}
 
 	/**
 	 * Read (by username)
 	 */
 	public UserModel getUserByUsername(String username) {
-		UserModel userModel = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		log.info("Reading user from the database (by username). User ID: " + username);
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_USER_BY_USERNAME == null) {
-			PS_GET_USER_BY_USERNAME = session.prepare(
-				"SELECT user_id, username, password, first_name, last_name, email_address, create_user, create_date, update_user, update_date " +
-				"FROM users WHERE username = :username");
-		}
+		return FutureUtils.getUninterruptibly(getUserByUsernameAsync(username));
+	}
 
-		// Execute Database Transaction
-		BoundStatement boundStatement = PS_GET_USER_BY_USERNAME.bind();
-		boundStatement.setString("username", username);
-		ResultSet resultSet = session.execute(boundStatement);
+	/**
+	 * Read (by username, asynchronous)
+	 *
+	 * The username is resolved to a user ID through users_by_username,
+	 * then the user is read by ID. Both are single-partition reads,
+	 * and both go through the user caches.
+	 */
+	public CompletableFuture<UserModel> getUserByUsernameAsync(String username) {
+		return getCachedUserByUsernameAsync(username).thenApply(CachedModel::getModel);
+	}
 
-		// Transform Results
-		Row row = resultSet.one();
-		if (row != null) {
-			userModel = transformRowToUser(row);
-		}
+	/**
+	 * Read (by username, asynchronous, with the staleness)
+	 */
+	public CompletableFuture<CachedModel<UserModel>> getCachedUserByUsernameAsync(String username) {
+		log.info("Reading user from the database (by username). User ID: " + username);
 
-		return userModel;
+		return userIdByUsernameCache.get(username, this::lookupUserIdByUsernameAsync).thenCompose(userId -> {
+			if (userId == null) {
+				return CompletableFuture.completedFuture(new CachedModel<UserModel>(null, 0, 0));
+			}
+			return getCachedUserByIdAsync(userId);
+		});
 	}
 
 	/**
@@ -163,8 +319,13 @@ public class UserService {
 	 * to do that.
 	 */
 	public List<UserModel> updateUsers(List<UserModel> userModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(updateUsersAsync(userModelList));
+	}
 
+	/**
+	 * Update (asynchronous)
+	 */
+	public CompletableFuture<List<UserModel>> updateUsersAsync(List<UserModel> userModelList) {
 		// For each UserModel...
 		for (UserModel userModel : userModelList) {
 			UUID userId = userModel.getUserId();
@@ -181,14 +342,8 @@ public class UserService {
 		}
 
 		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getUpdateUsersBoundStatements(userModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
-		}
-
-		return userModelList;
+		return executeWritesAsync(getUpdateUsersBoundStatements(userModelList), userModelList)
+			.whenComplete((updated, t) -> invalidateUsers(userModelList, null));
 	}
 
 	/**
@@ -198,77 +353,99 @@ public class UserService {
 	 * to check to see if the username exists (only if it's changed).
 	 */
 	public List<UserModel> updateUserCredentials(List<UserModel> userModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(updateUserCredentialsAsync(userModelList));
+	}
+
+	/**
+	 * Update (User Credentials, asynchronous).
+	 *
+	 * The current users are read in parallel. A new username is claimed
+	 * in users_by_username before the users are written, and the old
+	 * username is released after.
+	 */
+	public CompletableFuture<List<UserModel>> updateUserCredentialsAsync(List<UserModel> userModelList) {
+		List<UUID> userIds = new ArrayList<UUID>();
 
 		// For each UserModel...
 		for (UserModel userModel : userModelList) {
 			UUID userId = userModel.getUserId();
 			String username = userModel.getUsername();
 
-			UserModel currentUserModel = getUserById(userModel.getUserId());
-
 			// Generate a log buffer.
 			log.info("Updating user in the database. User ID: " + userId + ". Username: " + username);
 
-			// If no user exists, throw an error.
-			if (currentUserModel == null) {
-				throw new RuntimeException("User does not exist. User ID: " + userId + ". Username: " + username);
-			}
-
-			// Check if the username is changing.
-			if (StringUtils.hasLength(username) && !username.equals(currentUserModel.getUsername())) {
-				// The username is getting changed.
-				// Check to see if it exists.
-				int count = getUserCountByUsername(username);
-				if (count > 0) {
-					throw new RuntimeException("Username already exists in the database. User ID: " + userId + ". Username: " + username);
-				}
-			}
-			else {
-				// Set the username to the current username.
-				userModel.setUsername(currentUserModel.getUsername());
-			}
-
-			// Check if the password is changing.
-			if (StringUtils.isEmpty(userModel.getPassword())) {
-				// Password cannot be empty. Set the password to the current password.
-				userModel.setPassword(currentUserModel.getPassword());
-			}
-
 			// Make sure our logging fields are not empty.
 			if (StringUtils.isEmpty(userModel.getUpdateUser()) ||
 				StringUtils.isEmpty(userModel.getUpdateDate())) {
 				throw new RuntimeException("The update user and timestamp cannot be blank. User ID: " + userId + ". Username: " + username);
 			}
-		}
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_UPDATE_USER_CREDENTIALS_BY_USERID == null) {
-			PS_UPDATE_USER_CREDENTIALS_BY_USERID = session.prepare(
-				"UPDATE users SET " +
-				"username = :username, " +
-				"password = :password, " +
-				"update_user = :updateUser, " +
-				"update_date = :updateDate " +
-				"WHERE user_id = :userId");
+			userIds.add(userId);
 		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getUpdateUserCredentialsBoundStatements(userModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
-		}
+		Map<String, UUID> claims = new LinkedHashMap<String, UUID>();
+		Map<String, UUID> releases = new LinkedHashMap<String, UUID>();
+
+		return FutureUtils.allBounded(userIds, listsDatabaseProperties.getMaxInFlightQueries(), this::loadUserByIdAsync)
+			.thenCompose(currentUserModels -> {
+				for (UserModel userModel : userModelList) {
+					UUID userId = userModel.getUserId();
+					String username = userModel.getUsername();
+					UserModel currentUserModel = currentUserModels.get(userId);
+
+					// If no user exists, throw an error.
+					if (currentUserModel == null) {
+						throw new RuntimeException("User does not exist. User ID: " + userId + ". Username: " + username);
+					}
+
+					// Check if the username is changing.
+					if (StringUtils.hasLength(username) && !username.equals(currentUserModel.getUsername())) {
+						// The username is getting changed.
+						// It has to be claimed, and the old one released.
+						if (claims.containsKey(username)) {
+							throw new RuntimeException("Username already exists in the request. User ID: " + userId + ". Username: " + username);
+						}
+						claims.put(username, userId);
+						if (currentUserModel.getUsername() != null) {
+							releases.put(currentUserModel.getUsername(), userId);
+						}
+					}
+					else {
+						// Set the username to the current username.
+						userModel.setUsername(currentUserModel.getUsername());
+					}
+
+					// Check if the password is changing.
+					if (StringUtils.isEmpty(userModel.getPassword())) {
+						// Password cannot be empty. Set the password to the current password.
+						userModel.setPassword(currentUserModel.getPassword());
+					}
+				}
 
-		return userModelList;
+				return checkUsernamesAvailableAsync(claims);
+			})
+			.thenCompose(available -> claimUsernamesAsync(claims))
+			.thenCompose(claimed -> releaseUsernamesOnFailure(claims,
+				executeWritesAsync(getUpdateUserCredentialsBoundStatements(userModelList), userModelList)))
+			.thenCompose(updated -> releaseUsernamesAsync(releases).thenApply(released -> updated))
+			.whenComplete((updated, t) -> {
+				invalidateUsers(userModelList, claims.keySet());
+				invalidateUsers(null, releases.keySet());
+			});
 	}
 
 	/**
 	 * Delete
 	 */
 	public List<UserModel> deleteUsers(List<UserModel> userModelList) {
-		Session session = listsDatabaseSessionFactory.getSession();
+		return FutureUtils.getUninterruptibly(deleteUsersAsync(userModelList));
+	}
+
+	/**
+	 * Delete (asynchronous)
+	 */
+	public CompletableFuture<List<UserModel>> deleteUsersAsync(List<UserModel> userModelList) {
+		List<UUID> userIds = new ArrayList<UUID>();
 
 		// For each UserModel...
 		for (UserModel userModel : userModelList) {
@@ -276,17 +453,26 @@ public class UserService {
 
 			// Generate a log buffer.
 			log.info("Deleting list from the database. User ID: " + userId);
-		}
 
-		// Execute Database Transaction
-		BatchStatement batchStatement = new BatchStatement();
-		List<BoundStatement> boundStatements = getDeleteUsersBoundStatements(userModelList);
-		if (boundStatements != null) {
-			batchStatement.addAll(boundStatements);
-			session.execute(batchStatement);
+			userIds.add(userId);
 		}
 
-		return userModelList;
+		// Read the current usernames, so they can be released
+		// once the users are deleted.
+		return FutureUtils.allBounded(userIds, listsDatabaseProperties.getMaxInFlightQueries(), this::loadUserByIdAsync)
+			.thenCompose(currentUserModels -> {
+				Map<String, UUID> releases = new LinkedHashMap<String, UUID>();
+				for (UserModel currentUserModel : currentUserModels.values()) {
+					if (currentUserModel != null && currentUserModel.getUsername() != null) {
+						releases.put(currentUserModel.getUsername(), currentUserModel.getUserId());
+					}
+				}
+
+				// Execute Database Transaction
+				return executeWritesAsync(getDeleteUsersBoundStatements(userModelList), userModelList)
+					.thenCompose(deleted -> releaseUsernamesAsync(releases).thenApply(released -> deleted))
+					.whenComplete((deleted, t) -> invalidateUsers(userModelList, releases.keySet()));
+			});
 	}
 
 
@@ -299,20 +485,12 @@ public class UserService {
 	 */
 	public List<BoundStatement> getCreateUsersBoundStatements(List<UserModel> userModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_CREATE_USER == null) {
-			PS_CREATE_USER = session.prepare(
-				"INSERT INTO users (user_id, username, password, first_name, last_name, email_address, create_user, create_date, update_user, update_date) " +
-				"VALUES (:userId, :username, :password, :firstName, :lastName, :emailAddress, :createUser, :createDate, :updateUser, :updateDate)");
-		}
 
 		if (userModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (UserModel userModel : userModelList) {
-				BoundStatement boundStatement = PS_CREATE_USER.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_CREATE_USER, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, userModel);
 				boundStatement.setString("username", userModel.getUsername());
 				boundStatement.setString("password", userModel.getPassword());
@@ -330,25 +508,12 @@ public class UserService {
 	 */
 	public List<BoundStatement> getUpdateUsersBoundStatements(List<UserModel> userModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_UPDATE_USER_BY_USERID == null) {
-			PS_UPDATE_USER_BY_USERID = session.prepare(
-				"UPDATE users SET " +
-				"first_name = :firstName, " +
-				"last_name = :lastName, " +
-				"email_address = :emailAddress, " +
-				"update_user = :updateUser, " +
-				"update_date = :updateDate " +
-				"WHERE user_id = :userId");
-		}
 
 		if (userModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (UserModel userModel : userModelList) {
-				BoundStatement boundStatement = PS_UPDATE_USER_BY_USERID.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_USER_BY_USERID, ExecutionProfile.SAFE_WRITE);
 				updateBoundStatement(boundStatement, userModel);
 				boundStatements.add(boundStatement);
 			}
@@ -362,24 +527,12 @@ public class UserService {
 	 */
 	public List<BoundStatement> getUpdateUserCredentialsBoundStatements(List<UserModel> userModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_UPDATE_USER_CREDENTIALS_BY_USERID == null) {
-			PS_UPDATE_USER_CREDENTIALS_BY_USERID = session.prepare(
-				"UPDATE users SET " +
-				"username = :username, " +
-				"password = :password, " +
-				"update_user = :updateUser, " +
-				"update_date = :updateDate " +
-				"WHERE user_id = :userId");
-		}
 
 		if (userModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (UserModel userModel : userModelList) {
-				BoundStatement boundStatement = PS_UPDATE_USER_CREDENTIALS_BY_USERID.bind();
+				BoundStatement boundStatement = statementCatalog.bind(PS_UPDATE_USER_CREDENTIALS_BY_USERID, ExecutionProfile.SAFE_WRITE);
 				boundStatement.setUUID("userId", userModel.getUserId());
 				boundStatement.setString("username", userModel.getUsername());
 				boundStatement.setString("password", userModel.getPassword());
@@ -397,20 +550,13 @@ public class UserService {
 	 */
 	public List<BoundStatement> getDeleteUsersBoundStatements(List<UserModel> userModelList) {
 		List<BoundStatement> boundStatements = null;
-		Session session = listsDatabaseSessionFactory.getSession();
-
-		// Create the PreparedStatement if it does not exist.
-		if (PS_DELETE_USER_BY_USERID == null) {
-			PS_DELETE_USER_BY_USERID = session.prepare(
-				"DELETE FROM users WHERE user_id = :userId");
-		}
 
 		if (userModelList != null) {
 			boundStatements = new ArrayList<BoundStatement>();
 
 			for (UserModel userModel : userModelList) {
-				BoundStatement boundStatement = PS_DELETE_USER_BY_USERID.bind();
-				updateBoundStatement(boundStatement, userModel);
+				BoundStatement boundStatement = statementCatalog.bind(PS_DELETE_USER_BY_USERID, ExecutionProfile.SAFE_WRITE);
+				boundStatement.setUUID("userId", userModel.getUserId());
 				boundStatements.add(boundStatement);
 			}
 		}
@@ -429,25 +575,252 @@ public class UserService {
 	 * username.
 	 */
 	public int getUserCountByUsername(String username) {
-		int count = 0;
+		return FutureUtils.getUninterruptibly(getUserCountByUsernameAsync(username));
+	}
+
+	/**
+	 * Asynchronous version of getUserCountByUsername(). This is a
+	 * key lookup in users_by_username, so the count is 0 or 1.
+	 */
+	public CompletableFuture<Integer> getUserCountByUsernameAsync(String username) {
+		return lookupUserIdByUsernameAsync(username).thenApply(userId -> (userId != null) ? 1 : 0);
+	}
+
+	/**
+	 * Reads the user from the database, without the cache. User reads
+	 * that come in close together are sent as one read of all of their
+	 * user IDs (see the user batch loader).
+	 */
+	private CompletableFuture<UserModel> loadUserByIdAsync(UUID userId) {
+		log.info("Reading user from the database (by userId). User ID: " + userId);
+
+		return userBatchLoader.load(userId);
+	}
+
+	/**
+	 * Reads the users from the database, by user ID. This is the
+	 * batch function for the user batch loader.
+	 */
+	private CompletableFuture<Map<UUID, UserModel>> loadUsersByIdsAsync(List<UUID> userIds) {
 		Session session = listsDatabaseSessionFactory.getSession();
 
-		// Create the PreparedStatement if it does not exist.
-		if (PS_GET_USER_COUNT_BY_USERNAME == null) {
-			PS_GET_USER_COUNT_BY_USERNAME = session.prepare(
-				"SELECT cast(count(*) as int) as count FROM users WHERE username = :username");
+		// Execute Database Transaction. The credential updates read the
+		// current users through here, so this reads at quorum (most
+		// user reads are served by the cache anyway).
+		BoundStatement boundStatement = statementCatalog.bind(PS_GET_USERS_BY_USERIDS, ExecutionProfile.SAFE_READ);
+		boundStatement.setList("userIds", userIds, UUID.class);
+
+		// Transform Results
+		return FutureUtils.transformAllRows(session.executeAsync(boundStatement), this::transformRowToUser)
+			.thenApply(userModelList -> {
+				Map<UUID, UserModel> userModelsByUserId = new LinkedHashMap<UUID, UserModel>();
+				for (UserModel userModel : userModelList) {
+					userModelsByUserId.put(userModel.getUserId(), userModel);
+				}
+				return userModelsByUserId;
+			});
+	}
+
+	/**
+	 * Removes the users (by ID and by username) and the usernames from the
+	 * caches, here and on the other instances. This is called once a write
+	 * has finished, whether or not it succeeded, since part of it may have
+	 * been applied.
+	 */
+	private void invalidateUsers(List<UserModel> userModelList, Collection<String> usernames) {
+		if (userModelList != null) {
+			for (UserModel userModel : userModelList) {
+				userLoads.forget(userModel.getUserId());
+				userCache.invalidate(userModel.getUserId());
+				userIdByUsernameCache.invalidate(userModel.getUsername());
+				invalidationBus.publish(InvalidationBus.USER_TOPIC, userModel.getUserId());
+				invalidationBus.publish(InvalidationBus.USERNAME_TOPIC, userModel.getUsername());
+			}
+		}
+
+		if (usernames != null) {
+			for (String username : usernames) {
+				userIdByUsernameCache.invalidate(username);
+				invalidationBus.publish(InvalidationBus.USERNAME_TOPIC, username);
+			}
 		}
+	}
 
-		BoundStatement boundStatement = PS_GET_USER_COUNT_BY_USERNAME.bind();
+	/**
+	 * Returns the user ID that has claimed the username,
+	 * or null if the username is free.
+	 */
+	private CompletableFuture<UUID> getUserIdByUsernameAsync(String username) {
+		return getUserIdByUsernameAsync(username, ExecutionProfile.SAFE_READ);
+	}
+
+	private CompletableFuture<UUID> getUserIdByUsernameAsync(String username, ExecutionProfile profile) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		BoundStatement boundStatement = statementCatalog.bind(PS_GET_USERID_BY_USERNAME, profile);
 		boundStatement.setString("username", username);
 
-		ResultSet resultSet = session.execute(boundStatement);
-		Row row = resultSet.one();
-		if (row != null) {
-			count = row.getInt("count");
+		return FutureUtils.transformOneRow(session.executeAsync(boundStatement), row -> row.getUUID("user_id"));
+	}
+
+	/**
+	 * Returns the user ID that has claimed the username, or null if the
+	 * username is free. The filter is built from the default tenant's
+	 * keyspace, so it is only used for the default tenant.
+	 *
+	 * A username the filter does not have is most likely free, but it may
+	 * have just been claimed on another instance (the invalidation bus is
+	 * best-effort). So it is still looked up, at FAST_READ instead of
+	 * SAFE_READ, and the filter never makes a username look free.
+	 */
+	private CompletableFuture<UUID> lookupUserIdByUsernameAsync(String username) {
+		if (usernameFilter != null && TenantContext.isDefault() && !usernameFilter.mightContain(username)) {
+			return getUserIdByUsernameAsync(username, ExecutionProfile.FAST_READ);
+		}
+
+		return getUserIdByUsernameAsync(username);
+	}
+
+	private void addToUsernameFilter(String username) {
+		if (usernameFilter != null && username != null && TenantContext.isDefault()) {
+			usernameFilter.put(username);
+		}
+	}
+
+	/**
+	 * Rebuilds the username filter from a scan of users_by_username, which
+	 * drops the released usernames. If the filter has more usernames than
+	 * it was sized for, it is rebuilt again right away, at twice the size.
+	 */
+	public void rebuildUsernameFilter() {
+		Session session = listsDatabaseSessionFactory.getSession(TenantContext.DEFAULT_TENANT);
+
+		for (int count = 0; count < 2; count++) {
+			long start = System.currentTimeMillis();
+
+			try {
+				BoundStatement boundStatement = statementCatalog.bind(PS_GET_USERNAMES, ExecutionProfile.FAST_READ);
+				boundStatement.setFetchSize(5000);
+
+				usernameFilter.startRebuild();
+				FutureUtils.forEachPage(session.executeAsync(boundStatement), row -> row.getString("username"), usernames -> {
+					for (String username : usernames) {
+						usernameFilter.putForRebuild(username);
+					}
+				});
+				usernameFilter.finishRebuild();
+
+				log.info("Rebuilt the username filter. Stats: " + usernameFilter.getStats() + ". Millis: " + (System.currentTimeMillis() - start));
+			}
+			catch (Exception e) {
+				usernameFilter.cancelRebuild();
+				log.error("Exception occurred while rebuilding the username filter.", e);
+				return;
+			}
+
+			if (!usernameFilter.isOverfull()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Looks up all of the usernames in parallel, and fails if any
+	 * of them is taken by another user.
+	 */
+	private CompletableFuture<Void> checkUsernamesAvailableAsync(Map<String, UUID> claims) {
+		return FutureUtils.allBounded(claims.keySet(), listsDatabaseProperties.getMaxInFlightQueries(), this::getUserIdByUsernameAsync)
+			.thenAccept(userIdsByUsername -> {
+				for (Map.Entry<String, UUID> entry : userIdsByUsername.entrySet()) {
+					UUID userId = claims.get(entry.getKey());
+					if (entry.getValue() != null && !entry.getValue().equals(userId)) {
+						throw new RuntimeException("Username already exists in the database. User ID: " + userId + ". Username: " + entry.getKey());
+					}
+				}
+			});
+	}
+
+	/**
+	 * Claims each username for its user ID with a lightweight transaction.
+	 * If any of the claims fail, the ones that succeeded are released, and
+	 * the returned future fails.
+	 */
+	private CompletableFuture<Void> claimUsernamesAsync(Map<String, UUID> claims) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		// The usernames go in the filter first (here and on the other
+		// instances), so they are never missing from it while they are
+		// being claimed, or once they have been.
+		for (String username : claims.keySet()) {
+			addToUsernameFilter(username);
+			userIdByUsernameCache.invalidate(username);
+			invalidationBus.publish(InvalidationBus.USERNAME_TOPIC, username);
 		}
 
-		return count;
+		return FutureUtils.allBounded(claims.keySet(), listsDatabaseProperties.getMaxInFlightQueries(), username -> {
+			BoundStatement boundStatement = statementCatalog.bind(PS_CLAIM_USERNAME, ExecutionProfile.SERIAL);
+			boundStatement.setString("username", username);
+			boundStatement.setUUID("userId", claims.get(username));
+			return FutureUtils.toCompletableFuture(session.executeAsync(boundStatement)).thenApply(ResultSet::wasApplied);
+		}).thenCompose(appliedByUsername -> {
+			Map<String, UUID> claimed = new LinkedHashMap<String, UUID>();
+			String rejectedUsername = null;
+			for (Map.Entry<String, Boolean> entry : appliedByUsername.entrySet()) {
+				if (entry.getValue()) {
+					claimed.put(entry.getKey(), claims.get(entry.getKey()));
+				}
+				else {
+					rejectedUsername = entry.getKey();
+				}
+			}
+
+			if (rejectedUsername == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+
+			String username = rejectedUsername;
+			return releaseUsernamesAsync(claimed).thenApply(released -> {
+				throw new RuntimeException("Username already exists in the database. User ID: " + claims.get(username) + ". Username: " + username);
+			});
+		});
+	}
+
+	/**
+	 * Releases each username, but only if it is still
+	 * claimed by the same user ID.
+	 */
+	private CompletableFuture<Void> releaseUsernamesAsync(Map<String, UUID> releases) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		return FutureUtils.allBounded(releases.keySet(), listsDatabaseProperties.getMaxInFlightQueries(), username -> {
+			BoundStatement boundStatement = statementCatalog.bind(PS_RELEASE_USERNAME, ExecutionProfile.SERIAL);
+			boundStatement.setString("username", username);
+			boundStatement.setUUID("userId", releases.get(username));
+			return FutureUtils.toCompletableFuture(session.executeAsync(boundStatement));
+		}).thenApply(released -> null);
+	}
+
+	/**
+	 * Releases the claimed usernames if the write fails,
+	 * then passes on the write's result or failure.
+	 */
+	private <T> CompletableFuture<T> releaseUsernamesOnFailure(Map<String, UUID> claims, CompletableFuture<T> write) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+
+		write.whenComplete((value, t) -> {
+			if (t == null) {
+				result.complete(value);
+			}
+			else {
+				releaseUsernamesAsync(claims).whenComplete((released, releaseFailure) -> result.completeExceptionally(t));
+			}
+		});
+
+		return result;
+	}
+
+	private CompletableFuture<List<UserModel>> executeWritesAsync(List<BoundStatement> boundStatements, List<UserModel> userModelList) {
+		return writePipeline.executeAsync(boundStatements).thenApply(written -> userModelList);
 	}
 
 	private void updateBoundStatement(BoundStatement boundStatement, UserModel userModel) {
@@ -0,0 +1,165 @@
+package com.tonyzampogna.services;
+
+import com.datastax.driver.core.*;
+import com.tonyzampogna.config.ListsDatabaseProperties;
+import com.tonyzampogna.factory.ListsDatabaseSessionFactory;
+import com.tonyzampogna.util.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class runs the write statements for the services.
+ *
+ * Instead of putting every statement in one logged, multi-partition batch,
+ * the statements are grouped by partition and sent as unlogged batches of
+ * at most max-batch-statements each. An unlogged batch for one partition is
+ * applied as a single mutation, without going through the batch log. The
+ * batches run concurrently, with at most max-in-flight-writes outstanding.
+ *
+ * Logged batches are only used for statements that have to be applied
+ * together across tables (see executeAtomicAsync).
+ *
+ * A batch is run with the consistency level and timeout of the statements
+ * in it (their ExecutionProfile), since Cassandra ignores the ones set on
+ * the statements inside a batch.
+ */
+@Component
+public class WritePipeline {
+	private static final Logger log = LoggerFactory.getLogger(WritePipeline.class);
+
+	@Autowired
+	private ListsDatabaseSessionFactory listsDatabaseSessionFactory;
+
+	@Autowired
+	private ListsDatabaseProperties listsDatabaseProperties;
+
+
+	/////////////////////////////////////////////////
+	// Write Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Write statements that do not have to be applied together.
+	 */
+	public CompletableFuture<Void> executeAsync(List<? extends Statement> statements) {
+		Session session = listsDatabaseSessionFactory.getSession();
+
+		if (statements == null || statements.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		List<Statement> batches = getPartitionBatches(session, statements);
+		log.debug("Writing statements to the database. Statements: " + statements.size() + ". Requests: " + batches.size());
+
+		return executeAllAsync(session, batches);
+	}
+
+	/**
+	 * Write groups of statements, where the statements in a group have to
+	 * be applied together (for example, a list and its lists_by_user row).
+	 * Each group is sent as a logged batch, and the groups run concurrently.
+	 */
+	public CompletableFuture<Void> executeAtomicAsync(Collection<? extends List<? extends Statement>> statementGroups) {
+		Session session = listsDatabaseSessionFactory.getSession();
+		List<Statement> batches = new ArrayList<Statement>();
+
+		if (statementGroups != null) {
+			for (List<? extends Statement> statementGroup : statementGroups) {
+				if (statementGroup.size() == 1) {
+					batches.add(statementGroup.get(0));
+				}
+				else if (statementGroup.size() > 1) {
+					BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.LOGGED);
+					batchStatement.addAll(statementGroup);
+					batches.add(copyExecutionProfile(statementGroup.get(0), batchStatement));
+				}
+			}
+		}
+
+		return executeAllAsync(session, batches);
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	/**
+	 * Groups the statements by keyspace and partition key, then splits each
+	 * group into unlogged batches of at most max-batch-statements. A group
+	 * of one statement is sent without a batch.
+	 */
+	private List<Statement> getPartitionBatches(Session session, List<? extends Statement> statements) {
+		Configuration configuration = session.getCluster().getConfiguration();
+		ProtocolVersion protocolVersion = configuration.getProtocolOptions().getProtocolVersion();
+		CodecRegistry codecRegistry = configuration.getCodecRegistry();
+		int maxBatchStatements = listsDatabaseProperties.getMaxBatchStatements();
+
+		// Group the statements by partition (and consistency level). The
+		// routing key is the serialized partition key. A statement without
+		// one is put in its own group.
+		Map<Object, List<Statement>> statementsByPartition = new LinkedHashMap<Object, List<Statement>>();
+		for (Statement statement : statements) {
+			ByteBuffer routingKey = statement.getRoutingKey(protocolVersion, codecRegistry);
+			Object partition = (routingKey != null) ? Arrays.asList(statement.getKeyspace(), routingKey, statement.getConsistencyLevel()) : statement;
+
+			List<Statement> partitionStatements = statementsByPartition.get(partition);
+			if (partitionStatements == null) {
+				partitionStatements = new ArrayList<Statement>();
+				statementsByPartition.put(partition, partitionStatements);
+			}
+			partitionStatements.add(statement);
+		}
+
+		// Split each group into size-bounded batches.
+		List<Statement> batches = new ArrayList<Statement>();
+		for (List<Statement> partitionStatements : statementsByPartition.values()) {
+			for (int from = 0; from < partitionStatements.size(); from += maxBatchStatements) {
+				List<Statement> chunk = partitionStatements.subList(from, Math.min(from + maxBatchStatements, partitionStatements.size()));
+
+				if (chunk.size() == 1) {
+					batches.add(chunk.get(0));
+				}
+				else {
+					BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.UNLOGGED);
+					batchStatement.addAll(chunk);
+					batches.add(copyExecutionProfile(chunk.get(0), batchStatement));
+				}
+			}
+		}
+
+		return batches;
+	}
+
+	/**
+	 * Sets the batch's consistency levels and read timeout to the statement's.
+	 */
+	private static BatchStatement copyExecutionProfile(Statement statement, BatchStatement batchStatement) {
+		batchStatement.setConsistencyLevel(statement.getConsistencyLevel());
+		if (statement.getSerialConsistencyLevel() != null) {
+			batchStatement.setSerialConsistencyLevel(statement.getSerialConsistencyLevel());
+		}
+		if (statement.getReadTimeoutMillis() >= 0) {
+			batchStatement.setReadTimeoutMillis(statement.getReadTimeoutMillis());
+		}
+
+		return batchStatement;
+	}
+
+	private CompletableFuture<Void> executeAllAsync(Session session, List<Statement> statements) {
+		return FutureUtils.allBounded(statements, listsDatabaseProperties.getMaxInFlightWrites(),
+			statement -> FutureUtils.toCompletableFuture(session.executeAsync(statement)))
+			.thenApply(resultSets -> null);
+	}
+}
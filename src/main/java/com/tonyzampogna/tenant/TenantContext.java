@@ -0,0 +1,92 @@
+package com.tonyzampogna.tenant;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The tenant the current thread is working for. Each tenant has its own
+ * keyspace, Cassandra session and prepared statements.
+ *
+ * The tenant is set for each request by the TenantResolver. The driver
+ * calls back on its own threads, so FutureUtils sets the tenant that made
+ * the call while it runs the callback (and everything chained on to it).
+ * A thread with no tenant set works for the default tenant.
+ */
+public final class TenantContext {
+
+	public static final String DEFAULT_TENANT = "default";
+
+	private static final ThreadLocal<String> CURRENT_TENANT = new ThreadLocal<String>();
+
+	// Every tenant that has been worked for, so the caches can
+	// invalidate a key for all of them.
+	private static final Set<String> TENANTS = ConcurrentHashMap.newKeySet();
+
+	static {
+		TENANTS.add(DEFAULT_TENANT);
+	}
+
+
+	private TenantContext() {
+	}
+
+	/**
+	 * Returns the current tenant (or the default tenant, if none is set).
+	 */
+	public static String get() {
+		String tenant = CURRENT_TENANT.get();
+		return (tenant != null) ? tenant : DEFAULT_TENANT;
+	}
+
+	public static boolean isDefault() {
+		return DEFAULT_TENANT.equals(get());
+	}
+
+	public static void set(String tenant) {
+		if (tenant == null) {
+			CURRENT_TENANT.remove();
+			return;
+		}
+
+		TENANTS.add(tenant);
+		CURRENT_TENANT.set(tenant);
+	}
+
+	public static void clear() {
+		CURRENT_TENANT.remove();
+	}
+
+	/**
+	 * Returns every tenant that has been worked for.
+	 */
+	public static Set<String> getTenants() {
+		return Collections.unmodifiableSet(TENANTS);
+	}
+
+	/**
+	 * Runs the task for the tenant, then puts back the tenant that was set.
+	 */
+	public static void runAs(String tenant, Runnable task) {
+		callAs(tenant, () -> {
+			task.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Calls the task for the tenant, then puts back the tenant that was set.
+	 */
+	public static <T> T callAs(String tenant, Supplier<T> task) {
+		String previousTenant = CURRENT_TENANT.get();
+		set(tenant);
+
+		try {
+			return task.get();
+		}
+		finally {
+			set(previousTenant);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.tonyzampogna.tenant;
+
+import com.tonyzampogna.config.ListsDatabaseProperties;
+import com.tonyzampogna.config.ListsWebProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * Sets the tenant for each request, from the tenant header (X-Lists-Tenant
+ * by default). A request without the header is for the default tenant. A
+ * request for a tenant that is not in lists.database.tenants gets a 400.
+ *
+ * The tenant is cleared when the request thread is done with the request
+ * (or hands it off, for an asynchronous request).
+ */
+@Component
+public class TenantResolver extends HandlerInterceptorAdapter {
+	private static final Logger log = LoggerFactory.getLogger(TenantResolver.class);
+
+	private final String tenantHeader;
+	private final Set<String> tenants;
+
+
+	@Autowired
+	public TenantResolver(ListsWebProperties listsWebProperties, ListsDatabaseProperties listsDatabaseProperties) {
+		this.tenantHeader = listsWebProperties.getTenantHeader();
+		this.tenants = listsDatabaseProperties.getAllTenants();
+
+		log.info("Resolving the tenant for each request. Header: " + tenantHeader + ". Tenants: " + tenants);
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+		String tenant = request.getHeader(tenantHeader);
+
+		if (!StringUtils.hasText(tenant)) {
+			TenantContext.set(TenantContext.DEFAULT_TENANT);
+			return true;
+		}
+
+		tenant = tenant.trim();
+		if (!tenants.contains(tenant)) {
+			log.warn("Rejecting a request for an unknown tenant. Tenant: " + tenant + ". URI: " + request.getRequestURI());
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown tenant: " + tenant);
+			return false;
+		}
+
+		TenantContext.set(tenant);
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+		TenantContext.clear();
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+		TenantContext.clear();
+	}
+}
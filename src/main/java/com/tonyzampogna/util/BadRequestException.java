@@ -0,0 +1,22 @@
+package com.tonyzampogna.util;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a request parameter from the client is not valid (such as
+ * a tampered cursor, or a limit below one). It is returned as a 400,
+ * instead of the 500 of any other exception.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BadRequestException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public BadRequestException(String message) {
+		super(message);
+	}
+
+	public BadRequestException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
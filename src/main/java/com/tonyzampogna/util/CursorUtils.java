@@ -0,0 +1,49 @@
+package com.tonyzampogna.util;
+
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.PagingStateException;
+import org.springframework.util.StringUtils;
+
+/**
+ * Helpers for the cursors used by the paged reads.
+ *
+ * A cursor is the driver's PagingState as a string. It is opaque to the
+ * client, and the driver rejects a cursor that was made for a different
+ * query (or different bound values). A cursor that cannot be used is
+ * a client error (a 400).
+ */
+public final class CursorUtils {
+
+	private CursorUtils() {
+	}
+
+
+	/**
+	 * Start the statement from the cursor, if there is one. The statement
+	 * must already have its values bound.
+	 */
+	public static void setCursor(Statement statement, String cursor) {
+		if (StringUtils.isEmpty(cursor)) {
+			return;
+		}
+
+		try {
+			statement.setPagingState(PagingState.fromString(cursor));
+		}
+		catch (PagingStateException | IllegalArgumentException e) {
+			throw new BadRequestException("The cursor is not valid for this request. Cursor: " + cursor, e);
+		}
+	}
+
+	/**
+	 * Return the cursor for the page after the one that was fetched,
+	 * or null if there are no more pages.
+	 */
+	public static String getNextCursor(ResultSet resultSet) {
+		PagingState pagingState = resultSet.getExecutionInfo().getPagingState();
+
+		return (pagingState != null) ? pagingState.toString() : null;
+	}
+}
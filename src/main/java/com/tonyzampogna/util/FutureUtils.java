@@ -0,0 +1,308 @@
+package com.tonyzampogna.util;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.tonyzampogna.domain.PageModel;
+import com.tonyzampogna.tenant.TenantContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Helpers for chaining the asynchronous Cassandra driver calls
+ * with CompletableFutures.
+ *
+ * None of the methods in here block, except for getUninterruptibly(),
+ * which is what the synchronous service methods use to wait on the
+ * asynchronous ones, and forEachPage(), which is used for streaming.
+ */
+public final class FutureUtils {
+
+	private FutureUtils() {
+	}
+
+
+	/**
+	 * Adapt a driver (Guava) ListenableFuture to a CompletableFuture.
+	 *
+	 * The driver completes the future on one of its own threads, which runs
+	 * the work chained on to it. That work is run for the tenant that made
+	 * the call (see TenantContext), so it uses the same tenant's session.
+	 */
+	public static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> listenableFuture) {
+		final CompletableFuture<T> completableFuture = new CompletableFuture<T>();
+		final String tenant = TenantContext.get();
+
+		Futures.addCallback(listenableFuture, new FutureCallback<T>() {
+			@Override
+			public void onSuccess(T result) {
+				TenantContext.runAs(tenant, () -> completableFuture.complete(result));
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				TenantContext.runAs(tenant, () -> completableFuture.completeExceptionally(t));
+			}
+		});
+
+		return completableFuture;
+	}
+
+	/**
+	 * Transform the first row of the result set, or return null
+	 * if the result set is empty.
+	 */
+	public static <T> CompletableFuture<T> transformOneRow(ListenableFuture<ResultSet> resultSetFuture, Function<Row, T> transformer) {
+		return toCompletableFuture(resultSetFuture).thenApply(resultSet -> {
+			Row row = resultSet.one();
+			return (row != null) ? transformer.apply(row) : null;
+		});
+	}
+
+	/**
+	 * Transform every row of the result set. The rows that are already
+	 * fetched are transformed first, then the next page is requested and
+	 * the rest of the work is chained on to it, so no thread waits for a
+	 * page to come back. Rows the transformer returns null for are skipped.
+	 */
+	public static <T> CompletableFuture<List<T>> transformAllRows(ListenableFuture<ResultSet> resultSetFuture, Function<Row, T> transformer) {
+		CompletableFuture<List<T>> promise = new CompletableFuture<List<T>>();
+
+		toCompletableFuture(resultSetFuture).whenComplete((resultSet, t) -> {
+			if (t != null) {
+				promise.completeExceptionally(t);
+			}
+			else {
+				transformPages(resultSet, transformer, new ArrayList<T>(), promise);
+			}
+		});
+
+		return promise;
+	}
+
+	/**
+	 * Transform one page of the result set (the rows fetched by the first
+	 * request, so the statement's fetch size is the page size). Further
+	 * pages are not fetched. The page's nextCursor is set if there are
+	 * more rows. Rows the transformer returns null for are skipped.
+	 */
+	public static <T> CompletableFuture<PageModel<T>> transformPage(ListenableFuture<ResultSet> resultSetFuture, Function<Row, T> transformer) {
+		return toCompletableFuture(resultSetFuture).thenApply(resultSet -> {
+			List<T> results = new ArrayList<T>();
+
+			int available = resultSet.getAvailableWithoutFetching();
+			for (int count = 0; count < available; count++) {
+				T result = transformer.apply(resultSet.one());
+				if (result != null) {
+					results.add(result);
+				}
+			}
+
+			PageModel<T> pageModel = new PageModel<T>();
+			pageModel.setModels(results);
+			pageModel.setNextCursor(CursorUtils.getNextCursor(resultSet));
+
+			return pageModel;
+		});
+	}
+
+	/**
+	 * Transform the result set one page at a time, and hand each page to
+	 * the consumer as soon as it arrives. The next page is requested before
+	 * the consumer is called, so it is fetched while the current page is
+	 * being written. Only about two pages are held in memory at once.
+	 *
+	 * This blocks the calling thread until the last page is consumed.
+	 */
+	public static <T> void forEachPage(ListenableFuture<ResultSet> resultSetFuture, Function<Row, T> transformer, Consumer<List<T>> consumer) {
+		ResultSet resultSet = getUninterruptibly(toCompletableFuture(resultSetFuture));
+
+		while (true) {
+			int available = resultSet.getAvailableWithoutFetching();
+			ListenableFuture<ResultSet> nextPage = resultSet.isFullyFetched() ? null : resultSet.fetchMoreResults();
+
+			List<T> results = new ArrayList<T>(available);
+			for (int count = 0; count < available; count++) {
+				T result = transformer.apply(resultSet.one());
+				if (result != null) {
+					results.add(result);
+				}
+			}
+			consumer.accept(results);
+
+			if (nextPage == null) {
+				return;
+			}
+			getUninterruptibly(toCompletableFuture(nextPage));
+		}
+	}
+
+	/**
+	 * Run the loader for every distinct key, with no more than maxInFlight
+	 * loads outstanding at once. The next load starts when one finishes,
+	 * rather than by blocking a thread on a permit. The results are
+	 * returned in the order of the keys.
+	 */
+	public static <K, V> CompletableFuture<Map<K, V>> allBounded(Collection<K> keys, int maxInFlight, Function<K, CompletableFuture<V>> loader) {
+		List<K> distinctKeys = new ArrayList<K>(new LinkedHashSet<K>(keys));
+		List<V> values = new ArrayList<V>(distinctKeys.size());
+		for (int count = 0; count < distinctKeys.size(); count++) {
+			values.add(null);
+		}
+
+		CompletableFuture<Map<K, V>> promise = new CompletableFuture<Map<K, V>>();
+		if (distinctKeys.isEmpty()) {
+			promise.complete(new LinkedHashMap<K, V>());
+			return promise;
+		}
+
+		AtomicInteger nextIndex = new AtomicInteger(0);
+		AtomicInteger remaining = new AtomicInteger(distinctKeys.size());
+		int workers = Math.max(1, Math.min(maxInFlight, distinctKeys.size()));
+		for (int count = 0; count < workers; count++) {
+			loadNext(distinctKeys, values, loader, nextIndex, remaining, promise);
+		}
+
+		return promise;
+	}
+
+	/**
+	 * Wait for the future, and throw the cause of a failure without the
+	 * ExecutionException wrapper. Used by the synchronous service methods.
+	 */
+	public static <T> T getUninterruptibly(CompletableFuture<T> future) {
+		try {
+			return Uninterruptibles.getUninterruptibly(future);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+
+	/////////////////////////////////////////////////
+	// Helper Methods
+	/////////////////////////////////////////////////
+
+	private static <T> void transformPages(ResultSet resultSet, Function<Row, T> transformer, List<T> results, CompletableFuture<List<T>> promise) {
+		try {
+			int available = resultSet.getAvailableWithoutFetching();
+			for (int count = 0; count < available; count++) {
+				Row row = resultSet.one();
+				T result = (row != null) ? transformer.apply(row) : null;
+				if (result != null) {
+					results.add(result);
+				}
+			}
+
+			if (resultSet.isFullyFetched()) {
+				promise.complete(results);
+			}
+			else {
+				toCompletableFuture(resultSet.fetchMoreResults()).whenComplete((nextPage, t) -> {
+					if (t != null) {
+						promise.completeExceptionally(t);
+					}
+					else {
+						transformPages(resultSet, transformer, results, promise);
+					}
+				});
+			}
+		}
+		catch (Throwable t) {
+			promise.completeExceptionally(t);
+		}
+	}
+
+	private static <K, V> void loadNext(List<K> keys, List<V> values, Function<K, CompletableFuture<V>> loader,
+			AtomicInteger nextIndex, AtomicInteger remaining, CompletableFuture<Map<K, V>> promise) {
+
+		// Loop while the loads complete straight away (for example, from
+		// a cache), so that a long run of them does not grow the stack.
+		while (true) {
+			int index = nextIndex.getAndIncrement();
+			if (index >= keys.size() || promise.isDone()) {
+				return;
+			}
+
+			CompletableFuture<V> future;
+			try {
+				future = loader.apply(keys.get(index));
+			}
+			catch (Throwable t) {
+				promise.completeExceptionally(t);
+				return;
+			}
+
+			if (!future.isDone()) {
+				future.whenComplete((value, t) -> {
+					if (onLoaded(keys, values, index, value, t, remaining, promise)) {
+						loadNext(keys, values, loader, nextIndex, remaining, promise);
+					}
+				});
+				return;
+			}
+
+			V value = null;
+			Throwable failure = null;
+			try {
+				value = future.join();
+			}
+			catch (Throwable t) {
+				failure = (t.getCause() != null) ? t.getCause() : t;
+			}
+			if (!onLoaded(keys, values, index, value, failure, remaining, promise)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Record one loaded value. Returns true if there is more to load.
+	 */
+	private static <K, V> boolean onLoaded(List<K> keys, List<V> values, int index, V value, Throwable t,
+			AtomicInteger remaining, CompletableFuture<Map<K, V>> promise) {
+
+		if (t != null) {
+			promise.completeExceptionally(t);
+			return false;
+		}
+
+		synchronized (values) {
+			values.set(index, value);
+		}
+
+		if (remaining.decrementAndGet() == 0) {
+			Map<K, V> results = new LinkedHashMap<K, V>();
+			synchronized (values) {
+				for (int count = 0; count < keys.size(); count++) {
+					results.put(keys.get(count), values.get(count));
+				}
+			}
+			promise.complete(results);
+			return false;
+		}
+
+		return true;
+	}
+}
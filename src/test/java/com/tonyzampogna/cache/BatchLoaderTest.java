@@ -0,0 +1,95 @@
+package com.tonyzampogna.cache;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.tonyzampogna.tenant.TenantContext;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for BatchLoader.
+ */
+public class BatchLoaderTest extends TestCase {
+
+	private final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+
+	private CompletableFuture<Map<Integer, String>> loadBatch(List<Integer> keys) {
+		synchronized (batches) {
+			batches.add(keys);
+		}
+
+		Map<Integer, String> values = new LinkedHashMap<Integer, String>();
+		for (Integer key : keys) {
+			if (key > 0) {
+				values.put(key, "value-" + key);
+			}
+		}
+		return CompletableFuture.completedFuture(values);
+	}
+
+	public void testKeysInTheWindowAreLoadedTogether() {
+		BatchLoader<Integer, String> batchLoader = new BatchLoader<Integer, String>("test", 50000, 100, this::loadBatch);
+
+		CompletableFuture<String> first = batchLoader.load(1);
+		CompletableFuture<String> second = batchLoader.load(2);
+		CompletableFuture<String> missing = batchLoader.load(-1);
+
+		assertEquals("value-1", first.join());
+		assertEquals("value-2", second.join());
+		assertNull(missing.join());
+		assertEquals(1, batches.size());
+		assertEquals(3, batches.get(0).size());
+	}
+
+	public void testFullBatchIsSentWithoutWaiting() {
+		BatchLoader<Integer, String> batchLoader = new BatchLoader<Integer, String>("test", 60000000, 2, this::loadBatch);
+
+		batchLoader.load(1);
+		CompletableFuture<String> second = batchLoader.load(2);
+
+		assertTrue(second.isDone());
+		assertEquals("value-2", second.join());
+	}
+
+	public void testEachTenantIsLoadedOnItsOwn() {
+		List<String> batchTenants = new ArrayList<String>();
+		BatchLoader<Integer, String> batchLoader = new BatchLoader<Integer, String>("test", 50000, 100, keys -> {
+			batchTenants.add(TenantContext.get());
+			return loadBatch(keys);
+		});
+
+		CompletableFuture<String> first = batchLoader.load(1);
+		CompletableFuture<String> other = TenantContext.callAs("other", () -> batchLoader.load(1));
+
+		assertEquals("value-1", first.join());
+		assertEquals("value-1", other.join());
+		assertEquals(2, batches.size());
+		assertTrue(batchTenants.contains(TenantContext.DEFAULT_TENANT));
+		assertTrue(batchTenants.contains("other"));
+	}
+
+	public void testBlockedBatchFunctionDoesNotHoldUpOtherLoaders() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		BatchLoader<Integer, String> blockedLoader = new BatchLoader<Integer, String>("blocked", 1000, 100, keys -> {
+			Uninterruptibles.awaitUninterruptibly(release);
+			return CompletableFuture.completedFuture(new LinkedHashMap<Integer, String>());
+		});
+		BatchLoader<Integer, String> batchLoader = new BatchLoader<Integer, String>("test", 1000, 100, this::loadBatch);
+
+		try {
+			blockedLoader.load(1);
+			Thread.sleep(50);
+
+			assertEquals("value-2", batchLoader.load(2).get(5, TimeUnit.SECONDS));
+		}
+		finally {
+			release.countDown();
+		}
+	}
+}
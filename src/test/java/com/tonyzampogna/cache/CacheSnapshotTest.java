@@ -0,0 +1,70 @@
+package com.tonyzampogna.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tonyzampogna.util.FutureUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unit tests for CacheSnapshot.
+ */
+public class CacheSnapshotTest extends TestCase {
+
+	private File snapshotFile = null;
+
+
+	@Override
+	protected void setUp() throws Exception {
+		snapshotFile = File.createTempFile("cache-snapshot", ".snapshot");
+	}
+
+	@Override
+	protected void tearDown() {
+		snapshotFile.delete();
+	}
+
+	public void testRestoresWrittenModels() {
+		StaleModelCache<String, String> cache = new StaleModelCache<String, String>("test", 10, 60, 60);
+		cache.get("a", key -> CompletableFuture.completedFuture("model-a"));
+		cache.get("b", key -> CompletableFuture.completedFuture("model-b"));
+
+		CacheSnapshot cacheSnapshot = new CacheSnapshot(snapshotFile.getPath(), 300, new ObjectMapper());
+		cacheSnapshot.register(cache, key -> key, String.class);
+		cacheSnapshot.write();
+
+		StaleModelCache<String, String> restoredCache = new StaleModelCache<String, String>("test", 10, 60, 60);
+		CacheSnapshot restoredSnapshot = new CacheSnapshot(snapshotFile.getPath(), 300, new ObjectMapper());
+		restoredSnapshot.register(restoredCache, key -> key, String.class);
+
+		assertEquals(2, restoredSnapshot.restore());
+		CachedModel<String> cachedModel = FutureUtils.getUninterruptibly(
+			restoredCache.get("a", key -> CompletableFuture.completedFuture("loaded")));
+		assertEquals("model-a", cachedModel.getModel());
+	}
+
+	public void testStopsAtCorruptRecord() throws Exception {
+		StaleModelCache<String, String> cache = new StaleModelCache<String, String>("test", 10, 60, 60);
+		cache.get("a", key -> CompletableFuture.completedFuture("model-a"));
+
+		CacheSnapshot cacheSnapshot = new CacheSnapshot(snapshotFile.getPath(), 300, new ObjectMapper());
+		cacheSnapshot.register(cache, key -> key, String.class);
+		cacheSnapshot.write();
+
+		// Flip a byte in the model.
+		try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+			file.seek(file.length() - 10);
+			int value = file.read();
+			file.seek(file.length() - 10);
+			file.write(value ^ 0xFF);
+		}
+
+		StaleModelCache<String, String> restoredCache = new StaleModelCache<String, String>("test", 10, 60, 60);
+		CacheSnapshot restoredSnapshot = new CacheSnapshot(snapshotFile.getPath(), 300, new ObjectMapper());
+		restoredSnapshot.register(restoredCache, key -> key, String.class);
+
+		assertEquals(0, restoredSnapshot.restore());
+	}
+}
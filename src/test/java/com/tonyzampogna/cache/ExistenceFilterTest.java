@@ -0,0 +1,45 @@
+package com.tonyzampogna.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ExistenceFilter.
+ */
+public class ExistenceFilterTest extends TestCase {
+
+	public void testEveryKeyMightExistUntilSeeded() {
+		ExistenceFilter existenceFilter = new ExistenceFilter("test", 100, 0.01);
+		existenceFilter.put("alice");
+
+		assertTrue(existenceFilter.mightContain("bob"));
+		assertEquals(false, existenceFilter.getStats().get("ready"));
+	}
+
+	public void testMissingKeyIsDefiniteMissAfterRebuild() {
+		ExistenceFilter existenceFilter = new ExistenceFilter("test", 100, 0.01);
+		existenceFilter.startRebuild();
+		existenceFilter.putForRebuild("alice");
+		existenceFilter.finishRebuild();
+
+		assertTrue(existenceFilter.mightContain("alice"));
+		assertFalse(existenceFilter.mightContain("bob"));
+		assertEquals(1L, existenceFilter.getStats().get("definiteMissCount"));
+	}
+
+	public void testKeysPutDuringRebuildAreKept() {
+		ExistenceFilter existenceFilter = new ExistenceFilter("test", 100, 0.01);
+		existenceFilter.startRebuild();
+		existenceFilter.putForRebuild("alice");
+		existenceFilter.put("bob");
+		existenceFilter.finishRebuild();
+
+		assertTrue(existenceFilter.mightContain("bob"));
+
+		// A key dropped from the scan is dropped from the filter.
+		existenceFilter.startRebuild();
+		existenceFilter.putForRebuild("bob");
+		existenceFilter.finishRebuild();
+
+		assertFalse(existenceFilter.mightContain("alice"));
+	}
+}
@@ -0,0 +1,73 @@
+package com.tonyzampogna.cache;
+
+import junit.framework.TestCase;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Unit tests for InvalidationBus.
+ */
+public class InvalidationBusTest extends TestCase {
+
+	public void testCoalescesPublishedKeysIntoOneBatch() {
+		List<List<String>> batches = new ArrayList<List<String>>();
+		InvalidationBus invalidationBus = new InvalidationBus(60000, 100);
+		invalidationBus.setTransport(new InvalidationTransport() {
+			@Override
+			public void start(Consumer<List<String>> receiver) {
+			}
+
+			@Override
+			public void send(List<String> messages) {
+				batches.add(messages);
+			}
+
+			@Override
+			public void stop() {
+			}
+		});
+
+		invalidationBus.publish(InvalidationBus.LIST_TOPIC, "a");
+		invalidationBus.publish(InvalidationBus.LIST_TOPIC, "b");
+		invalidationBus.publish(InvalidationBus.LIST_TOPIC, "a");
+		invalidationBus.flush();
+
+		assertEquals(1, batches.size());
+		assertEquals(Arrays.asList("lists\ta", "lists\tb"), batches.get(0).subList(1, 3));
+		assertEquals(1L, invalidationBus.getStats().get("coalescedCount"));
+	}
+
+	public void testDeliversKeysToSubscribersOverUdp() throws Exception {
+		List<String> received = new CopyOnWriteArrayList<String>();
+		CountDownLatch latch = new CountDownLatch(2);
+
+		UdpInvalidationTransport receiverTransport = new UdpInvalidationTransport(0, Collections.<InetSocketAddress>emptyList());
+		InvalidationBus receiverBus = new InvalidationBus(1, 100);
+		receiverBus.setTransport(receiverTransport);
+		receiverBus.subscribe(InvalidationBus.USER_TOPIC, key -> {
+			received.add(key);
+			latch.countDown();
+		});
+
+		InvalidationBus senderBus = new InvalidationBus(1, 100);
+		senderBus.setTransport(new UdpInvalidationTransport(0,
+			Arrays.asList(new InetSocketAddress("localhost", receiverTransport.getLocalPort()))));
+
+		senderBus.publish(InvalidationBus.USER_TOPIC, "u1");
+		senderBus.publish(InvalidationBus.USER_TOPIC, "u2");
+
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("u1", "u2"), received);
+
+		senderBus.stop();
+		receiverBus.stop();
+	}
+}
@@ -0,0 +1,58 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.tenant.TenantContext;
+import com.tonyzampogna.util.FutureUtils;
+import junit.framework.TestCase;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for ModelCache.
+ */
+public class ModelCacheTest extends TestCase {
+
+	public void testLoadsOnceAndCountsHits() {
+		ModelCache<Integer, String> modelCache = new ModelCache<Integer, String>("test", 10, 60);
+		AtomicInteger loads = new AtomicInteger();
+
+		for (int count = 0; count < 3; count++) {
+			String value = FutureUtils.getUninterruptibly(modelCache.get(1, key -> {
+				loads.incrementAndGet();
+				return CompletableFuture.completedFuture("value-" + key);
+			}));
+			assertEquals("value-1", value);
+		}
+
+		assertEquals(1, loads.get());
+		assertEquals(2L, modelCache.getStats().get("hitCount"));
+		assertEquals(1L, modelCache.getStats().get("loadSuccessCount"));
+	}
+
+	public void testLoadStartedBeforeInvalidationIsNotCached() {
+		ModelCache<Integer, String> modelCache = new ModelCache<Integer, String>("test", 10, 60);
+		CompletableFuture<String> load = new CompletableFuture<String>();
+
+		modelCache.get(1, key -> load);
+		modelCache.invalidate(1);
+		load.complete("old");
+
+		String value = FutureUtils.getUninterruptibly(modelCache.get(1, key -> CompletableFuture.completedFuture("new")));
+		assertEquals("new", value);
+	}
+
+	public void testTenantsAreKeptApart() {
+		ModelCache<Integer, String> modelCache = new ModelCache<Integer, String>("test", 10, 60);
+
+		FutureUtils.getUninterruptibly(modelCache.get(1, key -> CompletableFuture.completedFuture("default-" + key)));
+		String value = TenantContext.callAs("other", () ->
+			FutureUtils.getUninterruptibly(modelCache.get(1, key -> CompletableFuture.completedFuture("other-" + key))));
+		assertEquals("other-1", value);
+
+		// An invalidation drops the key for every tenant.
+		modelCache.invalidate(1);
+		value = TenantContext.callAs("other", () ->
+			FutureUtils.getUninterruptibly(modelCache.get(1, key -> CompletableFuture.completedFuture("reloaded-" + key))));
+		assertEquals("reloaded-1", value);
+	}
+}
@@ -0,0 +1,64 @@
+package com.tonyzampogna.cache;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for ResponseCache.
+ */
+public class ResponseCacheTest extends TestCase {
+
+	public void testReturnsCachedBytes() {
+		ResponseCache<String> responseCache = new ResponseCache<String>("test", 1024);
+		responseCache.put("a", "{\"a\":1}".getBytes(StandardCharsets.UTF_8), responseCache.getGeneration());
+
+		ByteBuffer body = responseCache.get("a").getBody();
+		byte[] bytes = new byte[body.remaining()];
+		body.get(bytes);
+
+		assertEquals("{\"a\":1}", new String(bytes, StandardCharsets.UTF_8));
+		assertTrue(responseCache.get("a").getGzipBody().remaining() > 0);
+	}
+
+	public void testEvictsLeastRecentlyUsedWhenFull() {
+		byte[] body = new byte[200];
+		ResponseCache<String> responseCache = new ResponseCache<String>("test", 400);
+
+		responseCache.put("a", body, responseCache.getGeneration());
+		responseCache.put("b", body, responseCache.getGeneration());
+
+		assertNull(responseCache.get("a"));
+		assertNotNull(responseCache.get("b"));
+	}
+
+	public void testResponseLoadedBeforeInvalidationIsNotCached() {
+		ResponseCache<String> responseCache = new ResponseCache<String>("test", 1024);
+		long generation = responseCache.getGeneration();
+
+		responseCache.invalidate("a");
+		responseCache.put("a", new byte[10], generation);
+
+		assertNull(responseCache.get("a"));
+	}
+
+	public void testInvalidatingAnotherKeyDoesNotBlockPut() {
+		ResponseCache<String> responseCache = new ResponseCache<String>("test", 1024);
+		long generation = responseCache.getGeneration();
+
+		responseCache.invalidate("b");
+		responseCache.put("a", new byte[10], generation);
+
+		assertNotNull(responseCache.get("a"));
+	}
+
+	public void testKeepsETagWithResponse() {
+		ResponseCache<String> responseCache = new ResponseCache<String>("test", 1024);
+		responseCache.put("a", new byte[10], "\"v1-1\"", responseCache.getGeneration());
+		responseCache.put("b", new byte[10], responseCache.getGeneration());
+
+		assertEquals("\"v1-1\"", responseCache.get("a").getETag());
+		assertNull(responseCache.get("b").getETag());
+	}
+}
@@ -0,0 +1,54 @@
+package com.tonyzampogna.cache;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for SingleFlight.
+ */
+public class SingleFlightTest extends TestCase {
+
+	public void testConcurrentCallersShareOneLoad() {
+		SingleFlight<String, String> singleFlight = new SingleFlight<String, String>("test");
+		CompletableFuture<String> load = new CompletableFuture<String>();
+		AtomicInteger loads = new AtomicInteger();
+
+		CompletableFuture<String> first = singleFlight.get("a", key -> {
+			loads.incrementAndGet();
+			return load;
+		});
+		CompletableFuture<String> second = singleFlight.get("a", key -> {
+			loads.incrementAndGet();
+			return CompletableFuture.completedFuture("other");
+		});
+		load.complete("value");
+
+		assertEquals(1, loads.get());
+		assertEquals("value", first.join());
+		assertEquals("value", second.join());
+	}
+
+	public void testNextCallerAfterLoadStartsANewLoad() {
+		SingleFlight<String, String> singleFlight = new SingleFlight<String, String>("test");
+		AtomicInteger loads = new AtomicInteger();
+
+		singleFlight.get("a", key -> CompletableFuture.completedFuture("value-" + loads.incrementAndGet())).join();
+		String value = singleFlight.get("a", key -> CompletableFuture.completedFuture("value-" + loads.incrementAndGet())).join();
+
+		assertEquals("value-2", value);
+	}
+
+	public void testForgottenLoadIsNotShared() {
+		SingleFlight<String, String> singleFlight = new SingleFlight<String, String>("test");
+		CompletableFuture<String> load = new CompletableFuture<String>();
+
+		singleFlight.get("a-1", key -> load);
+		singleFlight.get("b-1", key -> load);
+		singleFlight.forgetIf(key -> key.startsWith("a-"));
+
+		assertEquals("new", singleFlight.get("a-1", key -> CompletableFuture.completedFuture("new")).join());
+		assertFalse(singleFlight.get("b-1", key -> CompletableFuture.completedFuture("new")).isDone());
+	}
+}
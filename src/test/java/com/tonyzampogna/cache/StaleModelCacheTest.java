@@ -0,0 +1,80 @@
+package com.tonyzampogna.cache;
+
+import com.tonyzampogna.util.FutureUtils;
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for StaleModelCache.
+ */
+public class StaleModelCacheTest extends TestCase {
+
+	public void testServesStaleAndRefreshesInBackground() {
+		AtomicLong now = new AtomicLong(0);
+		StaleModelCache<Integer, String> staleModelCache = new StaleModelCache<Integer, String>("test", 10, 10, 60, now::get);
+		AtomicInteger loads = new AtomicInteger();
+
+		staleModelCache.get(1, key -> CompletableFuture.completedFuture("value-" + loads.incrementAndGet()));
+		now.set(15000);
+
+		CachedModel<String> cachedModel = FutureUtils.getUninterruptibly(
+			staleModelCache.get(1, key -> CompletableFuture.completedFuture("value-" + loads.incrementAndGet())));
+		assertEquals("value-1", cachedModel.getModel());
+		assertEquals(5000, cachedModel.getStaleMillis());
+
+		cachedModel = FutureUtils.getUninterruptibly(
+			staleModelCache.get(1, key -> CompletableFuture.completedFuture("value-" + loads.incrementAndGet())));
+		assertEquals("value-2", cachedModel.getModel());
+		assertFalse(cachedModel.isStale());
+	}
+
+	public void testServesLastGoodModelWhenRefreshFails() {
+		AtomicLong now = new AtomicLong(0);
+		StaleModelCache<Integer, String> staleModelCache = new StaleModelCache<Integer, String>("test", 10, 10, 60, now::get);
+		CompletableFuture<String> failedLoad = new CompletableFuture<String>();
+		failedLoad.completeExceptionally(new RuntimeException("timeout"));
+
+		staleModelCache.get(1, key -> CompletableFuture.completedFuture("good"));
+		now.set(20000);
+
+		for (int count = 0; count < 2; count++) {
+			CachedModel<String> cachedModel = FutureUtils.getUninterruptibly(staleModelCache.get(1, key -> failedLoad));
+			assertEquals("good", cachedModel.getModel());
+		}
+		assertEquals(2L, staleModelCache.getStats().get("refreshFailureCount"));
+
+		// Past the maximum staleness, the read has to go to the loader.
+		now.set(71000);
+		CachedModel<String> cachedModel = FutureUtils.getUninterruptibly(
+			staleModelCache.get(1, key -> CompletableFuture.completedFuture("new")));
+		assertEquals("new", cachedModel.getModel());
+	}
+
+	public void testRestoreSkipsOnlyInvalidatedKeys() {
+		AtomicLong now = new AtomicLong(100000);
+		StaleModelCache<Integer, String> staleModelCache = new StaleModelCache<Integer, String>("test", 10, 10, 60, now::get);
+
+		staleModelCache.invalidate(1);
+		assertFalse(staleModelCache.restore(1, "old", 95000));
+		assertTrue(staleModelCache.restore(2, "old", 95000));
+
+		staleModelCache.invalidateAll();
+		assertFalse(staleModelCache.restore(3, "old", 95000));
+	}
+
+	public void testReportsTheModelCacheStats() {
+		StaleModelCache<Integer, String> staleModelCache = new StaleModelCache<Integer, String>("test", 1, 10, 60);
+
+		staleModelCache.get(1, key -> CompletableFuture.completedFuture("one"));
+		staleModelCache.get(2, key -> CompletableFuture.completedFuture("two"));
+
+		Map<String, Object> stats = staleModelCache.getStats();
+		assertTrue(stats.keySet().containsAll(new ModelCache<Integer, String>("test", 1, 10).getStats().keySet()));
+		assertEquals(1L, stats.get("evictionCount"));
+		assertEquals(2L, stats.get("loadSuccessCount"));
+	}
+}
@@ -0,0 +1,73 @@
+package com.tonyzampogna.controller;
+
+import com.datastax.driver.core.Session;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tonyzampogna.factory.ListsDatabaseSessionFactory;
+import com.tonyzampogna.tenant.TenantContext;
+import junit.framework.TestCase;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for BaseController.
+ */
+public class BaseControllerTest extends TestCase {
+
+	public void testStreamIsReadForTheRequestTenant() throws Exception {
+		BaseController controller = new BaseController() {
+		};
+		ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+
+		Session defaultSession = newSession();
+		Session otherSession = newSession();
+		ListsDatabaseSessionFactory sessionFactory = new ListsDatabaseSessionFactory() {
+			@Override
+			public Session getSession(String tenant) {
+				return "other".equals(tenant) ? otherSession : defaultSession;
+			}
+		};
+
+		// The stream is made on the request thread, for the request's tenant.
+		AtomicReference<Session> sessionRead = new AtomicReference<Session>();
+		StreamingResponseBody stream = TenantContext.callAs("other", () ->
+			controller.<Integer>toJsonArrayStream(consumer -> {
+				sessionRead.set(sessionFactory.getSession());
+				consumer.accept(Arrays.asList(1, 2));
+			}));
+
+		// The body is written on another thread, which has no tenant set.
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		Thread asyncThread = new Thread(() -> {
+			try {
+				stream.writeTo(outputStream);
+			}
+			catch (Exception e) {
+				failure.set(e);
+			}
+		});
+		asyncThread.start();
+		asyncThread.join();
+
+		assertNull(failure.get());
+		assertSame(otherSession, sessionRead.get());
+		assertEquals("[1,2]", outputStream.toString("UTF-8"));
+	}
+
+	private static Session newSession() {
+		return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] { Session.class }, (proxy, method, args) -> {
+			if ("equals".equals(method.getName())) {
+				return proxy == args[0];
+			}
+			if ("hashCode".equals(method.getName())) {
+				return System.identityHashCode(proxy);
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+}
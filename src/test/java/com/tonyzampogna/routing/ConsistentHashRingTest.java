@@ -0,0 +1,47 @@
+package com.tonyzampogna.routing;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for ConsistentHashRing.
+ */
+public class ConsistentHashRingTest extends TestCase {
+
+	public void testAddingNodeOnlyMovesItsShareOfKeys() {
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("localhost:8080", "localhost:8081", "localhost:8082"), 160);
+		ConsistentHashRing biggerRing = new ConsistentHashRing(Arrays.asList("localhost:8080", "localhost:8081", "localhost:8082", "localhost:8083"), 160);
+		Map<String, Integer> keysByNode = new HashMap<String, Integer>();
+		int movedCount = 0;
+
+		for (int count = 0; count < 10000; count++) {
+			String key = "key-" + count;
+			String node = biggerRing.getNode(key);
+			keysByNode.merge(node, 1, Integer::sum);
+
+			if (!node.equals(ring.getNode(key))) {
+				assertEquals("localhost:8083", node);
+				movedCount++;
+			}
+		}
+
+		// Each node should own about a quarter of the keys.
+		for (int keyCount : keysByNode.values()) {
+			assertTrue(keyCount > 1750 && keyCount < 3250);
+		}
+		assertTrue(movedCount > 1750 && movedCount < 3250);
+	}
+
+	public void testSkipsUnavailableNodes() {
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("localhost:8080", "localhost:8081"), 16);
+		String owner = ring.getNode("key");
+		String other = owner.equals("localhost:8080") ? "localhost:8081" : "localhost:8080";
+
+		assertEquals(other, ring.getNode("key", node -> !node.equals(owner)));
+		assertNull(ring.getNode("key", node -> false));
+		assertNull(new ConsistentHashRing(Arrays.<String>asList(), 16).getNode("key"));
+	}
+}
@@ -0,0 +1,22 @@
+package com.tonyzampogna.util;
+
+import com.datastax.driver.core.SimpleStatement;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for CursorUtils.
+ */
+public class CursorUtilsTest extends TestCase {
+
+	public void testMalformedCursorIsABadRequest() {
+		for (String cursor : new String[] { "not-a-cursor", "00ff" }) {
+			try {
+				CursorUtils.setCursor(new SimpleStatement("SELECT * FROM lists"), cursor);
+				fail("Expected a BadRequestException. Cursor: " + cursor);
+			}
+			catch (BadRequestException e) {
+				assertTrue(e.getMessage().contains(cursor));
+			}
+		}
+	}
+}
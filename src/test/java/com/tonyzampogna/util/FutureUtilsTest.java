@@ -0,0 +1,83 @@
+package com.tonyzampogna.util;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.tonyzampogna.tenant.TenantContext;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for FutureUtils.
+ */
+public class FutureUtilsTest extends TestCase {
+
+	public void testAllBoundedKeepsKeyOrderAndSkipsDuplicates() {
+		Map<Integer, String> results = FutureUtils.getUninterruptibly(
+			FutureUtils.allBounded(Arrays.asList(3, 1, 2, 1), 2,
+				key -> CompletableFuture.completedFuture("value-" + key)));
+
+		assertEquals(Arrays.asList(3, 1, 2), new ArrayList<Integer>(results.keySet()));
+		assertEquals("value-1", results.get(1));
+	}
+
+	public void testAllBoundedNeverExceedsInFlightLimit() {
+		List<CompletableFuture<Integer>> pending = new ArrayList<CompletableFuture<Integer>>();
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger maxInFlight = new AtomicInteger();
+
+		CompletableFuture<Map<Integer, Integer>> future = FutureUtils.allBounded(Arrays.asList(1, 2, 3, 4, 5), 2, key -> {
+			maxInFlight.set(Math.max(maxInFlight.get(), inFlight.incrementAndGet()));
+			CompletableFuture<Integer> load = new CompletableFuture<Integer>();
+			pending.add(load);
+			return load.whenComplete((value, t) -> inFlight.decrementAndGet());
+		});
+
+		// Complete the loads one at a time, as they are started.
+		for (int count = 0; count < pending.size(); count++) {
+			pending.get(count).complete(count);
+		}
+
+		assertEquals(5, FutureUtils.getUninterruptibly(future).size());
+		assertEquals(2, maxInFlight.get());
+	}
+
+	public void testAllBoundedFailsWhenALoadFails() {
+		CompletableFuture<Map<Integer, Integer>> future = FutureUtils.allBounded(Arrays.asList(1, 2), 1, key -> {
+			CompletableFuture<Integer> load = new CompletableFuture<Integer>();
+			if (key == 2) {
+				load.completeExceptionally(new IllegalStateException("boom"));
+			}
+			else {
+				load.complete(key);
+			}
+			return load;
+		});
+
+		try {
+			FutureUtils.getUninterruptibly(future);
+			fail("Expected the failure to be rethrown.");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("boom", e.getMessage());
+		}
+	}
+
+	public void testCallbacksRunForTheCallingTenant() throws Exception {
+		SettableFuture<String> driverFuture = SettableFuture.create();
+
+		CompletableFuture<String> tenant = TenantContext.callAs("other", () ->
+			FutureUtils.toCompletableFuture(driverFuture).thenApply(result -> TenantContext.get()));
+
+		// The driver completes the future on one of its own threads.
+		Thread driverThread = new Thread(() -> driverFuture.set("result"));
+		driverThread.start();
+		driverThread.join();
+
+		assertEquals("other", FutureUtils.getUninterruptibly(tenant));
+	}
+}